@@ -3,10 +3,18 @@ package backtracking;
 import model.LasersModel;
 
 import java.io.FileNotFoundException;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Observable;
 import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This class represents the classic recursive backtracking algorithm.
@@ -23,8 +31,19 @@ import java.util.Optional;
  */
 public class Backtracker extends Observable{
 
+    //Nodes in the first run of a restarting search, later runs get a
+    //multiple of it from the Luby sequence
+    private static final long RESTART_BASE = 256;
+
     private boolean debug;
     private List<Configuration> path = new ArrayList<>();
+    //Deadline and cancellation token of the running solve, null if it
+    //has none
+    private SearchLimit limit;
+    //Nodes the last solve with a deadline and a token visited, and why
+    //it stopped early, null if it ran to the end
+    private long nodeCount;
+    private SolveResult.Status stopStatus;
     /**
      * Initialize a new backtracker.
      *
@@ -44,12 +63,157 @@ public class Backtracker extends Observable{
      *               successor, e.g.)
      * @param config The config to display
      */
-    private void debugPrint(String msg, Configuration config) {
+    private void debugPrint(String msg, Object config) {
         if (this.debug) {
             System.out.println(msg + ":\n" + config);
         }
     }
 
+    /**
+     * Count a node against the limit of the running solve, if any
+     */
+    private void tick() {
+        if (limit != null) {
+            limit.tick();
+        }
+    }
+
+    /**
+     * Run a search under a deadline and a cancellation token. The
+     * search ticks the limit at every node, which throws once the
+     * limit is reached.
+     *
+     * @param deadline When to give up, null for never
+     * @param token The token to watch, null for none
+     * @param search The search to run
+     * @return The result, TIMED_OUT or CANCELLED if it was stopped
+     */
+    private SolveResult limited(Instant deadline, CancellationToken token,
+                                Supplier<Optional<Configuration>> search) {
+        limit = new SearchLimit(deadline, token, SearchLimit.DEFAULT_INTERVAL);
+        stopStatus = null;
+        try {
+            limit.check();
+            return SolveResult.of(search.get());
+        } catch (SearchAbortedException e) {
+            stopStatus = e.getStatus();
+            return new SolveResult(e.getStatus(), null);
+        } finally {
+            nodeCount = limit.getVisited();
+            limit = null;
+        }
+    }
+
+    /**
+     * Return the number of nodes the last solve that took a deadline
+     * and a token visited, whether it finished or not
+     *
+     * @return The nodes of the last limited solve
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Return why the last search that took a deadline and a token gave
+     * up early. For a stream of solutions, that is the last one read.
+     *
+     * @return TIMED_OUT or CANCELLED, or null if it ran to the end
+     */
+    public SolveResult.Status getStopStatus() {
+        return stopStatus;
+    }
+
+    /**
+     * Try find a solution, if one exists, for a given configuration,
+     * giving up at a deadline or when a token is cancelled. Both are
+     * checked every few nodes.
+     *
+     * @param config A valid configuration
+     * @param deadline When to give up, null for never
+     * @param token The token to watch, null for none
+     * @return The solution, NO_SOLUTION, or why the search stopped early
+     */
+    public SolveResult solve(Configuration config, Instant deadline, CancellationToken token) {
+        return limited(deadline, token, () -> solve(config));
+    }
+
+    /**
+     * Try find a solution, if one exists, for a configuration that is
+     * searched in place, giving up at a deadline or when a token is
+     * cancelled. A search that stops early leaves the configuration
+     * wherever it was.
+     *
+     * @param config A valid configuration
+     * @param deadline When to give up, null for never
+     * @param token The token to watch, null for none
+     * @return The solution, NO_SOLUTION, or why the search stopped early
+     */
+    public SolveResult solve(UndoableConfiguration config, Instant deadline, CancellationToken token) {
+        return limited(deadline, token, () -> solve(config));
+    }
+
+    /**
+     * Try find a solution, if one exists, without recursing, giving up
+     * at a deadline or when a token is cancelled. A search that stops
+     * early leaves the configuration wherever it was.
+     *
+     * @param config A valid configuration
+     * @param deadline When to give up, null for never
+     * @param token The token to watch, null for none
+     * @return The solution, NO_SOLUTION, or why the search stopped early
+     */
+    public SolveResult solveIteratively(UndoableConfiguration config, Instant deadline,
+                                        CancellationToken token) {
+        return limited(deadline, token, () -> solveIteratively(config));
+    }
+
+    /**
+     * Try find a solution, if one exists, with conflict directed
+     * backjumping, giving up at a deadline or when a token is
+     * cancelled. A search that stops early leaves the configuration
+     * wherever it was.
+     *
+     * @param config A valid configuration
+     * @param deadline When to give up, null for never
+     * @param token The token to watch, null for none
+     * @return The solution, NO_SOLUTION, or why the search stopped early
+     */
+    public SolveResult solveWithBackjumping(UndoableConfiguration config, Instant deadline,
+                                            CancellationToken token) {
+        return limited(deadline, token, () -> solveWithBackjumping(config));
+    }
+
+    /**
+     * Try find a solution, if one exists, with restarts, giving up at a
+     * deadline or when a token is cancelled. See solveWithRestarts.
+     *
+     * @param config A valid configuration
+     * @param seed Picks the tie breaking of every run
+     * @param deadline When to give up, null for never
+     * @param token The token to watch, null for none
+     * @return The solution, NO_SOLUTION, or why the search stopped early
+     */
+    public SolveResult solveWithRestarts(SafeTrailConfig config, long seed, Instant deadline,
+                                         CancellationToken token) {
+        return limited(deadline, token, () -> solveWithRestarts(config, seed));
+    }
+
+    /**
+     * Find a solution and the path to it, like solveHelperFunction,
+     * giving up at a deadline or when a token is cancelled. The path
+     * is only filled in when a solution is found.
+     *
+     * @param config A valid configuration
+     * @param deadline When to give up, null for never
+     * @param token The token to watch, null for none
+     * @return The solution, NO_SOLUTION, or why the search stopped early
+     */
+    public SolveResult solveHelperFunction(Configuration config, Instant deadline,
+                                           CancellationToken token) {
+        return limited(deadline, token, () -> solveHelperFunction(config));
+    }
+
     /**
      * Try find a solution, if one exists, for a given configuration.
      *
@@ -57,6 +221,7 @@ public class Backtracker extends Observable{
      * @return A solution config, or null if no solution
      */
     public Optional<Configuration> solve(Configuration config) {
+        tick();
         debugPrint("Current config", config);
         if (config.isGoal()) {
             debugPrint("\tGoal config", config);
@@ -79,6 +244,283 @@ public class Backtracker extends Observable{
         }
         return Optional.empty();
     }
+
+    /**
+     * Try find a solution, if one exists, for a configuration that is
+     * searched in place. Each branch is applied to the configuration and
+     * undone again when it fails, so nothing is copied along the way.
+     *
+     * @param config A valid configuration
+     * @return A snapshot of the solution, or empty if no solution
+     */
+    public Optional<Configuration> solve(UndoableConfiguration config) {
+        tick();
+        debugPrint("Current config", config);
+        if (config.isGoal()) {
+            debugPrint("\tGoal config", config);
+            setChanged();
+            notifyObservers();
+            return Optional.of(config.snapshot());
+        } else {
+            int branches = config.branchCount();
+            for (int branch = 0; branch < branches; branch++) {
+                int mark = config.mark();
+                if (config.apply(branch)) {
+                    debugPrint("\tValid successor", config);
+                    Optional<Configuration> sol = solve(config);
+                    if (sol.isPresent()) {
+                        return sol;
+                    }
+                } else {
+                    debugPrint("\tInvalid successor", config);
+                }
+                // explicit backtracking happens here
+                config.undo(mark);
+            }
+            config.exhausted();
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Try find a solution, if one exists, without recursing. The
+     * search frontier is kept in primitive arrays by a TrailSearch, so
+     * very large safes do not run out of thread stack.
+     *
+     * @param config A valid configuration
+     * @return A snapshot of the solution, or empty if no solution
+     */
+    public Optional<Configuration> solveIteratively(UndoableConfiguration config) {
+        TrailSearch search = new TrailSearch(config);
+        search.setLimit(limit);
+        if (search.next()) {
+            debugPrint("\tGoal config", config);
+            setChanged();
+            notifyObservers();
+            return Optional.of(config.snapshot());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Try find a solution, if one exists, without recursing and with
+     * conflict directed backjumping. When every branch of a node
+     * failed, the search does not just go back one level: it goes back
+     * to the deepest decision the failures were explained by, since the
+     * decisions in between would only fail the same way again. That
+     * keeps a laser placed far up the tree from being tried against
+     * every combination of the unrelated cells below it.
+     *
+     * A configuration that can not explain its failures, such as a
+     * SafeTrailConfig without conflict tracking, is searched one level
+     * at a time as in solveIteratively.
+     *
+     * @param config A valid configuration
+     * @return A snapshot of the solution, or empty if no solution
+     */
+    public Optional<Configuration> solveWithBackjumping(UndoableConfiguration config) {
+        TrailSearch search = new TrailSearch(config);
+        search.setLimit(limit);
+        search.setBackjumping(true);
+        if (search.next()) {
+            debugPrint("\tGoal config", config);
+            setChanged();
+            notifyObservers();
+            return Optional.of(config.snapshot());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Try find a solution, if one exists, with restarts. A search
+     * that branched badly near the root can spend ages in a subtree
+     * without a solution, so the search is cut short after a number of
+     * nodes and started over with the ties of the most constrained
+     * order broken another way. The budgets follow the Luby sequence,
+     * 1 1 2 1 1 2 4 ... times RESTART_BASE, so some run always gets
+     * long enough to finish.
+     *
+     * What a run learns is kept in the failed state memo of the
+     * configuration, which all the runs share; one is added if the
+     * configuration has none. The configuration ends where the search
+     * found its solution, or back at the root, with its branch order
+     * put back.
+     *
+     * @param config A valid configuration
+     * @param seed Picks the tie breaking of every run
+     * @return A snapshot of the solution, or empty if no solution
+     */
+    public Optional<Configuration> solveWithRestarts(SafeTrailConfig config, long seed) {
+        BranchOrder order = config.getBranchOrder();
+        if (config.getFailedStateMemo() == null) {
+            config.setFailedStateMemo(new FailedStateMemo());
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        int root = config.mark();
+        try {
+            for (int run = 1; ; run++) {
+                config.setBranchOrder(new MostConstrainedOrder(random.nextLong()));
+                TrailSearch search = new TrailSearch(config);
+                search.setLimit(limit);
+                search.setNodeBudget(RestartSchedule.luby(run) * RESTART_BASE);
+                if (search.next()) {
+                    debugPrint("\tGoal config", config);
+                    setChanged();
+                    notifyObservers();
+                    return Optional.of(config.snapshot());
+                }
+                if (!search.isOverBudget()) {
+                    return Optional.empty();
+                }
+                debugPrint("\tRestart", run);
+                config.undo(root);
+            }
+        } finally {
+            config.setBranchOrder(order);
+        }
+    }
+
+    /**
+     * Find every solution of a configuration that is searched in
+     * place. The stream is lazy: the search only runs as far as the
+     * solutions taken from it, and each one is a snapshot, so none of
+     * them are kept by the search. The configuration is moved around
+     * while the stream is read and must not be used for anything else.
+     *
+     * @param config A valid configuration
+     * @return A stream of the solutions, in the order they are found
+     */
+    public Stream<Configuration> solveAll(UndoableConfiguration config) {
+        return solveAll(config, null, null);
+    }
+
+    /**
+     * Find every solution of a configuration that is searched in
+     * place, giving up at a deadline or when a token is cancelled. The
+     * stream is lazy like the one of solveAll, and ends early once the
+     * search gives up; getStopStatus then says why, and getNodeCount
+     * how far the search got.
+     *
+     * @param config A valid configuration
+     * @param deadline When to give up, null for never
+     * @param token The token to watch, null for none
+     * @return A stream of the solutions found before the search ended
+     */
+    public Stream<Configuration> solveAll(UndoableConfiguration config, Instant deadline,
+                                          CancellationToken token) {
+        TrailSearch search = new TrailSearch(config);
+        SearchLimit limit = new SearchLimit(deadline, token, SearchLimit.DEFAULT_INTERVAL);
+        search.setLimit(limit);
+        stopStatus = null;
+        Spliterator<Configuration> solutions = new Spliterators.AbstractSpliterator<Configuration>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Configuration> action) {
+                try {
+                    limit.check();
+                    if (!search.next()) {
+                        return false;
+                    }
+                } catch (SearchAbortedException e) {
+                    stopStatus = e.getStatus();
+                    return false;
+                } finally {
+                    nodeCount = limit.getVisited();
+                }
+                debugPrint("\tGoal config", config);
+                action.accept(config.snapshot());
+                return true;
+            }
+        };
+        return StreamSupport.stream(solutions, false);
+    }
+
+    /**
+     * Count the solutions of a configuration that is searched in place.
+     * The goals are only counted, never copied.
+     *
+     * @param config A valid configuration
+     * @return The number of solutions
+     */
+    public long countSolutions(UndoableConfiguration config) {
+        return countSolutions(config, Long.MAX_VALUE, null, null).getCount();
+    }
+
+    /**
+     * Count the solutions of a configuration that is searched in place,
+     * giving up at a deadline or when a token is cancelled
+     *
+     * @param config A valid configuration
+     * @param deadline When to give up, null for never
+     * @param token The token to watch, null for none
+     * @return The number of solutions, or how many were found before
+     * the search gave up and why
+     */
+    public CountResult countSolutions(UndoableConfiguration config, Instant deadline,
+                                      CancellationToken token) {
+        return countSolutions(config, Long.MAX_VALUE, deadline, token);
+    }
+
+    /**
+     * Does a configuration that is searched in place have exactly one
+     * solution? The search stops as soon as it finds a second one.
+     *
+     * @param config A valid configuration
+     * @return true if there is one solution; false if there are none
+     * or more than one
+     */
+    public boolean isUnique(UndoableConfiguration config) {
+        return countSolutions(config, 2, null, null).isUnique();
+    }
+
+    /**
+     * Check whether a configuration that is searched in place has
+     * exactly one solution, giving up at a deadline or when a token is
+     * cancelled. The search stops as soon as it finds a second one.
+     *
+     * @param config A valid configuration
+     * @param deadline When to give up, null for never
+     * @param token The token to watch, null for none
+     * @return The solutions found, at most 2; isUnique on it is true
+     * only if the search ran to the end with one
+     */
+    public CountResult isUnique(UndoableConfiguration config, Instant deadline, CancellationToken token) {
+        return countSolutions(config, 2, deadline, token);
+    }
+
+    /**
+     * Count the solutions of a configuration, stopping at a limit, a
+     * deadline or a cancelled token
+     *
+     * @param config A valid configuration
+     * @param most The most solutions to look for
+     * @param deadline When to give up, null for never
+     * @param token The token to watch, null for none
+     * @return The number of solutions, at most most, and why the
+     * search stopped if it gave up
+     */
+    private CountResult countSolutions(UndoableConfiguration config, long most, Instant deadline,
+                                       CancellationToken token) {
+        TrailSearch search = new TrailSearch(config);
+        SearchLimit limit = new SearchLimit(deadline, token, SearchLimit.DEFAULT_INTERVAL);
+        search.setLimit(limit);
+        stopStatus = null;
+        long count = 0;
+        try {
+            limit.check();
+            while (count < most && search.next()) {
+                debugPrint("\tGoal config", config);
+                count++;
+            }
+            return new CountResult(count, null);
+        } catch (SearchAbortedException e) {
+            stopStatus = e.getStatus();
+            return new CountResult(count, stopStatus);
+        } finally {
+            nodeCount = limit.getVisited();
+        }
+    }
+
     /**
      * Try find a solution, if one exists, for a given configuration.
      * In addition to solving the solution, it constructs the path
@@ -89,6 +531,7 @@ public class Backtracker extends Observable{
      * @return A solution config, or null if no solution
      */
     public Optional<Configuration> solveHelperFunction(Configuration config) {
+        tick();
         debugPrint("Current config", config);
         if (config.isGoal()) {
             debugPrint("\tGoal config", config);
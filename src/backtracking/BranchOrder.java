@@ -0,0 +1,29 @@
+package backtracking;
+
+/**
+ * A strategy that picks the cell a SafeTrailConfig branches on next.
+ * The configuration tries a laser in that cell first and then blocks
+ * it. The same state must always give the same cell, since the choice
+ * is made again after every undo.
+ */
+public interface BranchOrder {
+    /**
+     * Pick the next cell to branch on.
+     *
+     * @param config the configuration being searched
+     * @return the row major index of an open cell, or -1 if no open
+     * cell is left
+     */
+    public int select(SafeTrailConfig config);
+
+    /**
+     * Does the order always pick the first open cell at or after the
+     * scan position? Only then are the cells before the scan position
+     * settled for good, so the failed state memo can leave them out.
+     *
+     * @return true for a left to right, top to bottom scan
+     */
+    public default boolean scansInOrder() {
+        return false;
+    }
+}
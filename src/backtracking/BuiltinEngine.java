@@ -0,0 +1,156 @@
+package backtracking;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The engines of this package behind the SolverEngine interface, one
+ * per name in NAMES. See SolverEngines for what each one does.
+ */
+class BuiltinEngine implements SolverEngine {
+
+    //Names of the engines, in the order they are registered
+    static final String[] NAMES = {"auto", "copy", "trail", "iterative", "memo", "bounded", "propagation",
+            "pruning", "symmetry", "cover", "segments", "restarts", "backjumping", "parallel", "sat", "profile", "local"};
+
+    private String name;
+    private SolverStatistics statistics;
+    //Work done by the solve that is running, and the name it is recorded
+    //under, which says so when another engine stood in for this one
+    private long nodes;
+    private String recorded;
+
+    /**
+     * Create one of the engines
+     * @param name - (String) a name out of NAMES
+     */
+    BuiltinEngine(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public SolveResult solve(SafeBoard board, Instant deadline, CancellationToken token) {
+        long start = System.nanoTime();
+        nodes = 0;
+        recorded = name;
+        SolveResult result = run(board, deadline, token);
+        statistics = new SolverStatistics(recorded, result.getStatus(),
+                Duration.ofNanos(System.nanoTime() - start), nodes);
+        return result;
+    }
+
+    @Override
+    public SolverStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Solve with the engine of this name, leaving its work in nodes
+     * @param board - (SafeBoard) the layout of the safe
+     * @param deadline - (Instant) when to give up, null for never
+     * @param token - (CancellationToken) the token to watch, may be null
+     * @return SolveResult - how the solve ended
+     */
+    private SolveResult run(SafeBoard board, Instant deadline, CancellationToken token) {
+        Backtracker bt = new Backtracker(false);
+        SolveResult result;
+        switch (name) {
+            case "auto":
+                //The regions may be solved at the same time
+                AtomicLong total = new AtomicLong();
+                result = new SafeRegions(board).solve(region -> {
+                    BuiltinEngine engine = new BuiltinEngine(ProfileSolver.suits(region) ? "profile" : "pruning");
+                    SolveResult part = engine.solve(region, deadline, token);
+                    total.addAndGet(engine.nodes);
+                    return part;
+                }, true);
+                nodes = total.get();
+                return result;
+            case "copy":
+                result = bt.solve(new SafeConfig(board), deadline, token);
+                nodes = bt.getNodeCount();
+                return result;
+            case "trail":
+            case "iterative":
+            case "memo":
+            case "bounded":
+                SafeTrailConfig scan = new SafeTrailConfig(board);
+                scan.setBranchOrder(new RowMajorOrder());
+                if (name.equals("memo")) {
+                    scan.setFailedStateMemo(new FailedStateMemo());
+                }
+                if (name.equals("bounded")) {
+                    scan.setPruningRule(new CapacityBound());
+                }
+                result = name.equals("trail") ? bt.solve(scan, deadline, token)
+                        : bt.solveIteratively(scan, deadline, token);
+                nodes = bt.getNodeCount();
+                return result;
+            case "propagation":
+            case "pruning":
+            case "symmetry":
+            case "cover":
+            case "restarts":
+            case "backjumping":
+            case "parallel":
+                SafeTrailConfig init = new SafeTrailConfig(board);
+                init.setDeadCellPruning(!name.equals("propagation"));
+                init.setPropagation(true);
+                if (name.equals("symmetry")) {
+                    init.setSymmetryBreaking(new SafeSymmetry(board));
+                }
+                init.setCoverBranching(name.equals("cover"));
+                if (name.equals("parallel")) {
+                    ParallelBacktracker pbt = new ParallelBacktracker();
+                    result = pbt.solve(init, deadline, token);
+                    nodes = pbt.getNodeCount();
+                } else if (name.equals("backjumping")) {
+                    init.setConflictTracking(true);
+                    result = bt.solveWithBackjumping(init, deadline, token);
+                    nodes = bt.getNodeCount();
+                } else if (name.equals("restarts")) {
+                    result = bt.solveWithRestarts(init, 0, deadline, token);
+                    nodes = bt.getNodeCount();
+                } else {
+                    result = bt.solveIteratively(init, deadline, token);
+                    nodes = bt.getNodeCount();
+                }
+                return result;
+            case "segments":
+                result = bt.solveIteratively(new SegmentGraphConfig(board), deadline, token);
+                nodes = bt.getNodeCount();
+                return result;
+            case "sat":
+                SafeSatEncoding encoding = new SafeSatEncoding(board);
+                result = encoding.solve(deadline, token);
+                nodes = encoding.getSolver().getDecisions();
+                return result;
+            case "profile":
+                if (!ProfileSolver.fits(board)) {
+                    //Too wide for the profile, the pruning search stands in
+                    BuiltinEngine pruning = new BuiltinEngine("pruning");
+                    result = pruning.solve(board, deadline, token);
+                    nodes = pruning.nodes;
+                    recorded = "profile:pruning";
+                    return result;
+                }
+                ProfileSolver profile = new ProfileSolver(board);
+                result = profile.solve(deadline, token);
+                nodes = profile.getProfileCount();
+                return result;
+            case "local":
+                LocalSearch local = new LocalSearch(board);
+                result = local.solve(deadline, token);
+                nodes = local.getFlips();
+                return result;
+            default:
+                throw new IllegalStateException("no built in engine " + name);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package backtracking;
+
+/**
+ * A flag that asks a running search to give up. Any thread can cancel
+ * the token; the search notices the next time it checks, which is
+ * every few nodes, and returns a CANCELLED result.
+ *
+ * A token can hang off a parent token, and is then cancelled as soon
+ * as the parent is. That way a search that has its own reasons to stop
+ * early still stops when the caller cancels.
+ */
+public class CancellationToken {
+
+    private volatile boolean cancelled;
+    private CancellationToken parent;
+
+    /**
+     * Create a token that is not cancelled yet
+     */
+    public CancellationToken() {
+        this(null);
+    }
+
+    /**
+     * Create a token that is also cancelled when its parent is
+     * @param parent - (CancellationToken) the parent, may be null
+     */
+    public CancellationToken(CancellationToken parent) {
+        this.parent = parent;
+        this.cancelled = false;
+    }
+
+    /**
+     * Ask the searches using this token to stop
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Has this token or its parent been cancelled?
+     * @return true if the search should stop
+     */
+    public boolean isCancelled() {
+        return cancelled || (parent != null && parent.isCancelled());
+    }
+}
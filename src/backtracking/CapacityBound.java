@@ -0,0 +1,226 @@
+package backtracking;
+
+/**
+ * A PruningRule that weighs what is still dark and what the pillars
+ * still need against how many lasers could still be placed. Every new
+ * laser takes a horizontal and a vertical segment that have no laser
+ * yet and still have an open cell, so no more lasers fit than the
+ * smaller of the two numbers of such segments. That capacity is
+ * compared against three lower bounds on the lasers still needed:
+ *
+ * - a horizontal segment with a dark cell whose vertical segment has
+ *   no open cell left can only be lit by a laser of its own, so every
+ *   such segment needs a laser, and the same goes the other way round
+ * - every pillar still short of its number needs that many more lasers
+ *   next to it, and one laser is next to at most as many numbered
+ *   pillars as the most any free cell of the safe has
+ * - a dark cell needs at least one more laser
+ *
+ * If the largest of the bounds is more than the capacity, the branch
+ * is cut. All the counts are kept up to date as the configuration
+ * changes, so the test at a node is a few comparisons.
+ */
+public class CapacityBound implements PruningRule {
+
+    private SafeBoard board;
+    private SegmentIndex segments;
+    private int horizontalCount;
+    //Most numbered pillars next to a single free cell
+    private int maxPillars;
+    //Is every cell lit, row major
+    private boolean[] lit;
+    //Does every segment have a laser, and how many open cells
+    private boolean[] hasLaser;
+    private int[] segOpen;
+    //Dark cells of every segment whose other segment has no open cell
+    private int[] stuck;
+    //Horizontal and vertical segments that could take a laser, and
+    //that need one
+    private int capableH;
+    private int capableV;
+    private int neededH;
+    private int neededV;
+    //Lasers next to every pillar, and the lasers the pillars still lack
+    private int[] pillarLasers;
+    private int demand;
+    //Number of free cells that are not lit
+    private int dark;
+
+    @Override
+    public void start(SafeBoard board) {
+        this.board = board;
+        this.segments = board.getSegments();
+        this.horizontalCount = segments.getHorizontalCount();
+        int segCount = segments.getSegmentCount();
+        int cells = board.getRDIM() * board.getCDIM();
+        this.lit = new boolean[cells];
+        this.hasLaser = new boolean[segCount];
+        this.segOpen = new int[segCount];
+        this.stuck = new int[segCount];
+        this.maxPillars = 1;
+        this.dark = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (!board.isBlocked(cell / board.getCDIM(), cell % board.getCDIM())) {
+                maxPillars = Math.max(maxPillars, board.getNeighborPillars(cell).length);
+                dark++;
+            }
+        }
+        for (int seg = 0; seg < segCount; seg++) {
+            segOpen[seg] = segments.getCells(seg).length;
+        }
+        this.capableH = horizontalCount;
+        this.capableV = segCount - horizontalCount;
+        this.neededH = 0;
+        this.neededV = 0;
+        this.pillarLasers = new int[board.getPillarCount()];
+        this.demand = 0;
+        for (int p = 0; p < board.getPillarCount(); p++) {
+            demand += board.getPillarValue(p);
+        }
+    }
+
+    @Override
+    public void laser(int cell, boolean placed) {
+        int row = cell / board.getCDIM();
+        int col = cell % board.getCDIM();
+        //The cell is open while its laser is placed and taken back, so
+        //both segments could take a laser before this
+        int delta = placed ? -1 : 1;
+        int h = segments.getRowSegment(row, col);
+        int v = segments.getColSegment(row, col);
+        hasLaser[h] = placed;
+        hasLaser[v] = placed;
+        capable(h, delta);
+        capable(v, delta);
+        for (int p : board.getNeighborPillars(cell)) {
+            int num = board.getPillarValue(p);
+            if (placed) {
+                if (pillarLasers[p]++ < num) {
+                    demand--;
+                }
+            } else if (--pillarLasers[p] < num) {
+                demand++;
+            }
+        }
+    }
+
+    @Override
+    public void lit(int cell, boolean lit) {
+        this.lit[cell] = lit;
+        dark += lit ? -1 : 1;
+        int row = cell / board.getCDIM();
+        int col = cell % board.getCDIM();
+        int h = segments.getRowSegment(row, col);
+        int v = segments.getColSegment(row, col);
+        if (segOpen[v] == 0) {
+            stick(h, lit ? -1 : 1);
+        }
+        if (segOpen[h] == 0) {
+            stick(v, lit ? -1 : 1);
+        }
+    }
+
+    @Override
+    public void closed(int cell, boolean closed) {
+        int row = cell / board.getCDIM();
+        int col = cell % board.getCDIM();
+        close(segments.getRowSegment(row, col), closed);
+        close(segments.getColSegment(row, col), closed);
+    }
+
+    /**
+     * Count a cell of a segment closing, or opening again
+     * @param seg - (int) the segment id
+     * @param closed - (boolean) true when closed, false when taken back
+     */
+    private void close(int seg, boolean closed) {
+        if (!closed && segOpen[seg] == 0) {
+            unstick(seg, -1);
+        }
+        segOpen[seg] += closed ? -1 : 1;
+        if (closed && segOpen[seg] == 0) {
+            unstick(seg, 1);
+        }
+    }
+
+    /**
+     * Count a segment going from no open cell to some, or back, in the
+     * capacity and in the stuck cells of its crossing segments
+     * @param seg - (int) the segment id
+     * @param delta - (int) 1 when it just lost its last open cell, -1
+     *              when it is about to get one back
+     */
+    private void unstick(int seg, int delta) {
+        if (!hasLaser[seg]) {
+            capable(seg, -delta);
+        }
+        for (int cell : segments.getCells(seg)) {
+            if (!lit[cell]) {
+                stick(segments.otherSegment(cell, seg), delta);
+            }
+        }
+    }
+
+    /**
+     * Change the number of segments of a side that could take a laser
+     * @param seg - (int) the segment id
+     * @param delta - (int) 1 or -1
+     */
+    private void capable(int seg, int delta) {
+        if (seg < horizontalCount) {
+            capableH += delta;
+        } else {
+            capableV += delta;
+        }
+    }
+
+    /**
+     * Change the stuck dark cells of a segment, counting the segments
+     * that need a laser of their own
+     * @param seg - (int) the segment id
+     * @param delta - (int) 1 or -1
+     */
+    private void stick(int seg, int delta) {
+        int before = stuck[seg];
+        stuck[seg] += delta;
+        if ((before == 0) != (stuck[seg] == 0)) {
+            int change = stuck[seg] == 0 ? -1 : 1;
+            if (seg < horizontalCount) {
+                neededH += change;
+            } else {
+                neededV += change;
+            }
+        }
+    }
+
+    @Override
+    public boolean admits() {
+        int needed = Math.max(neededH, neededV);
+        needed = Math.max(needed, (demand + maxPillars - 1) / maxPillars);
+        if (dark > 0) {
+            needed = Math.max(needed, 1);
+        }
+        return needed <= Math.min(capableH, capableV);
+    }
+
+    @Override
+    public CapacityBound copy() {
+        CapacityBound copy = new CapacityBound();
+        copy.board = board;
+        copy.segments = segments;
+        copy.horizontalCount = horizontalCount;
+        copy.maxPillars = maxPillars;
+        copy.lit = lit.clone();
+        copy.hasLaser = hasLaser.clone();
+        copy.segOpen = segOpen.clone();
+        copy.stuck = stuck.clone();
+        copy.capableH = capableH;
+        copy.capableV = capableV;
+        copy.neededH = neededH;
+        copy.neededV = neededV;
+        copy.pillarLasers = pillarLasers.clone();
+        copy.demand = demand;
+        copy.dark = dark;
+        return copy;
+    }
+}
@@ -0,0 +1,187 @@
+package backtracking;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Remembers why every closed cell of a SafeTrailConfig was closed: by a
+ * decision, by the pillar that forced it, or by the laser that lit it.
+ * A branch that fails can then be explained by the decisions the failed
+ * pillar or dead cell goes back to, which is what conflict directed
+ * backjumping needs.
+ *
+ * A cause is DECIDED for a decision, forcedBy(p) for a pillar p, and
+ * the row major index of the laser for a lit cell.
+ */
+final class ConflictExplainer {
+
+    //Cause of a cell closed by a decision
+    static final int DECIDED = -1;
+
+    private final SafeTrailConfig config;
+    //Why every closed cell was closed, and where its entry is on the trail
+    private final int[] closeCause;
+    private final int[] closeStamp;
+    //Cells explain still has to visit, and the visit every cell was
+    //last seen in
+    private final int[] pending;
+    private final int[] seen;
+    private int visit;
+
+    /**
+     * Start tracking a configuration. The cells closed before count as
+     * closed for good.
+     * @param config - (SafeTrailConfig) the configuration to track
+     */
+    ConflictExplainer(SafeTrailConfig config) {
+        this(config, new int[cellCount(config)]);
+        Arrays.fill(closeCause, DECIDED);
+    }
+
+    /**
+     * Start tracking a configuration with the causes known so far
+     * @param config - (SafeTrailConfig) the configuration to track
+     * @param closeCause - (int[]) why every cell was closed
+     */
+    private ConflictExplainer(SafeTrailConfig config, int[] closeCause) {
+        this.config = config;
+        this.closeCause = closeCause;
+        this.closeStamp = new int[closeCause.length];
+        this.pending = new int[closeCause.length];
+        this.seen = new int[closeCause.length];
+        Arrays.fill(closeStamp, -1);
+    }
+
+    /**
+     * Copy the causes for a copy of the configuration. The copy can not
+     * undo past its start, so the cells closed by then are closed for
+     * good.
+     * @param config - (SafeTrailConfig) the copy
+     * @return ConflictExplainer - the copied causes
+     */
+    ConflictExplainer copy(SafeTrailConfig config) {
+        return new ConflictExplainer(config, closeCause.clone());
+    }
+
+    /**
+     * Return the number of cells of the safe of a configuration
+     * @param config - (SafeTrailConfig) the configuration
+     * @return int - rows times cols
+     */
+    private static int cellCount(SafeTrailConfig config) {
+        return config.getBoard().getRDIM() * config.getBoard().getCDIM();
+    }
+
+    /**
+     * Return the cause of a cell forced by a pillar
+     * @param p - (int) the index of the pillar
+     * @return int - the cause
+     */
+    static int forcedBy(int p) {
+        return -2 - p;
+    }
+
+    /**
+     * Record why a cell was closed
+     * @param cell - (int) row major index of the cell
+     * @param cause - (int) why it was closed
+     * @param stamp - (int) the trail position of its entry
+     */
+    void closed(int cell, int cause, int stamp) {
+        closeCause[cell] = cause;
+        closeStamp[cell] = stamp;
+    }
+
+    /**
+     * Explain a failure by the decisions it goes back to. A failed
+     * pillar goes back to its neighbors that are no longer open, a dead
+     * cell to the cells of its two segments. A cell closed by a
+     * decision is reported; one forced by a pillar goes back to the
+     * neighbors of that pillar that were closed before it, and one lit
+     * by a laser goes back to that laser.
+     * @param pillar - (int) the pillar that failed, or -1
+     * @param cell - (int) the dead cell, if no pillar failed
+     * @param culprits - (IntConsumer) takes the trail position of every
+     *                 decision the failure goes back to
+     */
+    void explain(int pillar, int cell, IntConsumer culprits) {
+        if (++visit == 0) {
+            Arrays.fill(seen, 0);
+            visit = 1;
+        }
+        SegmentIndex segments = config.getBoard().getSegments();
+        int cDIM = config.getBoard().getCDIM();
+        int[] stack = pending;
+        int size = 0;
+        if (pillar >= 0) {
+            size = pushClosedNeighbors(pillar, Integer.MAX_VALUE, stack, size);
+        } else {
+            int row = cell / cDIM;
+            int col = cell % cDIM;
+            size = pushClosedCells(segments.getRowSegment(row, col), stack, size);
+            size = pushClosedCells(segments.getColSegment(row, col), stack, size);
+        }
+        while (size > 0) {
+            int closed = stack[--size];
+            int cause = closeCause[closed];
+            if (cause == DECIDED) {
+                culprits.accept(closeStamp[closed]);
+            } else if (cause >= 0) {
+                if (seen[cause] != visit) {
+                    seen[cause] = visit;
+                    stack[size++] = cause;
+                }
+            } else {
+                size = pushClosedNeighbors(-2 - cause, closeStamp[closed], stack, size);
+            }
+        }
+    }
+
+    /**
+     * Push the neighbors of a pillar that were closed before a trail
+     * position and have not been visited yet
+     * @param p - (int) the index of the pillar
+     * @param before - (int) the trail position
+     * @param stack - (int[]) the cells still to visit
+     * @param size - (int) the number of cells on the stack
+     * @return int - the new number of cells on the stack
+     */
+    private int pushClosedNeighbors(int p, int before, int[] stack, int size) {
+        SafeBoard board = config.getBoard();
+        int row = board.getPillarRow(p);
+        int col = board.getPillarCol(p);
+        for (int d = 0; d < 4; d++) {
+            int r = row + SafeBoard.DR[d];
+            int c = col + SafeBoard.DC[d];
+            if (r < 0 || r >= board.getRDIM() || c < 0 || c >= board.getCDIM() || board.isBlocked(r, c)
+                    || config.isOpen(r, c)) {
+                continue;
+            }
+            int cell = r * board.getCDIM() + c;
+            if (seen[cell] != visit && closeStamp[cell] < before) {
+                seen[cell] = visit;
+                stack[size++] = cell;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Push the cells of a segment that are closed and have not been
+     * visited yet
+     * @param seg - (int) the segment id
+     * @param stack - (int[]) the cells still to visit
+     * @param size - (int) the number of cells on the stack
+     * @return int - the new number of cells on the stack
+     */
+    private int pushClosedCells(int seg, int[] stack, int size) {
+        int cDIM = config.getBoard().getCDIM();
+        for (int cell : config.getBoard().getSegments().getCells(seg)) {
+            if (seen[cell] != visit && !config.isOpen(cell / cDIM, cell % cDIM)) {
+                seen[cell] = visit;
+                stack[size++] = cell;
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,65 @@
+package backtracking;
+
+/**
+ * What a count of the solutions ended with. A count that was stopped
+ * early by its deadline or its token still says how many solutions it
+ * had found by then, but there may be more.
+ */
+public class CountResult {
+
+    private long count;
+    private SolveResult.Status status;
+
+    /**
+     * Create a result
+     * @param count - (long) the solutions found
+     * @param status - (SolveResult.Status) TIMED_OUT or CANCELLED if the
+     *               count was stopped early, null if it ran to the end
+     */
+    public CountResult(long count, SolveResult.Status status) {
+        this.count = count;
+        this.status = status;
+    }
+
+    /**
+     * Return the number of solutions found
+     * @return long - the solutions, only a lower bound unless complete
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Return how the count ended
+     * @return SolveResult.Status - TIMED_OUT or CANCELLED if it was
+     *         stopped early; SOLVED if it found a solution and
+     *         NO_SOLUTION if it found none otherwise
+     */
+    public SolveResult.Status getStatus() {
+        if (status != null) {
+            return status;
+        }
+        return count > 0 ? SolveResult.Status.SOLVED : SolveResult.Status.NO_SOLUTION;
+    }
+
+    /**
+     * Did the count run to the end?
+     * @return true unless the deadline or the token stopped it
+     */
+    public boolean isComplete() {
+        return status == null;
+    }
+
+    /**
+     * Is it known that there is exactly one solution?
+     * @return true if the count ran to the end and found one solution
+     */
+    public boolean isUnique() {
+        return isComplete() && count == 1;
+    }
+
+    @Override
+    public String toString() {
+        return getStatus() + ": " + count + (isComplete() ? "" : " or more");
+    }
+}
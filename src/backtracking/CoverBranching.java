@@ -0,0 +1,59 @@
+package backtracking;
+
+/**
+ * Branching over the cells that could light a dark cell, instead of a
+ * laser or an empty cell. The dark cell is the one with the fewest
+ * open cells left in its two segments, and branch i puts a laser in
+ * the i-th of those cells and blocks the ones before it. One of them
+ * has to light the cell, so the branches cover every solution exactly
+ * once, and a cell that nothing can light anymore has no branches at
+ * all. The tree is wider and much shallower than the laser or empty
+ * one.
+ */
+final class CoverBranching {
+
+    /**
+     * Find the dark cell with the fewest open cells left that could
+     * light it, ties going to the first one in row major order. Any
+     * cell with one option or none will do, so the first of those wins.
+     * @param config - (SafeTrailConfig) the configuration being searched
+     * @return int - row major index of the cell, or -1 if every cell is lit
+     */
+    int select(SafeTrailConfig config) {
+        OptionIndex index = config.getOptionIndex();
+        int none = index.firstCell(0, 0);
+        int one = index.firstCell(1, 0);
+        if (none >= 0 || one >= 0) {
+            return none < 0 || (one >= 0 && one < none) ? one : none;
+        }
+        int fewest = index.fewestOptions(2);
+        return fewest < 0 ? -1 : index.firstCell(fewest, 0);
+    }
+
+    /**
+     * Apply a branch: a laser in the branch-th open cell of the row and
+     * then the column segment of the dark cell, and the open cells
+     * before it blocked
+     * @param config - (SafeTrailConfig) the configuration being searched
+     * @param dark - (int) row major index of the dark cell
+     * @param branch - (int) which of the open cells gets the laser
+     */
+    void apply(SafeTrailConfig config, int dark, int branch) {
+        SegmentIndex segments = config.getBoard().getSegments();
+        int cDIM = config.getBoard().getCDIM();
+        int[] row = segments.getCells(segments.getRowSegment(dark / cDIM, dark % cDIM));
+        int[] col = segments.getCells(segments.getColSegment(dark / cDIM, dark % cDIM));
+        int seen = 0;
+        for (int i = 0; i < row.length + col.length; i++) {
+            int cell = i < row.length ? row[i] : col[i - row.length];
+            if ((i >= row.length && cell == dark) || !config.isOpen(cell / cDIM, cell % cDIM)) {
+                continue;
+            }
+            if (seen++ == branch) {
+                config.placeLaser(cell / cDIM, cell % cDIM, ConflictExplainer.DECIDED);
+                break;
+            }
+            config.block(cell / cDIM, cell % cDIM, ConflictExplainer.DECIDED);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package backtracking;
+
+/**
+ * Cuts a branch of a SafeTrailConfig as soon as a dark cell can not be
+ * lit anymore. The places a laser that would light a cell can still go
+ * are the open cells of its two segments, which the configuration
+ * keeps count of, so a cell that is not lit is dead when both of them
+ * have none left. One of them must then be a segment that just dropped
+ * to 0, so only those are looked at after a branch.
+ */
+final class DeadCellPruning {
+
+    private final SegmentIndex segments;
+    //Segments whose open count dropped to 0 during the current branch
+    private int[] zeroed;
+    private int zeroedSize;
+
+    /**
+     * Create the pruning for the segments of a safe
+     * @param segments - (SegmentIndex) the segments of the safe
+     */
+    DeadCellPruning(SegmentIndex segments) {
+        this.segments = segments;
+        this.zeroed = new int[16];
+    }
+
+    /**
+     * Copy the pruning for a copy of the configuration, which starts
+     * out with no branch
+     * @return DeadCellPruning - the copy
+     */
+    DeadCellPruning copy() {
+        DeadCellPruning copy = new DeadCellPruning(segments);
+        copy.zeroed = new int[zeroed.length];
+        return copy;
+    }
+
+    /**
+     * Forget the segments that dropped to 0, before a new branch
+     */
+    void startBranch() {
+        zeroedSize = 0;
+    }
+
+    /**
+     * Remember a segment that has no open cell left
+     * @param seg - (int) the segment id
+     */
+    void zeroed(int seg) {
+        if (zeroedSize == zeroed.length) {
+            int[] bigger = new int[zeroed.length * 2];
+            System.arraycopy(zeroed, 0, bigger, 0, zeroedSize);
+            zeroed = bigger;
+        }
+        zeroed[zeroedSize++] = seg;
+    }
+
+    /**
+     * Find a cell that is not lit and can not be lit anymore, among the
+     * cells of the segments that dropped to 0 in the current branch
+     * @param config - (SafeTrailConfig) the configuration being searched
+     * @return int - row major index of a dead cell, or -1 if there is none
+     */
+    int findDeadCell(SafeTrailConfig config) {
+        int cDIM = config.getBoard().getCDIM();
+        for (int i = 0; i < zeroedSize; i++) {
+            int seg = zeroed[i];
+            for (int cell : segments.getCells(seg)) {
+                if (config.getSegmentOpen(segments.otherSegment(cell, seg)) == 0
+                        && !config.isLit(cell / cDIM, cell % cDIM)) {
+                    return cell;
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,153 @@
+package backtracking;
+
+import java.util.Arrays;
+
+/**
+ * A bounded table of search states that are known to have no
+ * solution below them. A state is stored as two independent 64 bit
+ * hashes of its signature, so two different states are only mixed up
+ * if both hashes collide.
+ *
+ * The table is a fixed number of two-entry buckets, picked by the
+ * first hash, like the transposition table of a chess engine. A new
+ * state goes in front of its bucket and pushes the older entry back,
+ * dropping the one behind it, and a state that is found again moves
+ * to the front. So memory stays capped, and in every bucket the state
+ * used least recently is the one that goes.
+ *
+ * A table belongs to one puzzle: the signatures of different safes
+ * mean nothing to each other. It can be shared by the threads of a
+ * parallel search, every method locks the table.
+ */
+public class FailedStateMemo {
+
+    //Entries kept by default
+    public static final int DEFAULT_CAPACITY = 1 << 18;
+    //Entries in a bucket
+    private static final int WAYS = 2;
+
+    //The two hashes of every entry, bucket by bucket; 0 and 0 is empty
+    private long[] hashesA;
+    private long[] hashesB;
+    private int bucketMask;
+    private int size;
+    private long hits;
+
+    /**
+     * Create a table of the default size
+     */
+    public FailedStateMemo() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a table
+     * @param capacity - (int) the most states it keeps, rounded up to
+     *                 a power of two
+     */
+    public FailedStateMemo(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        int buckets = 1;
+        while (buckets * WAYS < capacity) {
+            buckets <<= 1;
+        }
+        this.hashesA = new long[buckets * WAYS];
+        this.hashesB = new long[buckets * WAYS];
+        this.bucketMask = buckets - 1;
+    }
+
+    /**
+     * Is a state known to have no solution?
+     * @param hashA - (long) the first hash of the state
+     * @param hashB - (long) the second hash of the state
+     * @return true if it was recorded as failed
+     */
+    public synchronized boolean contains(long hashA, long hashB) {
+        int first = bucket(hashA);
+        for (int i = first; i < first + WAYS; i++) {
+            if (hashesA[i] == hashA && hashesB[i] == hashB) {
+                moveToFront(first, i);
+                hits++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Record that a state has no solution
+     * @param hashA - (long) the first hash of the state
+     * @param hashB - (long) the second hash of the state
+     */
+    public synchronized void add(long hashA, long hashB) {
+        int first = bucket(hashA);
+        int last = first + WAYS - 1;
+        for (int i = first; i <= last; i++) {
+            if (hashesA[i] == hashA && hashesB[i] == hashB) {
+                moveToFront(first, i);
+                return;
+            }
+        }
+        if (hashesA[last] == 0 && hashesB[last] == 0) {
+            size++;
+        }
+        //Drop the entry at the back to make room in front
+        moveToFront(first, last);
+        hashesA[first] = hashA;
+        hashesB[first] = hashB;
+    }
+
+    /**
+     * Return the number of states in the table
+     * @return int - the states kept
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Return how many times a state was found in the table
+     * @return long - the hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Forget every state
+     */
+    public synchronized void clear() {
+        Arrays.fill(hashesA, 0);
+        Arrays.fill(hashesB, 0);
+        size = 0;
+        hits = 0;
+    }
+
+    /**
+     * Return the first entry of the bucket of a state
+     * @param hashA - (long) the first hash of the state
+     * @return int - index of the first entry of the bucket
+     */
+    private int bucket(long hashA) {
+        return ((int) (hashA ^ (hashA >>> 32)) & bucketMask) * WAYS;
+    }
+
+    /**
+     * Move an entry to the front of its bucket, shifting the ones in
+     * front of it back by one
+     * @param first - (int) the first entry of the bucket
+     * @param i - (int) the entry to move
+     */
+    private void moveToFront(int first, int i) {
+        long a = hashesA[i];
+        long b = hashesB[i];
+        for (; i > first; i--) {
+            hashesA[i] = hashesA[i - 1];
+            hashesB[i] = hashesB[i - 1];
+        }
+        hashesA[first] = a;
+        hashesB[first] = b;
+    }
+}
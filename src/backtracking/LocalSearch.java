@@ -0,0 +1,621 @@
+package backtracking;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.SplittableRandom;
+
+/**
+ * A min-conflicts local search for safes too big to search completely.
+ * It starts from a random placement of lasers and keeps flipping one
+ * cell, putting a laser in or taking one out, to bring the violations
+ * down. A placement has three kinds of violations:
+ *
+ * - a free cell that no laser lights
+ * - a segment with more than one laser, one per extra laser
+ * - a numbered pillar with the wrong number of lasers, one per laser
+ *   too many or too few
+ *
+ * Every flip picks a violation at random and looks at the flips that
+ * could repair it. With a small probability, the noise, it takes one of
+ * them at random; otherwise it takes the one that leaves the fewest
+ * violations. A flipped cell is tabu for a few flips, unless flipping
+ * it back would beat the best placement so far, so the search does not
+ * walk in circles around a local minimum.
+ *
+ * Once the violations are down to a few, the search hands off to an
+ * exact one: every cell away from the violations keeps its value, and
+ * the cells around them are searched by a SafeTrailConfig with a node
+ * budget. If that fails the local search goes on. After its last flip
+ * it hands off the whole safe, so a solve ends with a solution, a
+ * proof that there is none, or the deadline.
+ */
+public class LocalSearch {
+
+    //Flips per free cell before the search gives up walking
+    private static final int FLIPS_PER_CELL = 1000;
+    //Nodes the exact search gets at every hand off
+    private static final long HAND_OFF_NODES = 100_000;
+
+    private SafeBoard board;
+    private SegmentIndex segments;
+    private int rDIM;
+    private int cDIM;
+    private SplittableRandom random;
+    //Chance of a random flip, flips a cell stays tabu for, violations
+    //to hand off at and flips before giving up
+    private double noise = 0.1;
+    private int tabuTenure = 10;
+    private int handOff = 4;
+    private long maxFlips;
+
+    //The placement and its counts
+    private boolean[] laser;
+    private int[] segLasers;
+    private int[] pillarLasers;
+    //The violations of the placement
+    private IndexSet uncovered;
+    private IndexSet crowded;
+    private IndexSet wrongPillars;
+    private int violations;
+    //Flip after which every cell stops being tabu
+    private long[] tabuUntil;
+    //The flips that could repair the picked violation, long enough for
+    //the two longest segments
+    private int[] candidates;
+    //Best placement so far, null when there is none
+    private boolean[] best;
+    private int bestViolations = Integer.MAX_VALUE;
+    //Work done by the last solve
+    private long flips;
+    private int handOffs;
+    //Deadline and cancellation token of the running solve, may be null
+    private SearchLimit limit;
+
+    /**
+     * Set up the local search of a safe
+     * @param board - (SafeBoard) the layout of the safe
+     */
+    public LocalSearch(SafeBoard board) {
+        this.board = board;
+        this.segments = board.getSegments();
+        this.rDIM = board.getRDIM();
+        this.cDIM = board.getCDIM();
+        this.random = new SplittableRandom(0);
+        int longest = 0;
+        for (int seg = 0; seg < segments.getSegmentCount(); seg++) {
+            longest = Math.max(longest, segments.getCells(seg).length);
+        }
+        this.candidates = new int[Math.max(2 * longest, 4)];
+        int free = 0;
+        for (int row = 0; row < rDIM; row++) {
+            for (int col = 0; col < cDIM; col++) {
+                if (!board.isBlocked(row, col)) {
+                    free++;
+                }
+            }
+        }
+        this.maxFlips = (long) FLIPS_PER_CELL * free;
+    }
+
+    /**
+     * Seed the random placement and the random flips
+     * @param seed - (long) the seed
+     */
+    public void setSeed(long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Set the chance of a random flip instead of the best one
+     * @param noise - (double) a probability from 0 to 1
+     */
+    public void setNoise(double noise) {
+        this.noise = noise;
+    }
+
+    /**
+     * Set the number of flips a flipped cell stays tabu for
+     * @param tabuTenure - (int) the number of flips
+     */
+    public void setTabuTenure(int tabuTenure) {
+        this.tabuTenure = tabuTenure;
+    }
+
+    /**
+     * Set the violations at which the exact search takes over
+     * @param handOff - (int) the number of violations, 0 to only hand
+     *                off the whole safe after the last flip
+     */
+    public void setHandOff(int handOff) {
+        this.handOff = handOff;
+    }
+
+    /**
+     * Set the number of flips before the whole safe is handed off
+     * @param maxFlips - (long) the number of flips
+     */
+    public void setMaxFlips(long maxFlips) {
+        this.maxFlips = maxFlips;
+    }
+
+    /**
+     * Try find a solution, giving up at a deadline or when a token is
+     * cancelled. The best placement seen stays available from
+     * getBestPlacement() however the solve ends.
+     * @param deadline - (Instant) when to give up, null for never
+     * @param token - (CancellationToken) the token to watch, may be null
+     * @return SolveResult - the solution, NO_SOLUTION, or why it stopped
+     */
+    public SolveResult solve(Instant deadline, CancellationToken token) {
+        limit = new SearchLimit(deadline, token, SearchLimit.DEFAULT_INTERVAL);
+        try {
+            limit.check();
+            return SolveResult.of(solve());
+        } catch (SearchAbortedException e) {
+            return new SolveResult(e.getStatus(), null);
+        } finally {
+            limit = null;
+        }
+    }
+
+    /**
+     * Try find a solution
+     * @return Optional - the solution, or empty if there is none
+     */
+    public Optional<Configuration> solve() {
+        flips = 0;
+        handOffs = 0;
+        for (int p = 0; p < board.getPillarCount(); p++) {
+            if (board.getPillarValue(p) > board.getPillarFreeNeighbors(p)) {
+                //No placement gets this pillar right
+                best = null;
+                bestViolations = Integer.MAX_VALUE;
+                return Optional.empty();
+            }
+        }
+        start();
+        long nextHandOff = 0;
+        while (violations > 0 && flips < maxFlips) {
+            if (limit != null) {
+                limit.tick();
+            }
+            if (violations <= handOff && flips >= nextHandOff) {
+                Optional<Configuration> solution = handOff(false);
+                if (solution != null) {
+                    return solution;
+                }
+                //Give the walk some time to get somewhere else first
+                nextHandOff = flips + laser.length;
+            }
+            flip(pickFlip());
+        }
+        if (violations == 0) {
+            return Optional.of(toConfig(laser));
+        }
+        //Out of flips, the exact search gets the whole safe
+        return handOff(true);
+    }
+
+    /**
+     * Put down a random placement: a laser in a random cell of every
+     * row segment. Every cell starts lit, and the flips are left to
+     * clear the crowded columns and the wrong pillars.
+     */
+    private void start() {
+        int cells = rDIM * cDIM;
+        laser = new boolean[cells];
+        segLasers = new int[segments.getSegmentCount()];
+        pillarLasers = new int[board.getPillarCount()];
+        uncovered = new IndexSet(cells);
+        crowded = new IndexSet(segments.getSegmentCount());
+        wrongPillars = new IndexSet(board.getPillarCount());
+        tabuUntil = new long[cells];
+        violations = 0;
+
+        for (int seg = 0; seg < segments.getHorizontalCount(); seg++) {
+            int[] free = segments.getCells(seg);
+            int cell = free[random.nextInt(free.length)];
+            laser[cell] = true;
+            segLasers[seg]++;
+            segLasers[segments.getColSegment(cell / cDIM, cell % cDIM)]++;
+            for (int p : board.getNeighborPillars(cell)) {
+                pillarLasers[p]++;
+            }
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            if (!board.isBlocked(cell / cDIM, cell % cDIM) && !isLit(cell)) {
+                review(uncovered, cell, 1, 0);
+            }
+        }
+        for (int seg = 0; seg < segLasers.length; seg++) {
+            review(crowded, seg, Math.max(0, segLasers[seg] - 1), 0);
+        }
+        for (int p = 0; p < board.getPillarCount(); p++) {
+            review(wrongPillars, p, Math.abs(pillarLasers[p] - board.getPillarValue(p)), 0);
+        }
+        best = laser.clone();
+        bestViolations = violations;
+    }
+
+    /**
+     * Pick the flip that repairs a random violation
+     * @return int - the cell to flip
+     */
+    private int pickFlip() {
+        int size = candidates();
+        if (random.nextDouble() < noise) {
+            return candidates[random.nextInt(size)];
+        }
+        int pick = -1;
+        int pickDelta = Integer.MAX_VALUE;
+        int ties = 0;
+        for (int i = 0; i < size; i++) {
+            int cell = candidates[i];
+            int delta = delta(cell);
+            //A tabu flip is only taken if it beats the best placement
+            if (tabuUntil[cell] > flips && violations + delta >= bestViolations) {
+                continue;
+            }
+            if (delta < pickDelta) {
+                pick = cell;
+                pickDelta = delta;
+                ties = 1;
+            } else if (delta == pickDelta && random.nextInt(++ties) == 0) {
+                pick = cell;
+            }
+        }
+        return pick >= 0 ? pick : candidates[random.nextInt(size)];
+    }
+
+    /**
+     * Collect the flips that could repair a random violation into the
+     * candidates buffer: the cells that could light a dark cell, the
+     * lasers of a crowded segment, or the cells next to a wrong pillar
+     * that would bring it closer to its number
+     * @return int - the number of cells collected
+     */
+    private int candidates() {
+        int size = 0;
+        int pick = random.nextInt(uncovered.size() + crowded.size() + wrongPillars.size());
+        if (pick < uncovered.size()) {
+            int cell = uncovered.get(pick);
+            for (int c : segments.getCells(segments.getRowSegment(cell / cDIM, cell % cDIM))) {
+                candidates[size++] = c;
+            }
+            for (int c : segments.getCells(segments.getColSegment(cell / cDIM, cell % cDIM))) {
+                if (c != cell) {
+                    candidates[size++] = c;
+                }
+            }
+            return size;
+        }
+        pick -= uncovered.size();
+        if (pick < crowded.size()) {
+            for (int c : segments.getCells(crowded.get(pick))) {
+                if (laser[c]) {
+                    candidates[size++] = c;
+                }
+            }
+            return size;
+        }
+        int p = wrongPillars.get(pick - crowded.size());
+        boolean add = pillarLasers[p] < board.getPillarValue(p);
+        int row = board.getPillarRow(p);
+        int col = board.getPillarCol(p);
+        for (int d = 0; d < 4; d++) {
+            int r = row + SafeBoard.DR[d];
+            int c = col + SafeBoard.DC[d];
+            if (r >= 0 && r < rDIM && c >= 0 && c < cDIM && !board.isBlocked(r, c)
+                    && laser[r * cDIM + c] != add) {
+                candidates[size++] = r * cDIM + c;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Work out how a flip would change the violations
+     * @param cell - (int) row major index of the cell
+     * @return int - the change in violations
+     */
+    private int delta(int cell) {
+        int row = cell / cDIM;
+        int col = cell % cDIM;
+        int h = segments.getRowSegment(row, col);
+        int v = segments.getColSegment(row, col);
+        int step = laser[cell] ? -1 : 1;
+        int delta = 0;
+        //Cells that go dark or get lit
+        for (int c : segments.getCells(h)) {
+            delta += coverChange(c, h, v, step);
+        }
+        for (int c : segments.getCells(v)) {
+            if (c != cell) {
+                delta += coverChange(c, h, v, step);
+            }
+        }
+        //Extra lasers in the two segments
+        delta += Math.max(0, segLasers[h] + step - 1) - Math.max(0, segLasers[h] - 1);
+        delta += Math.max(0, segLasers[v] + step - 1) - Math.max(0, segLasers[v] - 1);
+        for (int p : board.getNeighborPillars(cell)) {
+            int num = board.getPillarValue(p);
+            delta += Math.abs(pillarLasers[p] + step - num) - Math.abs(pillarLasers[p] - num);
+        }
+        return delta;
+    }
+
+    /**
+     * Work out whether a cell goes dark or gets lit when the lasers of
+     * two segments change
+     * @param cell - (int) row major index of the cell
+     * @param h - (int) the row segment that changes
+     * @param v - (int) the column segment that changes
+     * @param step - (int) the change of both
+     * @return int - 1 if it goes dark, -1 if it gets lit, 0 otherwise
+     */
+    private int coverChange(int cell, int h, int v, int step) {
+        int rs = segments.getRowSegment(cell / cDIM, cell % cDIM);
+        int cs = segments.getColSegment(cell / cDIM, cell % cDIM);
+        boolean before = segLasers[rs] + segLasers[cs] > 0;
+        int after = segLasers[rs] + segLasers[cs] + (rs == h ? step : 0) + (cs == v ? step : 0);
+        if (before == after > 0) {
+            return 0;
+        }
+        return before ? 1 : -1;
+    }
+
+    /**
+     * Flip a cell and bring the violations up to date
+     * @param cell - (int) row major index of the cell
+     */
+    private void flip(int cell) {
+        int row = cell / cDIM;
+        int col = cell % cDIM;
+        int h = segments.getRowSegment(row, col);
+        int v = segments.getColSegment(row, col);
+        int step = laser[cell] ? -1 : 1;
+        laser[cell] = !laser[cell];
+        int oldH = Math.max(0, segLasers[h] - 1);
+        int oldV = Math.max(0, segLasers[v] - 1);
+        segLasers[h] += step;
+        segLasers[v] += step;
+        review(crowded, h, Math.max(0, segLasers[h] - 1), oldH);
+        review(crowded, v, Math.max(0, segLasers[v] - 1), oldV);
+        for (int c : segments.getCells(h)) {
+            reviewCover(c);
+        }
+        for (int c : segments.getCells(v)) {
+            reviewCover(c);
+        }
+        for (int p : board.getNeighborPillars(cell)) {
+            int num = board.getPillarValue(p);
+            int old = Math.abs(pillarLasers[p] - num);
+            pillarLasers[p] += step;
+            review(wrongPillars, p, Math.abs(pillarLasers[p] - num), old);
+        }
+        tabuUntil[cell] = ++flips + tabuTenure;
+        if (violations < bestViolations) {
+            bestViolations = violations;
+            System.arraycopy(laser, 0, best, 0, laser.length);
+        }
+    }
+
+    /**
+     * Bring the violations up to date for a cell that may have gone
+     * dark or been lit
+     * @param cell - (int) row major index of the cell
+     */
+    private void reviewCover(int cell) {
+        boolean dark = !isLit(cell);
+        if (dark != uncovered.contains(cell)) {
+            review(uncovered, cell, dark ? 1 : 0, dark ? 0 : 1);
+        }
+    }
+
+    /**
+     * Bring the violations up to date for an item whose count changed
+     * @param set - (IndexSet) the items with violations of its kind
+     * @param item - (int) the item
+     * @param now - (int) its violations now
+     * @param old - (int) its violations before
+     */
+    private void review(IndexSet set, int item, int now, int old) {
+        violations += now - old;
+        if (now > 0) {
+            set.add(item);
+        } else {
+            set.remove(item);
+        }
+    }
+
+    /**
+     * Is a cell lit by the current placement?
+     * @param cell - (int) row major index of the cell
+     * @return true if a laser lights it
+     */
+    private boolean isLit(int cell) {
+        int row = cell / cDIM;
+        int col = cell % cDIM;
+        return segLasers[segments.getRowSegment(row, col)] + segLasers[segments.getColSegment(row, col)] > 0;
+    }
+
+    /**
+     * Let the exact search finish the current placement. Every free
+     * cell keeps its value, except the cells in the segments through a
+     * dark cell, a crowded segment or the neighbors of a wrong pillar,
+     * which are searched with a node budget.
+     * @param everything - (boolean) search the whole safe instead,
+     *                   without a node budget
+     * @return Optional - the solution, empty if there is none, or null
+     * if the exact search could not settle it
+     */
+    private Optional<Configuration> handOff(boolean everything) {
+        handOffs++;
+        int cells = rDIM * cDIM;
+        boolean[] open = new boolean[cells];
+        if (everything) {
+            Arrays.fill(open, true);
+        } else {
+            for (int i = 0; i < uncovered.size(); i++) {
+                openAround(open, uncovered.get(i));
+            }
+            for (int i = 0; i < crowded.size(); i++) {
+                for (int c : segments.getCells(crowded.get(i))) {
+                    openAround(open, c);
+                }
+            }
+            for (int i = 0; i < wrongPillars.size(); i++) {
+                int p = wrongPillars.get(i);
+                int row = board.getPillarRow(p);
+                int col = board.getPillarCol(p);
+                for (int d = 0; d < 4; d++) {
+                    int r = row + SafeBoard.DR[d];
+                    int c = col + SafeBoard.DC[d];
+                    if (r >= 0 && r < rDIM && c >= 0 && c < cDIM && !board.isBlocked(r, c)) {
+                        openAround(open, r * cDIM + c);
+                    }
+                }
+            }
+        }
+
+        SafeTrailConfig config = new SafeTrailConfig(board);
+        config.setDeadCellPruning(true);
+        config.setPropagation(true);
+        boolean everyCell = true;
+        for (int cell = 0; cell < cells; cell++) {
+            if (board.isBlocked(cell / cDIM, cell % cDIM) || open[cell]) {
+                continue;
+            }
+            everyCell = false;
+            if (!config.fix(cell / cDIM, cell % cDIM, laser[cell])) {
+                return null;
+            }
+        }
+        TrailSearch search = new TrailSearch(config);
+        search.setLimit(limit);
+        if (!everyCell) {
+            search.setNodeBudget(HAND_OFF_NODES);
+        }
+        if (search.next()) {
+            return Optional.of(config.snapshot());
+        }
+        //Only a search over every cell proves there is no solution
+        return everyCell && !search.isOverBudget() ? Optional.empty() : null;
+    }
+
+    /**
+     * Mark the cells of the two segments through a cell for the exact
+     * search
+     * @param open - (boolean[]) the cells the exact search gets
+     * @param cell - (int) row major index of the cell
+     */
+    private void openAround(boolean[] open, int cell) {
+        int row = cell / cDIM;
+        int col = cell % cDIM;
+        for (int c : segments.getCells(segments.getRowSegment(row, col))) {
+            open[c] = true;
+        }
+        for (int c : segments.getCells(segments.getColSegment(row, col))) {
+            open[c] = true;
+        }
+    }
+
+    /**
+     * Turn a placement into a configuration
+     * @param lasers - (boolean[]) the lasers, row major
+     * @return SafeConfig - the configuration
+     */
+    private SafeConfig toConfig(boolean[] lasers) {
+        SafeConfig config = new SafeConfig(board);
+        for (int cell = 0; cell < lasers.length; cell++) {
+            if (lasers[cell]) {
+                config.placeLaser(cell / cDIM, cell % cDIM);
+            }
+        }
+        config.markDecided();
+        return config;
+    }
+
+    /**
+     * Return the best placement the last solve saw. It is a solution
+     * only if getBestViolations() is 0.
+     * @return SafeConfig - the lasers of the placement
+     */
+    public SafeConfig getBestPlacement() {
+        return best == null ? null : toConfig(best);
+    }
+
+    /**
+     * Return the violations of the best placement the last solve saw
+     * @return int - the number of violations, Integer.MAX_VALUE if it
+     * saw no placement
+     */
+    public int getBestViolations() {
+        return bestViolations;
+    }
+
+    /**
+     * Return the flips the last solve made
+     * @return long - the number of flips
+     */
+    public long getFlips() {
+        return flips;
+    }
+
+    /**
+     * Return how often the last solve handed off to the exact search
+     * @return int - the number of hand offs
+     */
+    public int getHandOffs() {
+        return handOffs;
+    }
+
+    /**
+     * A set of small ints that can hand out a member by position, for
+     * picking a random violation
+     */
+    private static class IndexSet {
+        private int[] items;
+        private int[] where;
+        private int size;
+
+        /**
+         * @param capacity - (int) one more than the largest member
+         */
+        IndexSet(int capacity) {
+            items = new int[capacity];
+            where = new int[capacity];
+            Arrays.fill(where, -1);
+        }
+
+        void add(int item) {
+            if (where[item] < 0) {
+                where[item] = size;
+                items[size++] = item;
+            }
+        }
+
+        void remove(int item) {
+            int at = where[item];
+            if (at >= 0) {
+                int last = items[--size];
+                items[at] = last;
+                where[last] = at;
+                where[item] = -1;
+            }
+        }
+
+        boolean contains(int item) {
+            return where[item] >= 0;
+        }
+
+        int get(int i) {
+            return items[i];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package backtracking;
+
+/**
+ * Branch where the safe has the fewest options left, like the minimum
+ * remaining values heuristic of a CSP solver. Two kinds of places are
+ * weighed against each other:
+ *
+ * - a cell that is not lit yet, whose options are the open cells in its
+ *   row and column runs that a laser could light it from
+ * - a numbered pillar that still needs lasers, whose options are its
+ *   open neighbors
+ *
+ * The one with the fewest options wins, ties going to the first one in
+ * row major order, and the search branches on one of its open cells.
+ * A seeded order starts both scans at a place picked by its seed and
+ * wraps around, so ties go elsewhere; restarts use that to try a
+ * different tree every run.
+ *
+ * The places are not weighed one by one at every node: the
+ * configuration keeps them in an OptionIndex, bucketed by their
+ * options, and the order only asks it for the first place of the
+ * smallest bucket.
+ */
+public class MostConstrainedOrder implements BranchOrder {
+
+    //Where the scans start, 0 for row major order
+    private long seed;
+
+    /**
+     * Create an order that breaks ties in row major order
+     */
+    public MostConstrainedOrder() {
+        this(0);
+    }
+
+    /**
+     * Create an order that breaks ties by a seed
+     * @param seed - (long) picks where the scans start
+     */
+    public MostConstrainedOrder(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public int select(SafeTrailConfig config) {
+        SafeBoard board = config.getBoard();
+        OptionIndex index = config.getOptionIndex();
+        int cDIM = board.getCDIM();
+        int best = -1;
+
+        //Cells that still need a beam
+        int fewest = index.fewestOptions(1);
+        if (fewest > 0) {
+            int cell = index.firstCell(fewest, start(board.getRDIM() * cDIM));
+            int row = cell / cDIM;
+            int col = cell % cDIM;
+            best = config.isOpen(row, col) ? cell : firstOpenInRuns(config, row, col);
+        } else {
+            fewest = Integer.MAX_VALUE;
+        }
+
+        //Pillars that still need lasers, if one has fewer options
+        int open = index.fewestPillarOptions();
+        if (open > 0 && open < fewest) {
+            int p = index.firstPillar(open, start(board.getPillarCount()));
+            best = firstOpenNeighbor(config, board.getPillarRow(p), board.getPillarCol(p));
+        }
+
+        if (best < 0) {
+            //Nothing is constrained, fall back to the first open cell
+            best = config.nextOpen(0);
+        }
+        return best;
+    }
+
+    /**
+     * Return where a scan over a number of places starts
+     * @param places - (int) the number of places
+     * @return int - the first place to look at
+     */
+    private int start(int places) {
+        return places == 0 ? 0 : (int) Math.floorMod(seed, (long) places);
+    }
+
+    /**
+     * Find the first open cell in the row run of a cell, then in its
+     * column run
+     * @param config - (SafeTrailConfig) the configuration being searched
+     * @param row - (int) the row of the cell
+     * @param col - (int) the col of the cell
+     * @return int - row major index of the open cell, or -1 if there is none
+     */
+    private static int firstOpenInRuns(SafeTrailConfig config, int row, int col) {
+        SafeBoard board = config.getBoard();
+        int cDIM = board.getCDIM();
+        int end = board.rowSegmentEnd(row, col);
+        for (int c = board.rowSegmentStart(row, col); c <= end; c++) {
+            if (config.isOpen(row, c)) {
+                return row * cDIM + c;
+            }
+        }
+        end = board.colSegmentEnd(row, col);
+        for (int r = board.colSegmentStart(row, col); r <= end; r++) {
+            if (config.isOpen(r, col)) {
+                return r * cDIM + col;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first open neighbor of a cell
+     * @param config - (SafeTrailConfig) the configuration being searched
+     * @param row - (int) the row of the cell
+     * @param col - (int) the col of the cell
+     * @return int - row major index of the open neighbor, or -1 if there is none
+     */
+    static int firstOpenNeighbor(SafeTrailConfig config, int row, int col) {
+        for (int d = 0; d < 4; d++) {
+            if (config.isOpen(row + SafeBoard.DR[d], col + SafeBoard.DC[d])) {
+                return (row + SafeBoard.DR[d]) * config.getBoard().getCDIM() + col + SafeBoard.DC[d];
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,240 @@
+package backtracking;
+
+import java.util.Arrays;
+
+/**
+ * Buckets of the places a SafeTrailConfig could branch on, keyed by the
+ * number of options they have left, so the most constrained place is
+ * found without scanning the safe. A dark cell sits in the bucket of
+ * its light options, a pillar that still needs lasers in the bucket of
+ * its open neighbors. Every bucket is a bitset, of cells in row major
+ * order or of pillars in index order, so the first entry at or after a
+ * place is found a word at a time.
+ *
+ * The configuration reports every cell that is lit or closed, and
+ * every one that is taken back. Those are only noted; the cells of
+ * their segments and the pillars next to them are put in their new
+ * buckets when the index is next asked, so the work follows the
+ * changes made since then.
+ */
+final class OptionIndex {
+
+    private final SafeTrailConfig config;
+    private final SafeBoard board;
+    private final SegmentIndex segments;
+    private final int cells;
+    //Bucket of every cell, -1 for a lit or blocked cell, the cells in
+    //every bucket, made when first needed, and how many there are
+    private final int[] cellBucket;
+    private final long[][] cellBits;
+    private final int[] cellCount;
+    //Bucket of every pillar, 0 when it needs nothing, the pillars in
+    //buckets 1 to 4, and how many there are
+    private final int[] pillarBucket;
+    private final long[][] pillarBits;
+    private final int[] pillarCount;
+    //Cells changed since the last query, and segments left to review
+    private final int[] changed;
+    private final boolean[] isChanged;
+    private int changedSize;
+    private final int[] dirty;
+    private final boolean[] isDirty;
+    private int dirtySize;
+
+    /**
+     * Build the index of the current state of a configuration
+     * @param config - (SafeTrailConfig) the configuration to index
+     */
+    OptionIndex(SafeTrailConfig config) {
+        this.config = config;
+        this.board = config.getBoard();
+        this.segments = board.getSegments();
+        this.cells = board.getRDIM() * board.getCDIM();
+        this.cellBucket = new int[cells];
+        //A cell has at most a full row and a full column of options
+        this.cellBits = new long[board.getRDIM() + board.getCDIM()][];
+        this.cellCount = new int[cellBits.length];
+        this.pillarBucket = new int[board.getPillarCount()];
+        this.pillarBits = new long[5][(board.getPillarCount() + 63) >>> 6];
+        this.pillarCount = new int[5];
+        this.changed = new int[cells];
+        this.isChanged = new boolean[cells];
+        this.dirty = new int[segments.getSegmentCount()];
+        this.isDirty = new boolean[segments.getSegmentCount()];
+        Arrays.fill(cellBucket, -1);
+        for (int cell = 0; cell < cells; cell++) {
+            reviewCell(cell);
+        }
+        for (int p = 0; p < pillarBucket.length; p++) {
+            reviewPillar(p);
+        }
+    }
+
+    /**
+     * Note that a cell was lit or closed, or taken back
+     * @param cell - (int) row major index of the cell
+     */
+    void changed(int cell) {
+        if (!isChanged[cell]) {
+            isChanged[cell] = true;
+            changed[changedSize++] = cell;
+        }
+    }
+
+    /**
+     * Put the cells and pillars touched by the changes noted since the
+     * last query in their new buckets
+     */
+    void refresh() {
+        for (int i = 0; i < changedSize; i++) {
+            int cell = changed[i];
+            isChanged[cell] = false;
+            markDirty(segments.getRowSegment(cell / board.getCDIM(), cell % board.getCDIM()));
+            markDirty(segments.getColSegment(cell / board.getCDIM(), cell % board.getCDIM()));
+            for (int p : board.getNeighborPillars(cell)) {
+                reviewPillar(p);
+            }
+        }
+        changedSize = 0;
+        for (int i = 0; i < dirtySize; i++) {
+            isDirty[dirty[i]] = false;
+            for (int cell : segments.getCells(dirty[i])) {
+                reviewCell(cell);
+            }
+        }
+        dirtySize = 0;
+    }
+
+    /**
+     * Remember that the cells of a segment need a review
+     * @param seg - (int) the segment id
+     */
+    private void markDirty(int seg) {
+        if (!isDirty[seg]) {
+            isDirty[seg] = true;
+            dirty[dirtySize++] = seg;
+        }
+    }
+
+    /**
+     * Move a cell to the bucket of its light options, or out of the
+     * buckets if it is lit or blocked
+     * @param cell - (int) row major index of the cell
+     */
+    private void reviewCell(int cell) {
+        int row = cell / board.getCDIM();
+        int col = cell % board.getCDIM();
+        int bucket = board.isBlocked(row, col) || config.isLit(row, col) ? -1 : config.lightOptions(row, col);
+        int old = cellBucket[cell];
+        if (bucket == old) {
+            return;
+        }
+        if (old >= 0) {
+            cellBits[old][cell >>> 6] &= ~(1L << cell);
+            cellCount[old]--;
+        }
+        if (bucket >= 0) {
+            if (cellBits[bucket] == null) {
+                cellBits[bucket] = new long[(cells + 63) >>> 6];
+            }
+            cellBits[bucket][cell >>> 6] |= 1L << cell;
+            cellCount[bucket]++;
+        }
+        cellBucket[cell] = bucket;
+    }
+
+    /**
+     * Move a pillar to the bucket of its open neighbors, or out of the
+     * buckets if it has all of its lasers or no open neighbor
+     * @param p - (int) the index of the pillar
+     */
+    private void reviewPillar(int p) {
+        int open = config.getPillarOpen(p);
+        int bucket = config.getPillarLasers(p) < board.getPillarValue(p) ? open : 0;
+        int old = pillarBucket[p];
+        if (bucket == old) {
+            return;
+        }
+        if (old > 0) {
+            pillarBits[old][p >>> 6] &= ~(1L << p);
+            pillarCount[old]--;
+        }
+        if (bucket > 0) {
+            pillarBits[bucket][p >>> 6] |= 1L << p;
+            pillarCount[bucket]++;
+        }
+        pillarBucket[p] = bucket;
+    }
+
+    /**
+     * Return the fewest light options of a dark cell, counting only
+     * cells with at least a given number
+     * @param least - (int) the fewest options that count
+     * @return int - the fewest options, or -1 if no dark cell has enough
+     */
+    int fewestOptions(int least) {
+        for (int bucket = least; bucket < cellCount.length; bucket++) {
+            if (cellCount[bucket] > 0) {
+                return bucket;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first dark cell with a number of light options at or
+     * after a cell, wrapping around at the end of the safe
+     * @param options - (int) the number of options
+     * @param from - (int) row major index of the cell to start at
+     * @return int - row major index of the cell, or -1 if there is none
+     */
+    int firstCell(int options, int from) {
+        return cellCount[options] == 0 ? -1 : firstSet(cellBits[options], from, cells);
+    }
+
+    /**
+     * Return the fewest open neighbors of a pillar that still needs
+     * lasers
+     * @return int - the fewest open neighbors, or -1 if no pillar needs any
+     */
+    int fewestPillarOptions() {
+        for (int bucket = 1; bucket < pillarCount.length; bucket++) {
+            if (pillarCount[bucket] > 0) {
+                return bucket;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first pillar that still needs lasers and has a number of
+     * open neighbors, at or after a pillar, wrapping around at the end
+     * @param open - (int) the number of open neighbors
+     * @param from - (int) the index of the pillar to start at
+     * @return int - the index of the pillar, or -1 if there is none
+     */
+    int firstPillar(int open, int from) {
+        return pillarCount[open] == 0 ? -1 : firstSet(pillarBits[open], from, pillarBucket.length);
+    }
+
+    /**
+     * Find the first set bit at or after an index, wrapping around at
+     * the end
+     * @param bits - (long[]) the bitset
+     * @param from - (int) the index to start at
+     * @param size - (int) the number of bits in use
+     * @return int - the index of the bit, or -1 if none is set
+     */
+    private static int firstSet(long[] bits, int from, int size) {
+        int words = (size + 63) >>> 6;
+        int start = from >>> 6;
+        long word = bits[start] & (-1L << from);
+        for (int i = 0; i <= words; i++) {
+            if (word != 0) {
+                return (((start + i) % words) << 6) + Long.numberOfTrailingZeros(word);
+            }
+            word = i == words - 1 ? bits[start] & ~(-1L << from) : bits[(start + i + 1) % words];
+        }
+        return -1;
+    }
+}
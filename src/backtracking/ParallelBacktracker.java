@@ -0,0 +1,337 @@
+package backtracking;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A backtracker that searches on several cores at once. The top levels
+ * of the search tree are split into fork/join tasks, one per valid
+ * successor, so idle workers can steal whole subtrees. Below the
+ * cutoff depth a task searches its subtree alone, like Backtracker.
+ *
+ * The first goal found wins. It cancels a token shared by every task,
+ * which the tasks check every few nodes, so the other workers give up
+ * soon after. The same check watches the deadline and the caller's
+ * token when the search has them.
+ *
+ * Since the workers race, a safe with several solutions may give a
+ * different one from run to run.
+ */
+public class ParallelBacktracker {
+
+    //Levels of the tree that are split into tasks by default
+    public static final int DEFAULT_CUTOFF = 6;
+
+    private int parallelism;
+    private int cutoff;
+    //Nodes the tasks of the last solve visited, all together
+    private long nodeCount;
+
+    /**
+     * Initialize a backtracker that uses every core, split up to the
+     * default cutoff depth
+     */
+    public ParallelBacktracker() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_CUTOFF);
+    }
+
+    /**
+     * Initialize a new parallel backtracker.
+     *
+     * @param parallelism how many worker threads to search with
+     * @param cutoff how many levels of the tree are split into tasks;
+     *               deeper nodes are searched sequentially
+     */
+    public ParallelBacktracker(int parallelism, int cutoff) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.cutoff = cutoff;
+    }
+
+    /**
+     * Try find a solution, if one exists, for a given configuration.
+     * The successors a configuration hands out must not share anything
+     * they change, since they are searched on different threads.
+     *
+     * @param config A valid configuration
+     * @return A solution config, or empty if no solution
+     */
+    public Optional<Configuration> solve(Configuration config) {
+        return solve(config, null, null).getSolution();
+    }
+
+    /**
+     * Try find a solution, if one exists, for a given configuration,
+     * giving up at a deadline or when a token is cancelled.
+     *
+     * @param config A valid configuration
+     * @param deadline When to give up, null for never
+     * @param token The token to watch, null for none
+     * @return The solution, NO_SOLUTION, or why the search stopped early
+     */
+    public SolveResult solve(Configuration config, Instant deadline, CancellationToken token) {
+        Search search = new Search(deadline, token);
+        return search.run(new CopyTask(search, config, 0));
+    }
+
+    /**
+     * Try find a solution, if one exists, for a configuration that is
+     * searched in place. Each task works on its own copy of the
+     * configuration, the one passed in is left as it was.
+     *
+     * @param config A valid configuration
+     * @return A snapshot of the solution, or empty if no solution
+     */
+    public Optional<Configuration> solve(UndoableConfiguration config) {
+        return solve(config, null, null).getSolution();
+    }
+
+    /**
+     * Try find a solution, if one exists, for a configuration that is
+     * searched in place, giving up at a deadline or when a token is
+     * cancelled. The configuration passed in is left as it was.
+     *
+     * @param config A valid configuration
+     * @param deadline When to give up, null for never
+     * @param token The token to watch, null for none
+     * @return The solution, NO_SOLUTION, or why the search stopped early
+     */
+    public SolveResult solve(UndoableConfiguration config, Instant deadline, CancellationToken token) {
+        Search search = new Search(deadline, token);
+        return search.run(new TrailTask(search, config.copy(), 0));
+    }
+
+    /**
+     * Return the number of nodes the last solve visited over all of its
+     * tasks, whether it finished or not
+     *
+     * @return The nodes of the last solve
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * The state shared by the tasks of one solve: the deadline, the
+     * goal, and the token that tells everybody to stop
+     */
+    private class Search {
+        private Instant deadline;
+        //Cancelled by the first goal, or by the caller's token
+        private CancellationToken stop;
+        private AtomicReference<Configuration> result = new AtomicReference<>();
+        //Why a task was stopped early, if one was
+        private AtomicReference<SolveResult.Status> aborted = new AtomicReference<>();
+        //Nodes of the tasks that are done
+        private AtomicLong nodes = new AtomicLong();
+
+        /**
+         * @param deadline - (Instant) when to give up, null for never
+         * @param token - (CancellationToken) the caller's token, may be null
+         */
+        private Search(Instant deadline, CancellationToken token) {
+            this.deadline = deadline;
+            this.stop = new CancellationToken(token);
+        }
+
+        /**
+         * Run the root task on a fresh pool and wait for it
+         * @param root - (RecursiveAction) the task of the root
+         * @return SolveResult - how the search ended
+         */
+        private SolveResult run(RecursiveAction root) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(root);
+            } finally {
+                pool.shutdownNow();
+                nodeCount = nodes.get();
+            }
+            if (result.get() != null) {
+                return new SolveResult(SolveResult.Status.SOLVED, result.get());
+            }
+            if (aborted.get() != null) {
+                return new SolveResult(aborted.get(), null);
+            }
+            return new SolveResult(SolveResult.Status.NO_SOLUTION, null);
+        }
+
+        /**
+         * Create the limit of one task
+         * @return SearchLimit - a limit over the shared deadline and token
+         */
+        private SearchLimit newLimit() {
+            return new SearchLimit(deadline, stop, SearchLimit.DEFAULT_INTERVAL);
+        }
+
+        /**
+         * Add the nodes of a task that is done
+         * @param limit - (SearchLimit) the limit of the task
+         */
+        private void count(SearchLimit limit) {
+            nodes.addAndGet(limit.getVisited());
+        }
+
+        /**
+         * Hand in a goal. Only the first one is kept.
+         * @param goal - (Configuration) the goal found
+         */
+        private void publish(Configuration goal) {
+            if (result.compareAndSet(null, goal)) {
+                stop.cancel();
+            }
+        }
+
+        /**
+         * Record that a task was stopped early
+         * @param e - (SearchAbortedException) why it stopped
+         */
+        private void abort(SearchAbortedException e) {
+            aborted.compareAndSet(null, e.getStatus());
+        }
+    }
+
+    /**
+     * Search a subtree of configurations that copy themselves
+     */
+    private class CopyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private Search search;
+        private Configuration config;
+        private int depth;
+
+        /**
+         * @param search - (Search) the solve this task belongs to
+         * @param config - (Configuration) the root of the subtree
+         * @param depth - (int) how deep the root is in the whole tree
+         */
+        CopyTask(Search search, Configuration config, int depth) {
+            this.search = search;
+            this.config = config;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            List<CopyTask> tasks = new ArrayList<>();
+            SearchLimit limit = search.newLimit();
+            try {
+                limit.check();
+                if (depth >= cutoff) {
+                    Optional<Configuration> sol = solveSequentially(config, limit);
+                    sol.ifPresent(search::publish);
+                    return;
+                }
+                //A node that is split counts as one
+                limit.tick();
+                if (config.isGoal()) {
+                    search.publish(config);
+                    return;
+                }
+                for (Configuration child : config.getSuccessors()) {
+                    if (child.isValid()) {
+                        tasks.add(new CopyTask(search, child, depth + 1));
+                    }
+                }
+            } catch (SearchAbortedException e) {
+                search.abort(e);
+                return;
+            } finally {
+                search.count(limit);
+            }
+            invokeAll(tasks);
+        }
+
+        /**
+         * The classic recursive backtracking, giving up once the limit
+         * is reached
+         * @param config - (Configuration) a valid configuration
+         * @param limit - (SearchLimit) the limit of this task
+         * @return Optional - the goal, or empty if there is none
+         */
+        private Optional<Configuration> solveSequentially(Configuration config, SearchLimit limit) {
+            limit.tick();
+            if (config.isGoal()) {
+                return Optional.of(config);
+            }
+            for (Configuration child : config.getSuccessors()) {
+                if (child.isValid()) {
+                    Optional<Configuration> sol = solveSequentially(child, limit);
+                    if (sol.isPresent()) {
+                        return sol;
+                    }
+                }
+            }
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Search a subtree of a configuration that is searched in place.
+     * The task owns its configuration: it is a copy nobody else uses.
+     */
+    private class TrailTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private Search search;
+        private UndoableConfiguration config;
+        private int depth;
+
+        /**
+         * @param search - (Search) the solve this task belongs to
+         * @param config - (UndoableConfiguration) the root of the subtree
+         * @param depth - (int) how deep the root is in the whole tree
+         */
+        TrailTask(Search search, UndoableConfiguration config, int depth) {
+            this.search = search;
+            this.config = config;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            List<TrailTask> tasks = new ArrayList<>();
+            SearchLimit limit = search.newLimit();
+            try {
+                limit.check();
+                if (depth >= cutoff) {
+                    TrailSearch trailSearch = new TrailSearch(config);
+                    trailSearch.setLimit(limit);
+                    if (trailSearch.next()) {
+                        search.publish(config.snapshot());
+                    }
+                    return;
+                }
+                //A node that is split counts as one
+                limit.tick();
+                if (config.isGoal()) {
+                    search.publish(config.snapshot());
+                    return;
+                }
+                int branches = config.branchCount();
+                for (int branch = 0; branch < branches; branch++) {
+                    int mark = config.mark();
+                    if (config.apply(branch)) {
+                        tasks.add(new TrailTask(search, config.copy(), depth + 1));
+                    }
+                    config.undo(mark);
+                }
+            } catch (SearchAbortedException e) {
+                search.abort(e);
+                return;
+            } finally {
+                search.count(limit);
+            }
+            invokeAll(tasks);
+        }
+    }
+}
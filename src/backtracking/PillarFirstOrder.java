@@ -0,0 +1,33 @@
+package backtracking;
+
+/**
+ * Branch around the numbered pillars first. As long as a pillar still
+ * needs lasers, the search branches on an open neighbor of the pillar
+ * with the fewest open neighbors, ties going to the first pillar. Only
+ * once every pillar has its lasers or no open neighbor left are the
+ * other cells branched on, from left to right and from top to bottom.
+ *
+ * Safes with many pillars are often decided by them alone, and this
+ * order gets there without weighing the unlit cells at every node.
+ */
+public class PillarFirstOrder implements BranchOrder {
+
+    @Override
+    public int select(SafeTrailConfig config) {
+        SafeBoard board = config.getBoard();
+        int best = -1;
+        int fewest = Integer.MAX_VALUE;
+        for (int p = 0; p < board.getPillarCount() && fewest > 1; p++) {
+            int open = config.getPillarOpen(p);
+            if (open > 0 && open < fewest && config.getPillarLasers(p) < board.getPillarValue(p)) {
+                fewest = open;
+                best = MostConstrainedOrder.firstOpenNeighbor(config, board.getPillarRow(p), board.getPillarCol(p));
+            }
+        }
+        if (best < 0) {
+            //No pillar needs anything, fall back to the first open cell
+            best = config.nextOpen(0);
+        }
+        return best;
+    }
+}
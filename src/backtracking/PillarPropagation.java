@@ -0,0 +1,43 @@
+package backtracking;
+
+/**
+ * Moves the numbered pillars of a SafeTrailConfig force after every
+ * change: a pillar that needs as many lasers as it has open neighbors
+ * gets a laser in each of them, and a pillar that already has its
+ * number blocks its open neighbors. The configuration reviews the
+ * pillars next to every forced move as well, so this runs until
+ * nothing changes, and the search only branches once no pillar forces
+ * anything.
+ */
+final class PillarPropagation {
+
+    /**
+     * Make the moves a pillar that has not failed forces, if any
+     * @param config - (SafeTrailConfig) the configuration being searched
+     * @param p - (int) the index of the pillar
+     */
+    void force(SafeTrailConfig config, int p) {
+        SafeBoard board = config.getBoard();
+        int num = board.getPillarValue(p);
+        int numLasers = config.getPillarLasers(p);
+        int emptySlots = config.getPillarOpen(p);
+        if (emptySlots == 0 || (numLasers != num && numLasers + emptySlots != num)) {
+            return;
+        }
+        //Every open neighbor is forced the same way
+        boolean laser = numLasers < num;
+        int row = board.getPillarRow(p);
+        int col = board.getPillarCol(p);
+        for (int d = 0; d < 4; d++) {
+            int r = row + SafeBoard.DR[d];
+            int c = col + SafeBoard.DC[d];
+            if (config.isOpen(r, c)) {
+                if (laser) {
+                    config.placeLaser(r, c, ConflictExplainer.forcedBy(p));
+                } else {
+                    config.block(r, c, ConflictExplainer.forcedBy(p));
+                }
+            }
+        }
+    }
+}
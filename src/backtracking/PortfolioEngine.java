@@ -0,0 +1,215 @@
+package backtracking;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * A portfolio of searches that race each other. No branch order wins
+ * on every safe, so the same pruning search is started once per order
+ * on a shared executor. The first one that settles the safe, with a
+ * solution or with a proof that there is none, wins; the others are
+ * cancelled through a token that hangs off the caller's.
+ *
+ * Every engine tallies the wins of its strategies over the solves it
+ * ran, so the default order can be tuned from how often each one wins.
+ * The statistics of a solve name the winner after the engine name, as
+ * in "portfolio:pillar-first", and carry the tally up to that solve.
+ */
+public class PortfolioEngine implements SolverEngine {
+
+    //The name the engine is registered under
+    public static final String NAME = "portfolio";
+
+    //Executor shared by the portfolios that are not given their own
+    private static final ExecutorService SHARED = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "portfolio");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ExecutorService executor;
+    private List<String> names = new ArrayList<>();
+    private List<Supplier<BranchOrder>> orders = new ArrayList<>();
+    //Creates the extra test of every search, null when there is none
+    private Supplier<PruningRule> rule;
+    private SolverStatistics statistics;
+    private String lastWinner;
+    //Wins of every strategy over the solves of this engine
+    private Map<String, Long> wins = new TreeMap<>();
+
+    /**
+     * Create a portfolio of the row major, most constrained and pillar
+     * first orders on the shared executor
+     */
+    public PortfolioEngine() {
+        this(SHARED);
+    }
+
+    /**
+     * Create a portfolio of the row major, most constrained and pillar
+     * first orders
+     * @param executor - (ExecutorService) runs the searches, it needs a
+     *                 thread for each of them to race
+     */
+    public PortfolioEngine(ExecutorService executor) {
+        this.executor = executor;
+        addStrategy("row-major", RowMajorOrder::new);
+        addStrategy("most-constrained", MostConstrainedOrder::new);
+        addStrategy("pillar-first", PillarFirstOrder::new);
+    }
+
+    /**
+     * Add a search to the race
+     * @param name - (String) the name its wins are tallied under
+     * @param order - (Supplier) creates the branch order of the search
+     */
+    public void addStrategy(String name, Supplier<BranchOrder> order) {
+        names.add(name);
+        orders.add(order);
+    }
+
+    /**
+     * Give every search of the race a PruningRule of its own
+     * @param rule - (Supplier) creates a rule for each search, or null
+     *             for none
+     */
+    public void setPruningRule(Supplier<PruningRule> rule) {
+        this.rule = rule;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public SolveResult solve(SafeBoard board, Instant deadline, CancellationToken token) {
+        long start = System.nanoTime();
+        CancellationToken race = new CancellationToken(token);
+        ExecutorCompletionService<Run> runs = new ExecutorCompletionService<>(executor);
+        for (int i = 0; i < names.size(); i++) {
+            int strategy = i;
+            runs.submit(() -> run(strategy, board, deadline, race));
+        }
+
+        Run winner = null;
+        Run first = null;
+        long nodes = 0;
+        try {
+            //Wait for every search, so none of them outlives the solve
+            for (int i = 0; i < names.size(); i++) {
+                Run run = runs.take().get();
+                nodes += run.nodes;
+                if (first == null) {
+                    first = run;
+                }
+                SolveResult.Status status = run.result.getStatus();
+                if (winner == null && (status == SolveResult.Status.SOLVED
+                        || status == SolveResult.Status.NO_SOLUTION)) {
+                    winner = run;
+                    race.cancel();
+                }
+            }
+        } catch (InterruptedException e) {
+            race.cancel();
+            Thread.currentThread().interrupt();
+            return finish(start, null, new SolveResult(SolveResult.Status.CANCELLED, null), nodes);
+        } catch (ExecutionException e) {
+            race.cancel();
+            throw new IllegalStateException("a portfolio search failed", e.getCause());
+        }
+
+        if (winner == null) {
+            //Every search was stopped, by the deadline or by the caller
+            return finish(start, null, first.result, nodes);
+        }
+        wins.merge(names.get(winner.strategy), 1L, Long::sum);
+        return finish(start, names.get(winner.strategy), winner.result, nodes);
+    }
+
+    /**
+     * Run the search of one strategy
+     * @param strategy - (int) the index of the strategy
+     * @param board - (SafeBoard) the layout of the safe
+     * @param deadline - (Instant) when to give up, null for never
+     * @param race - (CancellationToken) cancelled once the race is over
+     * @return Run - how the search ended and what it cost
+     */
+    private Run run(int strategy, SafeBoard board, Instant deadline, CancellationToken race) {
+        SafeTrailConfig init = new SafeTrailConfig(board);
+        init.setBranchOrder(orders.get(strategy).get());
+        init.setDeadCellPruning(true);
+        init.setPropagation(true);
+        if (rule != null) {
+            init.setPruningRule(rule.get());
+        }
+        Backtracker bt = new Backtracker(false);
+        SolveResult result = bt.solveIteratively(init, deadline, race);
+        return new Run(strategy, result, bt.getNodeCount());
+    }
+
+    /**
+     * Record the statistics of a solve
+     * @param start - (long) System.nanoTime() when it started
+     * @param winner - (String) the strategy that won, null if none did
+     * @param result - (SolveResult) how it ended
+     * @param nodes - (long) the nodes of all the searches together
+     * @return SolveResult - the result
+     */
+    private SolveResult finish(long start, String winner, SolveResult result, long nodes) {
+        lastWinner = winner;
+        statistics = new SolverStatistics(winner == null ? NAME : NAME + ":" + winner,
+                result.getStatus(), Duration.ofNanos(System.nanoTime() - start), nodes, wins);
+        return result;
+    }
+
+    @Override
+    public SolverStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Return the strategy that won the last solve
+     * @return String - its name, or null if no search settled the safe
+     */
+    public String getLastWinner() {
+        return lastWinner;
+    }
+
+    /**
+     * Return how often every strategy has won the solves of this engine
+     * @return Map - wins by strategy name, sorted by name
+     */
+    public Map<String, Long> getWins() {
+        return new TreeMap<>(wins);
+    }
+
+    /**
+     * How the search of one strategy ended
+     */
+    private static class Run {
+        private int strategy;
+        private SolveResult result;
+        private long nodes;
+
+        /**
+         * @param strategy - (int) the index of the strategy
+         * @param result - (SolveResult) how its search ended
+         * @param nodes - (long) the nodes it visited
+         */
+        Run(int strategy, SolveResult result, long nodes) {
+            this.strategy = strategy;
+            this.result = result;
+            this.nodes = nodes;
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package backtracking;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * A dynamic programming engine for safes that are short in one
+ * direction. Instead of searching a tree, it sweeps the cells in order,
+ * line by line across the short side, and keeps every distinct
+ * "broken profile" that the cells swept so far can leave behind,
+ * together with how many ways lead to it. The work is linear in the
+ * long side and only exponential in the short one.
+ *
+ * The safe is looked at so that the short side runs across: a safe
+ * with fewer rows than columns is swept column by column. Below,
+ * "row" and "column" are those of the swept view. The profile keeps,
+ * for every column:
+ *
+ * - the state of its vertical segment: no laser yet (FREE), a laser
+ *   in the cell just above (LASER_ABOVE) or further up (LASER), a cell
+ *   above that is still dark and needs a laser below it (NEED), or a
+ *   cell in the current row that needs a laser below unless the
+ *   current horizontal segment gets one (COND)
+ * - how many lasers a numbered pillar just above still needs from the
+ *   cell below it
+ *
+ * and for the current row whether its horizontal segment has a laser
+ * and whether the cell just left is a laser. That is 5 bits a column
+ * and 2 more, packed in a long.
+ */
+public class ProfileSolver {
+
+    //Widest short side that fits in the profile
+    public static final int MAX_WIDTH = 12;
+    //Widest short side the "auto" engine picks this engine for, and
+    //how many times longer than that the long side has to be. On
+    //anything squarer the pruning search is faster.
+    public static final int AUTO_WIDTH = 2;
+    public static final int AUTO_ASPECT = 8;
+
+    //States of the vertical segment of a column
+    private static final int FREE = 0;
+    private static final int NEED = 1;
+    private static final int COND = 2;
+    private static final int LASER = 3;
+    private static final int LASER_ABOVE = 4;
+    //A transition that breaks a rule
+    private static final long FAIL = -1;
+
+    private SafeBoard board;
+    //Is the safe swept column by column?
+    private boolean transposed;
+    //Length of the short side and of the long side
+    private int width;
+    private int length;
+    //Bits of the horizontal segment flag and of the left laser flag
+    private long segmentLaser;
+    private long leftLaser;
+    //Deadline and cancellation token of the running solve, may be null
+    private SearchLimit limit;
+    //Profiles taken over a cell so far
+    private long profileCount;
+
+    /**
+     * Set up the engine for a safe
+     * @param board - (SafeBoard) the layout of the safe
+     * @throws IllegalArgumentException if the short side is wider than MAX_WIDTH
+     */
+    public ProfileSolver(SafeBoard board) {
+        if (!fits(board)) {
+            throw new IllegalArgumentException("safe is too wide for the profile: "
+                    + board.getRDIM() + "x" + board.getCDIM());
+        }
+        this.board = board;
+        this.transposed = board.getRDIM() < board.getCDIM();
+        this.width = transposed ? board.getRDIM() : board.getCDIM();
+        this.length = transposed ? board.getCDIM() : board.getRDIM();
+        this.segmentLaser = 1L << (5 * width);
+        this.leftLaser = 1L << (5 * width + 1);
+    }
+
+    /**
+     * Is the safe short enough for the profile at all?
+     * @param board - (SafeBoard) the layout of the safe
+     * @return true if the short side is at most MAX_WIDTH
+     */
+    public static boolean fits(SafeBoard board) {
+        return Math.min(board.getRDIM(), board.getCDIM()) <= MAX_WIDTH;
+    }
+
+    /**
+     * Is the safe short and long enough for the "auto" engine to pick
+     * this one?
+     * @param board - (SafeBoard) the layout of the safe
+     * @return true if the short side is at most AUTO_WIDTH and the long
+     *         side at least AUTO_ASPECT times the short one
+     */
+    public static boolean suits(SafeBoard board) {
+        int shortSide = Math.min(board.getRDIM(), board.getCDIM());
+        int longSide = Math.max(board.getRDIM(), board.getCDIM());
+        return shortSide <= AUTO_WIDTH && longSide >= AUTO_ASPECT * shortSide;
+    }
+
+    /**
+     * Count the solutions of the safe. Only two layers of profiles are
+     * kept at a time. A count too big for a long comes back as
+     * Long.MAX_VALUE.
+     * @return long - the number of solutions
+     */
+    public long countSolutions() {
+        StateTable layer = new StateTable();
+        layer.add(0L, 1);
+        for (int t = 0; t < width * length; t++) {
+            layer = sweep(layer, t);
+        }
+        long total = 0;
+        for (int k = 0; k < layer.keys.length; k++) {
+            if (layer.keys[k] != StateTable.EMPTY && accepts(layer.keys[k])) {
+                total = addCounts(total, layer.counts[k]);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Find a solution. The path to a final profile is read back from
+     * the last cell to the first, which needs the layers of profiles
+     * in reverse. Only every stride-th layer is kept on the way
+     * forward, about the square root of the number of cells, and the
+     * layers in between are swept again from the one before them when
+     * the walk back gets there. That sweeps every cell twice, but holds
+     * two square roots of layers instead of all of them.
+     * @return Optional - the solution, or empty if there is none
+     */
+    public Optional<Configuration> solve() {
+        int cells = width * length;
+        int stride = (int) Math.ceil(Math.sqrt(cells));
+        StateTable[] checkpoints = new StateTable[(cells + stride - 1) / stride];
+        StateTable layer = new StateTable();
+        layer.add(0L, 1);
+        for (int t = 0; t < cells; t++) {
+            if (t % stride == 0) {
+                checkpoints[t / stride] = layer;
+            }
+            layer = sweep(layer, t);
+        }
+
+        long state = FAIL;
+        for (int k = 0; k < layer.keys.length && state == FAIL; k++) {
+            if (layer.keys[k] != StateTable.EMPTY && accepts(layer.keys[k])) {
+                state = layer.keys[k];
+            }
+        }
+        if (state == FAIL) {
+            return Optional.empty();
+        }
+
+        //Walk back, finding a profile and a choice that lead to the next
+        //one, a stride of layers at a time
+        SafeConfig config = new SafeConfig(board);
+        StateTable[] block = new StateTable[stride];
+        for (int b = checkpoints.length - 1; b >= 0; b--) {
+            int first = b * stride;
+            int end = Math.min(first + stride, cells);
+            block[0] = checkpoints[b];
+            checkpoints[b] = null;
+            for (int t = first; t + 1 < end; t++) {
+                block[t + 1 - first] = sweep(block[t - first], t);
+            }
+            for (int t = end - 1; t >= first; t--) {
+                state = previous(block[t - first], t, state, config);
+                block[t - first] = null;
+            }
+        }
+        config.markDecided();
+        return Optional.of(config);
+    }
+
+    /**
+     * Find a profile before a cell and a choice for the cell that lead
+     * to a profile after it, and put a laser in the configuration if
+     * the choice was one
+     * @param layer - (StateTable) the profiles before the cell
+     * @param t - (int) the cell, in sweep order
+     * @param state - (long) the profile after the cell
+     * @param config - (SafeConfig) the solution being read back
+     * @return long - the profile before the cell
+     */
+    private long previous(StateTable layer, int t, long state, SafeConfig config) {
+        int i = t / width;
+        int j = t % width;
+        for (int k = 0; k < layer.keys.length; k++) {
+            long from = layer.keys[k];
+            if (from == StateTable.EMPTY) {
+                continue;
+            }
+            for (int x = 0; x <= (isFree(i, j) ? 1 : 0); x++) {
+                if (step(from, i, j, x) == state) {
+                    if (x == 1) {
+                        config.placeLaser(transposed ? j : i, transposed ? i : j);
+                    }
+                    return from;
+                }
+            }
+        }
+        return FAIL;
+    }
+
+    /**
+     * Find a solution, giving up at a deadline or when a token is
+     * cancelled
+     * @param deadline - (Instant) when to give up, null for never
+     * @param token - (CancellationToken) the token to watch, may be null
+     * @return SolveResult - the solution, NO_SOLUTION, or why the sweep
+     *                       stopped early
+     */
+    public SolveResult solve(Instant deadline, CancellationToken token) {
+        limit = new SearchLimit(deadline, token, SearchLimit.DEFAULT_INTERVAL);
+        try {
+            limit.check();
+            return SolveResult.of(solve());
+        } catch (SearchAbortedException e) {
+            return new SolveResult(e.getStatus(), null);
+        } finally {
+            limit = null;
+        }
+    }
+
+    /**
+     * Return the number of profiles taken over a cell so far, the
+     * work the sweeps have done
+     * @return long - the profiles
+     */
+    public long getProfileCount() {
+        return profileCount;
+    }
+
+    /**
+     * Take every profile of a layer over one cell
+     * @param layer - (StateTable) the profiles before the cell
+     * @param t - (int) the cell, in sweep order
+     * @return StateTable - the profiles after the cell
+     */
+    private StateTable sweep(StateTable layer, int t) {
+        int i = t / width;
+        int j = t % width;
+        int choices = isFree(i, j) ? 2 : 1;
+        StateTable next = new StateTable();
+        for (int k = 0; k < layer.keys.length; k++) {
+            long from = layer.keys[k];
+            if (from == StateTable.EMPTY) {
+                continue;
+            }
+            profileCount++;
+            if (limit != null) {
+                limit.tick();
+            }
+            for (int x = 0; x < choices; x++) {
+                long to = step(from, i, j, x);
+                if (to != FAIL) {
+                    next.add(to, layer.counts[k]);
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Decide a cell: the profile after it, given the profile before it
+     * @param s - (long) the profile before the cell
+     * @param i - (int) the row of the cell in the swept view
+     * @param j - (int) the column of the cell in the swept view
+     * @param x - (int) 1 to put a laser in the cell, 0 not to
+     * @return long - the profile after the cell, or FAIL
+     */
+    private long step(long s, int i, int j, int x) {
+        int col = colState(s, j);
+        int below = below(s, j);
+        boolean left = (s & leftLaser) != 0;
+
+        if (!isFree(i, j)) {
+            //The vertical segment ends here, and a pillar above can not
+            //get its laser from this cell
+            if (col == NEED || below > 1) {
+                return FAIL;
+            }
+            s = endSegment(s);
+            s = setColState(s, j, FREE);
+            int newBelow = 0;
+            char ch = at(i, j);
+            if (ch >= '0' && ch <= '4') {
+                int need = (ch - '0') - (col == LASER_ABOVE ? 1 : 0) - (left ? 1 : 0);
+                int room = (j + 1 < width && isFree(i, j + 1) ? 1 : 0)
+                        + (i + 1 < length && isFree(i + 1, j) ? 1 : 0);
+                if (need < 0 || need > room) {
+                    return FAIL;
+                }
+                newBelow = need + 1;
+            }
+            return setBelow(s, j, newBelow);
+        }
+
+        //No other laser in sight
+        boolean segmentHasLaser = (s & segmentLaser) != 0;
+        if (x == 1 && (segmentHasLaser || col == LASER || col == LASER_ABOVE)) {
+            return FAIL;
+        }
+        //A numbered pillar above decides this cell
+        if (below != 0) {
+            if (below - 1 != x) {
+                return FAIL;
+            }
+            s = setBelow(s, j, 0);
+        }
+        //A numbered pillar to the left counts this laser
+        if (x == 1 && j > 0 && at(i, j - 1) >= '0' && at(i, j - 1) <= '4') {
+            int pillar = below(s, j - 1);
+            if (pillar <= 1) {
+                return FAIL;
+            }
+            s = setBelow(s, j - 1, pillar - 1);
+        }
+
+        if (x == 1) {
+            //The laser lights the dark cells of its row segment
+            s |= segmentLaser | leftLaser;
+            for (int c = 0; c < width; c++) {
+                if (colState(s, c) == COND) {
+                    s = setColState(s, c, FREE);
+                }
+            }
+            s = setColState(s, j, LASER_ABOVE);
+        } else {
+            boolean lit = segmentHasLaser || col == LASER || col == LASER_ABOVE;
+            if (col == LASER_ABOVE) {
+                s = setColState(s, j, LASER);
+            } else if (!lit && col == FREE) {
+                s = setColState(s, j, COND);
+            }
+            s &= ~leftLaser;
+        }
+        if (j == width - 1) {
+            s = endSegment(s);
+        }
+        return s;
+    }
+
+    /**
+     * Close the current horizontal segment. Without a laser in it, its
+     * dark cells now need a laser below them.
+     * @param s - (long) the profile
+     * @return long - the profile with no open horizontal segment
+     */
+    private long endSegment(long s) {
+        if ((s & segmentLaser) == 0) {
+            for (int c = 0; c < width; c++) {
+                if (colState(s, c) == COND) {
+                    s = setColState(s, c, NEED);
+                }
+            }
+        }
+        return s & ~(segmentLaser | leftLaser);
+    }
+
+    /**
+     * Is a profile after the last cell a solution? No cell may still
+     * need a laser, and no pillar may still need one either.
+     * @param s - (long) the final profile
+     * @return true if it is a solution
+     */
+    private boolean accepts(long s) {
+        for (int c = 0; c < width; c++) {
+            if (colState(s, c) == NEED || below(s, c) > 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the layout character of a cell of the swept view
+     * @param i - (int) the row in the swept view
+     * @param j - (int) the column in the swept view
+     * @return char - the layout character
+     */
+    private char at(int i, int j) {
+        return transposed ? board.getLayout(j, i) : board.getLayout(i, j);
+    }
+
+    /**
+     * Can a cell of the swept view hold a laser?
+     * @param i - (int) the row in the swept view
+     * @param j - (int) the column in the swept view
+     * @return true if the cell is free
+     */
+    private boolean isFree(int i, int j) {
+        return at(i, j) == '.';
+    }
+
+    private static int colState(long s, int j) {
+        return (int) (s >>> (5 * j)) & 7;
+    }
+
+    private static long setColState(long s, int j, int value) {
+        return (s & ~(7L << (5 * j))) | ((long) value << (5 * j));
+    }
+
+    private static int below(long s, int j) {
+        return (int) (s >>> (5 * j + 3)) & 3;
+    }
+
+    private static long setBelow(long s, int j, int value) {
+        return (s & ~(3L << (5 * j + 3))) | ((long) value << (5 * j + 3));
+    }
+
+    /**
+     * Add two counts, stopping at Long.MAX_VALUE
+     * @param a - (long) a count
+     * @param b - (long) another count
+     * @return long - the sum, or Long.MAX_VALUE if it is too big
+     */
+    private static long addCounts(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    /**
+     * The profiles of a layer and how many ways lead to each, in an
+     * open addressing hash table
+     */
+    private static class StateTable {
+        //Profiles never use the sign bit
+        private static final long EMPTY = -1;
+
+        private long[] keys;
+        private long[] counts;
+        private int size;
+
+        StateTable() {
+            keys = new long[16];
+            counts = new long[16];
+            Arrays.fill(keys, EMPTY);
+        }
+
+        /**
+         * Add ways to a profile
+         * @param key - (long) the profile
+         * @param count - (long) the ways
+         */
+        void add(long key, long count) {
+            if (2 * (size + 1) > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int k = (int) (key * 0x9E3779B97F4A7C15L >>> 40) & mask;
+            while (keys[k] != EMPTY && keys[k] != key) {
+                k = (k + 1) & mask;
+            }
+            if (keys[k] == EMPTY) {
+                keys[k] = key;
+                size++;
+            }
+            counts[k] = addCounts(counts[k], count);
+        }
+
+        /**
+         * Double the table
+         */
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldCounts = counts;
+            keys = new long[oldKeys.length * 2];
+            counts = new long[oldKeys.length * 2];
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+            for (int k = 0; k < oldKeys.length; k++) {
+                if (oldKeys[k] != EMPTY) {
+                    add(oldKeys[k], oldCounts[k]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package backtracking;
+
+/**
+ * An extra test a configuration searched in place can run at every
+ * node, on top of its own. The rule keeps whatever counts it needs:
+ * the configuration tells it about every laser it places and every cell
+ * it lights or closes, and about every one of those it takes back, in
+ * the reverse order. After each branch the configuration asks the rule
+ * whether the branch can still lead to a solution.
+ *
+ * A rule must be admissible: it may only cut a branch below which there
+ * is no solution, so turning it on never loses one. SafeTrailConfig
+ * and SegmentGraphConfig take a rule with setPruningRule, and so does
+ * the PortfolioEngine for each of its searches. The classic SafeConfig
+ * search, the SatSolver, the ProfileSolver and the LocalSearch do not
+ * search in place and take none.
+ */
+public interface PruningRule {
+    /**
+     * Start over from the empty safe: no lasers, no lit cells and every
+     * free cell open. The configuration then reports its current state.
+     *
+     * @param board the layout of the safe
+     */
+    public void start(SafeBoard board);
+
+    /**
+     * A laser was placed in an open cell, or taken away again.
+     *
+     * @param cell the row major index of the cell
+     * @param placed true when placed, false when taken back
+     */
+    public void laser(int cell, boolean placed);
+
+    /**
+     * A cell was lit by a laser or a beam, or turned dark again.
+     *
+     * @param cell the row major index of the cell
+     * @param lit true when lit, false when taken back
+     */
+    public void lit(int cell, boolean lit);
+
+    /**
+     * A cell stopped being a place a laser could go, because it was lit
+     * or blocked, or became one again.
+     *
+     * @param cell the row major index of the cell
+     * @param closed true when closed, false when taken back
+     */
+    public void closed(int cell, boolean closed);
+
+    /**
+     * Can the current state still lead to a solution?
+     *
+     * @return false if the branch should be cut; true otherwise
+     */
+    public boolean admits();
+
+    /**
+     * Copy the rule with its counts, for a copy of the configuration
+     * that is searched on its own.
+     *
+     * @return an independent copy of the rule
+     */
+    public PruningRule copy();
+}
@@ -0,0 +1,33 @@
+package backtracking;
+
+/**
+ * When a search that restarts should give up on its run. Both the
+ * SatSolver and the restarting Backtracker let run i go on for luby(i)
+ * times their own unit of work, conflicts or nodes, so most runs are
+ * short while a few get long enough to finish a hard safe.
+ */
+final class RestartSchedule {
+
+    private RestartSchedule() {
+    }
+
+    /**
+     * Return the i-th term of the Luby sequence 1 1 2 1 1 2 4 1 1 2 ...
+     * @param i - (int) the term, starting at 1
+     * @return long - its value
+     */
+    static long luby(int i) {
+        int k = 1;
+        while ((1L << k) - 1 < i) {
+            k++;
+        }
+        while ((1L << k) - 1 != i) {
+            i -= (1 << (k - 1)) - 1;
+            k = 1;
+            while ((1L << k) - 1 < i) {
+                k++;
+            }
+        }
+        return 1L << (k - 1);
+    }
+}
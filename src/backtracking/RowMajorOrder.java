@@ -0,0 +1,19 @@
+package backtracking;
+
+/**
+ * Branch on the open cells from left to right and from top to bottom,
+ * the same order SafeConfig walks the safe in. It is kept as the
+ * baseline to compare the other orders against.
+ */
+public class RowMajorOrder implements BranchOrder {
+
+    @Override
+    public int select(SafeTrailConfig config) {
+        return config.nextOpen(config.getScanPosition());
+    }
+
+    @Override
+    public boolean scansInOrder() {
+        return true;
+    }
+}
@@ -0,0 +1,465 @@
+package backtracking;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Arrays;
+import java.util.Scanner;
+
+/**
+ * The fixed layout of a safe: its dimensions, the pillars and the
+ * walls. It is read once per puzzle and shared by every configuration
+ * of that puzzle, so the configurations only have to carry what
+ * changes during the search (lasers and beams).
+ *
+ * The blocked cells (pillars and 'X') are packed into bitboards, one
+ * long[] of row masks and one long[] of column masks. Row r of a row
+ * mask starts at word r * getRowWords() and holds bit c for column c.
+ * Column c of a column mask starts at word c * getColWords() and holds
+ * bit r for row r. The static helpers at the bottom of this class work
+ * on masks laid out this way.
+ *
+ * The runs of free cells between pillars are looked up in a
+ * SegmentIndex that is built together with the board.
+ */
+public class SafeBoard {
+
+    //Row and column offsets of the four neighbors of a cell: up, down,
+    //left and right
+    static final int[] DR = {-1, 1, 0, 0};
+    static final int[] DC = {0, 0, -1, 1};
+
+    private int rDIM;
+    private int cDIM;
+    //Number of longs needed for a single row / column mask
+    private int rowWords;
+    private int colWords;
+    private char[][] layout;
+
+    //Bitboards of the pillars and walls, row major and column major
+    private long[] blockRows;
+    private long[] blockCols;
+    //Bitboard of the cells a laser or a beam can go in, row major
+    private long[] freeRows;
+
+    //Position and number of every numbered pillar
+    private int[] pillarRow;
+    private int[] pillarCol;
+    private int[] pillarValue;
+    //Free cells next to every pillar, and the pillars next to every
+    //cell (row major)
+    private int[] pillarFree;
+    private int[][] cellPillars;
+
+    //Horizontal and vertical runs of free cells
+    private SegmentIndex segments;
+
+    /**
+     * Read the layout of a safe from a file. Only the dimensions and
+     * the first rDIM x cDIM cells are read, anything after that is
+     * ignored.
+     * @param filename - (String) the safe file
+     * @throws FileNotFoundException if the file does not exist
+     */
+    public SafeBoard(String filename) throws FileNotFoundException {
+        Scanner in = new Scanner(new File(filename)); //scanning the file in
+        int rows = in.nextInt();    //Reading in the dimension of the safe
+        int cols = in.nextInt();
+        char[][] cells = new char[rows][cols];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                cells[r][c] = in.next().charAt(0);
+            }
+        }
+        in.close();
+        build(cells);
+    }
+
+    /**
+     * Build a safe from a grid of characters. Lasers and beams in the
+     * grid are treated as empty cells.
+     * @param cells - (char[][]) the grid of the safe
+     */
+    public SafeBoard(char[][] cells) {
+        build(cells);
+    }
+
+    /**
+     * Fill in the bitboards and the pillar table from the grid
+     * @param cells - (char[][]) the grid of the safe
+     */
+    private void build(char[][] cells) {
+        this.rDIM = cells.length;
+        this.cDIM = rDIM == 0 ? 0 : cells[0].length;
+        this.rowWords = (cDIM + 63) >>> 6;
+        this.colWords = (rDIM + 63) >>> 6;
+        this.layout = new char[rDIM][cDIM];
+        this.blockRows = new long[rDIM * rowWords];
+        this.blockCols = new long[cDIM * colWords];
+        this.freeRows = new long[rDIM * rowWords];
+
+        int pillars = 0;
+        for (int r = 0; r < rDIM; r++) {
+            for (int c = 0; c < cDIM; c++) {
+                char ch = cells[r][c];
+                if (ch == 'L' || ch == '*') {
+                    ch = '.';
+                }
+                layout[r][c] = ch;
+                if (ch == '.') {
+                    freeRows[r * rowWords + (c >>> 6)] |= 1L << c;
+                } else {
+                    blockRows[r * rowWords + (c >>> 6)] |= 1L << c;
+                    blockCols[c * colWords + (r >>> 6)] |= 1L << r;
+                    if (ch >= '0' && ch <= '4') {
+                        pillars++;
+                    }
+                }
+            }
+        }
+
+        segments = new SegmentIndex(layout);
+
+        pillarRow = new int[pillars];
+        pillarCol = new int[pillars];
+        pillarValue = new int[pillars];
+        int p = 0;
+        for (int r = 0; r < rDIM; r++) {
+            for (int c = 0; c < cDIM; c++) {
+                if (layout[r][c] >= '0' && layout[r][c] <= '4') {
+                    pillarRow[p] = r;
+                    pillarCol[p] = c;
+                    pillarValue[p] = layout[r][c] - '0';
+                    p++;
+                }
+            }
+        }
+
+        //Which pillars every cell is next to, so a change to a cell only
+        //has to look at the pillars it touches
+        int[] none = new int[0];
+        cellPillars = new int[rDIM * cDIM][];
+        Arrays.fill(cellPillars, none);
+        pillarFree = new int[pillars];
+        for (p = 0; p < pillars; p++) {
+            for (int d = 0; d < 4; d++) {
+                int r = pillarRow[p] + DR[d];
+                int c = pillarCol[p] + DC[d];
+                if (r < 0 || r >= rDIM || c < 0 || c >= cDIM) {
+                    continue;
+                }
+                int[] old = cellPillars[r * cDIM + c];
+                int[] grown = Arrays.copyOf(old, old.length + 1);
+                grown[old.length] = p;
+                cellPillars[r * cDIM + c] = grown;
+                if (layout[r][c] == '.') {
+                    pillarFree[p]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the number of rows
+     * @return int - number of rows
+     */
+    public int getRDIM() {
+        return rDIM;
+    }
+
+    /**
+     * Return the number of columns
+     * @return int - number of columns
+     */
+    public int getCDIM() {
+        return cDIM;
+    }
+
+    /**
+     * Return the number of longs in a single row mask
+     * @return int - words per row
+     */
+    public int getRowWords() {
+        return rowWords;
+    }
+
+    /**
+     * Return the number of longs in a single column mask
+     * @return int - words per column
+     */
+    public int getColWords() {
+        return colWords;
+    }
+
+    /**
+     * Return the character of the layout at a cell, '.' for a cell
+     * that can hold a laser or a beam
+     * @param row - (int) the row of the cell
+     * @param col - (int) the col of the cell
+     * @return char - the layout character
+     */
+    public char getLayout(int row, int col) {
+        return layout[row][col];
+    }
+
+    /**
+     * Is the cell a pillar or a wall?
+     * @param row - (int) the row of the cell
+     * @param col - (int) the col of the cell
+     * @return true if nothing can be placed in the cell
+     */
+    public boolean isBlocked(int row, int col) {
+        return (blockRows[row * rowWords + (col >>> 6)] & (1L << col)) != 0;
+    }
+
+    /**
+     * Return the row mask of the blocked cells. It is shared, callers
+     * must not change it.
+     * @return long[] - blocked cells, row major
+     */
+    long[] getBlockRows() {
+        return blockRows;
+    }
+
+    /**
+     * Return the column mask of the blocked cells. It is shared, callers
+     * must not change it.
+     * @return long[] - blocked cells, column major
+     */
+    long[] getBlockCols() {
+        return blockCols;
+    }
+
+    /**
+     * Return the row mask of the cells that can hold a laser or a beam.
+     * It is shared, callers must not change it.
+     * @return long[] - free cells, row major
+     */
+    long[] getFreeRows() {
+        return freeRows;
+    }
+
+    /**
+     * Return the number of numbered pillars
+     * @return int - number of pillars
+     */
+    public int getPillarCount() {
+        return pillarValue.length;
+    }
+
+    /**
+     * Return the row of a pillar
+     * @param pillar - (int) the index of the pillar
+     * @return int - the row of the pillar
+     */
+    public int getPillarRow(int pillar) {
+        return pillarRow[pillar];
+    }
+
+    /**
+     * Return the column of a pillar
+     * @param pillar - (int) the index of the pillar
+     * @return int - the column of the pillar
+     */
+    public int getPillarCol(int pillar) {
+        return pillarCol[pillar];
+    }
+
+    /**
+     * Return the number of lasers a pillar needs around it
+     * @param pillar - (int) the index of the pillar
+     * @return int - the number on the pillar
+     */
+    public int getPillarValue(int pillar) {
+        return pillarValue[pillar];
+    }
+
+    /**
+     * Return the number of free cells next to a pillar, the most
+     * lasers it could ever have around it
+     * @param pillar - (int) the index of the pillar
+     * @return int - number of free neighbors
+     */
+    public int getPillarFreeNeighbors(int pillar) {
+        return pillarFree[pillar];
+    }
+
+    /**
+     * Return the numbered pillars next to a cell. The array is shared,
+     * callers must not change it.
+     * @param cell - (int) row major index of the cell
+     * @return int[] - indices of the pillars next to the cell
+     */
+    public int[] getNeighborPillars(int cell) {
+        return cellPillars[cell];
+    }
+
+    /**
+     * Return the segment index of the safe
+     * @return SegmentIndex - the runs of free cells
+     */
+    public SegmentIndex getSegments() {
+        return segments;
+    }
+
+    /**
+     * Return the first column of the horizontal run of free cells
+     * that holds the given cell
+     * @param row - (int) the row of the cell
+     * @param col - (int) the col of the cell
+     * @return int - the first column of the run
+     */
+    public int rowSegmentStart(int row, int col) {
+        return segments.getStart(segments.getRowSegment(row, col));
+    }
+
+    /**
+     * Return the last column of the horizontal run of free cells
+     * that holds the given cell
+     * @param row - (int) the row of the cell
+     * @param col - (int) the col of the cell
+     * @return int - the last column of the run
+     */
+    public int rowSegmentEnd(int row, int col) {
+        return segments.getEnd(segments.getRowSegment(row, col));
+    }
+
+    /**
+     * Return the first row of the vertical run of free cells
+     * that holds the given cell
+     * @param row - (int) the row of the cell
+     * @param col - (int) the col of the cell
+     * @return int - the first row of the run
+     */
+    public int colSegmentStart(int row, int col) {
+        return segments.getStart(segments.getColSegment(row, col));
+    }
+
+    /**
+     * Return the last row of the vertical run of free cells
+     * that holds the given cell
+     * @param row - (int) the row of the cell
+     * @param col - (int) the col of the cell
+     * @return int - the last row of the run
+     */
+    public int colSegmentEnd(int row, int col) {
+        return segments.getEnd(segments.getColSegment(row, col));
+    }
+
+    /**
+     * Set the bits from..to (both included) of the mask that starts
+     * at word base
+     * @param bits - (long[]) the bitboard
+     * @param base - (int) the first word of the mask
+     * @param from - (int) first bit
+     * @param to - (int) last bit
+     */
+    static void setRange(long[] bits, int base, int from, int to) {
+        if (from > to) {
+            return;
+        }
+        int first = from >>> 6;
+        int last = to >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> (63 - (to & 63));
+        if (first == last) {
+            bits[base + first] |= firstMask & lastMask;
+            return;
+        }
+        bits[base + first] |= firstMask;
+        for (int w = first + 1; w < last; w++) {
+            bits[base + w] = -1L;
+        }
+        bits[base + last] |= lastMask;
+    }
+
+    /**
+     * Count the set bits from..to (both included) of the mask that
+     * starts at word base
+     * @param bits - (long[]) the bitboard
+     * @param base - (int) the first word of the mask
+     * @param from - (int) first bit
+     * @param to - (int) last bit
+     * @return int - number of set bits in the range
+     */
+    static int countRange(long[] bits, int base, int from, int to) {
+        if (from > to) {
+            return 0;
+        }
+        int first = from >>> 6;
+        int last = to >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> (63 - (to & 63));
+        if (first == last) {
+            return Long.bitCount(bits[base + first] & firstMask & lastMask);
+        }
+        int count = Long.bitCount(bits[base + first] & firstMask);
+        for (int w = first + 1; w < last; w++) {
+            count += Long.bitCount(bits[base + w]);
+        }
+        return count + Long.bitCount(bits[base + last] & lastMask);
+    }
+
+    /**
+     * Find the first set bit at or after from in the mask that starts
+     * at word base
+     * @param bits - (long[]) the bitboard
+     * @param base - (int) the first word of the mask
+     * @param from - (int) where to start looking
+     * @param length - (int) number of bits in the mask
+     * @return int - the bit, or -1 if there is none
+     */
+    static int nextSetBit(long[] bits, int base, int from, int length) {
+        if (from >= length) {
+            return -1;
+        }
+        int w = from >>> 6;
+        int words = (length + 63) >>> 6;
+        long word = bits[base + w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                int bit = (w << 6) + Long.numberOfTrailingZeros(word);
+                return bit < length ? bit : -1;
+            }
+            if (++w == words) {
+                return -1;
+            }
+            word = bits[base + w];
+        }
+    }
+
+    /**
+     * Find the last set bit at or before from in the mask that starts
+     * at word base
+     * @param bits - (long[]) the bitboard
+     * @param base - (int) the first word of the mask
+     * @param from - (int) where to start looking
+     * @return int - the bit, or -1 if there is none
+     */
+    static int prevSetBit(long[] bits, int base, int from) {
+        if (from < 0) {
+            return -1;
+        }
+        int w = from >>> 6;
+        long word = bits[base + w] & (-1L >>> (63 - (from & 63)));
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+            }
+            if (w-- == 0) {
+                return -1;
+            }
+            word = bits[base + w];
+        }
+    }
+
+    /**
+     * Is a bit of the mask that starts at word base set?
+     * @param bits - (long[]) the bitboard
+     * @param base - (int) the first word of the mask
+     * @param bit - (int) the bit
+     * @return true if it is set
+     */
+    static boolean testBit(long[] bits, int base, int bit) {
+        return (bits[base + (bit >>> 6)] & (1L << bit)) != 0;
+    }
+}
@@ -1,11 +1,7 @@
 package backtracking;
 
-import model.LasersModel;
-
-import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.Collection;
-import java.util.Scanner;
 import java.util.ArrayList;
 
 /**
@@ -13,9 +9,16 @@ import java.util.ArrayList;
  * used by the backtracker to generate successors, check for
  * validity, and eventually find the goal.
  *
- * This class is given to you here, but it will undoubtedly need to
- * communicate with the model.  You are free to move it into the model
- * package and/or incorporate it into another class.
+ * The layout of the safe lives in a SafeBoard that is shared by all
+ * the configurations of a puzzle. A configuration only keeps the
+ * lasers and the lit cells, packed into long[] bitboards, so copying
+ * it for a successor costs a few words per row instead of a full
+ * char[][] grid.
+ *
+ * Every numbered pillar keeps count of the lasers next to it and of
+ * the free cells next to it that are not decided yet. Deciding a cell
+ * only changes the pillars it touches, so those are the only ones
+ * isValid has to look at.
  *
  * @author Sean Strout @ RIT CS
  * @author Jennifer Liu
@@ -23,37 +26,50 @@ import java.util.ArrayList;
 
 public class SafeConfig implements Configuration{
 
+    private SafeBoard board;
     private int rDIM;
     private int cDIM;
-    private char[][] grid;
+    //Lasers, row major and column major
+    private long[] laserRows;
+    private long[] laserCols;
+    //Cells covered by a laser or a beam, row major
+    private long[] litRows;
+    //Lasers and undecided free cells next to every pillar
+    private int[] pillarLasers;
+    private int[] pillarOpen;
+    //Number of pillars that do not have their number of lasers
+    private int wrongPillars;
     //Tells me where my current position is
-    int currRow;
-    int currCol;
-
-    private LasersModel lasersModel;
+    private int currRow;
+    private int currCol;
 
     public SafeConfig(String filename) throws FileNotFoundException {
-        // TODO
-        Scanner in = new Scanner(new File(filename)); //scanning the file in
-        this.rDIM = in.nextInt();    //Reading in the dimension of the safe
-        this.cDIM = in.nextInt();
-        this.grid = new char[rDIM][cDIM];// creating initial safe grid with their
-        // respective row and col dimensions
-
-        //Current Position
-        currRow = 0;
-        currCol = 0;
-
-        lasersModel = new LasersModel(filename);
+        this(new SafeBoard(filename));
+    }
 
-        //CONSTRUCTING THE GRID BY ADDING VALUES
-        for (int r =0; r <rDIM; r++){
-            for(int c = 0; c < cDIM; c++){
-                String s = in.next();
-                this.grid[r][c] = s.charAt(0);
+    /**
+     * Create the empty configuration of a safe
+     * @param board - (SafeBoard) the layout of the safe
+     */
+    public SafeConfig(SafeBoard board) {
+        this.board = board;
+        this.rDIM = board.getRDIM();
+        this.cDIM = board.getCDIM();
+        this.laserRows = new long[rDIM * board.getRowWords()];
+        this.laserCols = new long[cDIM * board.getColWords()];
+        this.litRows = new long[rDIM * board.getRowWords()];
+        this.pillarLasers = new int[board.getPillarCount()];
+        this.pillarOpen = new int[board.getPillarCount()];
+        for (int p = 0; p < board.getPillarCount(); p++) {
+            pillarOpen[p] = board.getPillarFreeNeighbors(p);
+            if (board.getPillarValue(p) != 0) {
+                wrongPillars++;
             }
         }
 
+        //Current Position
+        currRow = 0;
+        currCol = 0;
     }
 
     /**
@@ -62,29 +78,74 @@ public class SafeConfig implements Configuration{
      *                 to copy
      */
     public SafeConfig(SafeConfig other){
+        this.board = other.board;
         this.rDIM = other.rDIM;
         this.cDIM = other.cDIM;
         this.currRow = other.currRow;
         this.currCol = other.currCol;
-        this.grid = new char[rDIM][cDIM];
-        this.lasersModel = other.lasersModel;
+        this.laserRows = other.laserRows.clone();
+        this.laserCols = other.laserCols.clone();
+        this.litRows = other.litRows.clone();
+        this.pillarLasers = other.pillarLasers.clone();
+        this.pillarOpen = other.pillarOpen.clone();
+        this.wrongPillars = other.wrongPillars;
+    }
+
+    /**
+     * Put a laser in a cell and light up the cells its beams reach.
+     * A beam covers the whole run of free cells between the pillars,
+     * so each direction is a range of bits.
+     * @param row - (int) the row of the laser
+     * @param col - (int) the col of the laser
+     */
+    void placeLaser(int row, int col) {
+        int rowWords = board.getRowWords();
+        laserRows[row * rowWords + (col >>> 6)] |= 1L << col;
+        laserCols[col * board.getColWords() + (row >>> 6)] |= 1L << row;
+        for (int p : board.getNeighborPillars(row * cDIM + col)) {
+            int num = board.getPillarValue(p);
+            if (pillarLasers[p] == num) {
+                wrongPillars++;
+            }
+            if (++pillarLasers[p] == num) {
+                wrongPillars--;
+            }
+        }
 
-        for(int row=0; row < other.rDIM;row++){
-            System.arraycopy(other.grid[row],0,this.grid[row],0,other.cDIM);
+        //East and West Direction
+        SafeBoard.setRange(litRows, row * rowWords,
+                board.rowSegmentStart(row, col), board.rowSegmentEnd(row, col));
+        //North and South Direction
+        int end = board.colSegmentEnd(row, col);
+        long bit = 1L << col;
+        for (int r = board.colSegmentStart(row, col); r <= end; r++) {
+            litRows[r * rowWords + (col >>> 6)] |= bit;
         }
+    }
 
+    /**
+     * Move the current position past the last cell, so nothing is left
+     * to decide. Used by the engines that fill in a configuration with
+     * placeLaser to hand out a solution or a snapshot.
+     */
+    void markDecided() {
+        currRow = rDIM;
+        currCol = 0;
     }
 
     @Override
     public Collection<Configuration> getSuccessors(){
 
         ArrayList<Configuration> successors = new ArrayList<>();
+        if (currRow >= rDIM) {
+            return successors;
+        }
 
         //If it hits an empty spot, generate a successor with a laser that
         //that spot, also generate a an empty successor at the slot
-        if(grid[currRow][currCol] == '.'){
+        if(getCurrentValue(currRow, currCol) == '.'){
             SafeConfig lasersAdded = new SafeConfig(this);
-            lasersModel.addWithGrid(currRow,currCol,lasersAdded.grid);
+            lasersAdded.placeLaser(currRow, currCol);
             SafeConfig empty = new SafeConfig(this);
             successors.add(lasersAdded);
             successors.add(empty);
@@ -100,60 +161,42 @@ public class SafeConfig implements Configuration{
 
     @Override
     public boolean isValid() {
-        // TODO
         //Check to make sure that no means are in the way of the current one
-        //in the horizontal and vertical direction
-        if(grid[currRow][currCol] == 'L') {
-            //East Direction
-            for (int row = currRow + 1; row < rDIM; row++) {
-                if (grid[row][currCol] == 'L') {
-                    return false;
-                } else if (grid[row][currCol] != '.' && grid[row][currCol] != '*') {
-                    break;
-                }
+        //in the horizontal and vertical direction. The laser is in sight of
+        //another one if its run of free cells holds more than one laser.
+        if(isLaser(currRow, currCol)) {
+            if (SafeBoard.countRange(laserRows, currRow * board.getRowWords(),
+                    board.rowSegmentStart(currRow, currCol),
+                    board.rowSegmentEnd(currRow, currCol)) > 1) {
+                return false;
             }
-            //West Direction
-            for (int row = currRow - 1; row >= 0; row--) {
-                if (grid[row][currCol] == 'L') {
-                    return false;
-                } else if (grid[row][currCol] != '.' && grid[row][currCol] != '*') {
-                    break;
-                }
-            }
-            //South Direction
-            for (int col = currCol + 1; col < cDIM; col++) {
-                if (grid[currRow][col] == 'L') {
-                    return false;
-                } else if (grid[currRow][col] != '.' && grid[currRow][col] != '*') {
-                    break;
-                }
-            }
-            //North Direction
-            for (int col = currCol - 1; col >= 0; col--) {
-                if (grid[currRow][col] == 'L') {
-                    return false;
-                } else if (grid[currRow][col] != '.' && grid[currRow][col] != '*') {
-                    break;
-                }
+            if (SafeBoard.countRange(laserCols, currCol * board.getColWords(),
+                    board.colSegmentStart(currRow, currCol),
+                    board.colSegmentEnd(currRow, currCol)) > 1) {
+                return false;
             }
         }
 
         //Check to make sure that the the number of
         //laser surrounding the pillars are less than or equal to
-        //the number of lasers that the pillar can take
-        if(!lasersModel.verifyGridCheck(grid)){
-            return false;
+        //the number of lasers that the pillar can take, and that
+        //enough undecided cells are left to reach that number.
+        //Only the pillars next to the cell just decided have changed.
+        if(!board.isBlocked(currRow, currCol)){
+            for (int p : board.getNeighborPillars(currRow * cDIM + currCol)) {
+                pillarOpen[p]--;
+                int num = board.getPillarValue(p);
+                if (pillarLasers[p] > num || pillarLasers[p] + pillarOpen[p] < num) {
+                    return false;
+                }
+            }
         }
 
         //If there is an empty slot in the grid, then
         //it means it is an invalid grid
         if(currRow == rDIM-1 && currCol == cDIM-1){
-            for(int row = 0; row < rDIM;row++){
-                for(int col = 0; col < cDIM;col++){
-                    if(grid[row][col] == '.'){
-                        return false;
-                    }
-                }
+            if(!allLit()){
+                return false;
             }
         }
 
@@ -173,19 +216,35 @@ public class SafeConfig implements Configuration{
 
     @Override
     public boolean isGoal() {
-        // TODO
         //If no grid are empty and
         //all pillars have the correct
         //number of lasers, return true,
         //otherwise return false
-        for(int row = 0; row < rDIM; row++){
-            for(int col = 0; col < cDIM; col++){
-                if(grid[row][col] == '.'){
-                    return false;
-                }
+        return allLit() && wrongPillars == 0;
+    }
+
+    /**
+     * Is every free cell covered by a laser or a beam?
+     * @return true if no cell is left empty
+     */
+    private boolean allLit() {
+        long[] free = board.getFreeRows();
+        for (int w = 0; w < free.length; w++) {
+            if ((free[w] & ~litRows[w]) != 0) {
+                return false;
             }
         }
-        return lasersModel.verifyGridCheck(this.grid);
+        return true;
+    }
+
+    /**
+     * Is there a laser in the cell?
+     * @param row - the row of the cell
+     * @param col - the col of the cell
+     * @return true if the cell holds a laser
+     */
+    private boolean isLaser(int row, int col) {
+        return SafeBoard.testBit(laserRows, row * board.getRowWords(), col);
     }
 
     /**
@@ -211,7 +270,7 @@ public class SafeConfig implements Configuration{
         for (int r =0; r <rDIM; r++){
             result += r%10 + "|";                  // ROW Number and Left side bars
             for(int c = 0; c < cDIM; c++){
-                result += " " + this.grid[r][c];    //filling the grid in
+                result += " " + getCurrentValue(r, c);    //filling the grid in
             }
             result += "\n";
         }
@@ -226,11 +285,37 @@ public class SafeConfig implements Configuration{
      * @return a char value
      */
     public char getCurrentValue(int currRow, int currCol){
-        return this.grid[currRow][currCol];
+        if (board.isBlocked(currRow, currCol)) {
+            return board.getLayout(currRow, currCol);
+        }
+        int base = currRow * board.getRowWords();
+        if (SafeBoard.testBit(laserRows, base, currCol)) {
+            return 'L';
+        }
+        return SafeBoard.testBit(litRows, base, currCol) ? '*' : '.';
     }
 
+    /**
+     * Build the grid of the configuration. The grid is a fresh copy,
+     * changing it does not change the configuration.
+     * @return char[][] - the safe with its lasers and beams
+     */
     public char[][] getGrid(){
-        return this.grid;
+        char[][] grid = new char[rDIM][cDIM];
+        for (int r = 0; r < rDIM; r++) {
+            for (int c = 0; c < cDIM; c++) {
+                grid[r][c] = getCurrentValue(r, c);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Return the layout of the safe
+     * @return SafeBoard - the layout shared by all configurations
+     */
+    public SafeBoard getBoard(){
+        return board;
     }
 
     /**
@@ -0,0 +1,240 @@
+package backtracking;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * The independent regions of a safe. Two segments are in the same
+ * region when they cross at a free cell or touch the same numbered
+ * pillar; nothing in one region can change what is allowed in
+ * another. Pillars and walls often cut a safe into several regions,
+ * and searching them one by one adds their search spaces up instead
+ * of multiplying them.
+ *
+ * Every region is cut out as its own SafeBoard, cropped to the cells
+ * and pillars of the region. Cells of other regions inside the crop
+ * become walls. The solutions of the regions are put back together
+ * into one SafeConfig of the whole safe.
+ */
+public class SafeRegions {
+
+    private SafeBoard board;
+    //The cut out board of every region and where its top left corner is
+    private SafeBoard[] regions;
+    private int[] regionRow;
+    private int[] regionCol;
+    //A pillar needs lasers but has no free cell around it
+    private boolean hopeless;
+
+    /**
+     * Find the regions of a safe
+     * @param board - (SafeBoard) the layout of the safe
+     */
+    public SafeRegions(SafeBoard board) {
+        this.board = board;
+        int rDIM = board.getRDIM();
+        int cDIM = board.getCDIM();
+        SegmentIndex segments = board.getSegments();
+
+        //Union find over the segments
+        int[] parent = new int[segments.getSegmentCount()];
+        for (int seg = 0; seg < parent.length; seg++) {
+            parent[seg] = seg;
+        }
+        for (int r = 0; r < rDIM; r++) {
+            for (int c = 0; c < cDIM; c++) {
+                if (!board.isBlocked(r, c)) {
+                    union(parent, segments.getRowSegment(r, c), segments.getColSegment(r, c));
+                }
+            }
+        }
+        //The segment a pillar joins its free neighbors to, -1 for none
+        int[] pillarSeg = new int[board.getPillarCount()];
+        for (int p = 0; p < pillarSeg.length; p++) {
+            pillarSeg[p] = -1;
+            for (int d = 0; d < 4; d++) {
+                int r = board.getPillarRow(p) + SafeBoard.DR[d];
+                int c = board.getPillarCol(p) + SafeBoard.DC[d];
+                if (r < 0 || r >= rDIM || c < 0 || c >= cDIM || board.isBlocked(r, c)) {
+                    continue;
+                }
+                int seg = segments.getRowSegment(r, c);
+                if (pillarSeg[p] == -1) {
+                    pillarSeg[p] = seg;
+                } else {
+                    union(parent, pillarSeg[p], seg);
+                }
+            }
+            if (pillarSeg[p] == -1 && board.getPillarValue(p) != 0) {
+                hopeless = true;
+            }
+        }
+
+        //Number the regions in row major order of their first cell
+        int[] regionOf = new int[parent.length];
+        Arrays.fill(regionOf, -1);
+        int[] cellRegion = new int[rDIM * cDIM];
+        Arrays.fill(cellRegion, -1);
+        int count = 0;
+        for (int r = 0; r < rDIM; r++) {
+            for (int c = 0; c < cDIM; c++) {
+                if (!board.isBlocked(r, c)) {
+                    int root = find(parent, segments.getRowSegment(r, c));
+                    if (regionOf[root] == -1) {
+                        regionOf[root] = count++;
+                    }
+                    cellRegion[r * cDIM + c] = regionOf[root];
+                }
+            }
+        }
+        for (int p = 0; p < pillarSeg.length; p++) {
+            if (pillarSeg[p] != -1) {
+                cellRegion[board.getPillarRow(p) * cDIM + board.getPillarCol(p)] =
+                        regionOf[find(parent, pillarSeg[p])];
+            }
+        }
+
+        //Crop every region to its bounding box
+        int[] top = new int[count];
+        int[] left = new int[count];
+        int[] bottom = new int[count];
+        int[] right = new int[count];
+        Arrays.fill(top, rDIM);
+        Arrays.fill(left, cDIM);
+        Arrays.fill(bottom, -1);
+        Arrays.fill(right, -1);
+        for (int cell = 0; cell < cellRegion.length; cell++) {
+            int region = cellRegion[cell];
+            if (region != -1) {
+                top[region] = Math.min(top[region], cell / cDIM);
+                left[region] = Math.min(left[region], cell % cDIM);
+                bottom[region] = Math.max(bottom[region], cell / cDIM);
+                right[region] = Math.max(right[region], cell % cDIM);
+            }
+        }
+        regions = new SafeBoard[count];
+        regionRow = top;
+        regionCol = left;
+        for (int region = 0; region < count; region++) {
+            char[][] cells = new char[bottom[region] - top[region] + 1][right[region] - left[region] + 1];
+            for (int r = 0; r < cells.length; r++) {
+                for (int c = 0; c < cells[r].length; c++) {
+                    int row = top[region] + r;
+                    int col = left[region] + c;
+                    cells[r][c] = cellRegion[row * cDIM + col] == region ? board.getLayout(row, col) : 'X';
+                }
+            }
+            regions[region] = new SafeBoard(cells);
+        }
+    }
+
+    /**
+     * Return the number of regions
+     * @return int - the number of regions
+     */
+    public int getRegionCount() {
+        return regions.length;
+    }
+
+    /**
+     * Return the cut out board of a region
+     * @param region - (int) the index of the region
+     * @return SafeBoard - the board of the region
+     */
+    public SafeBoard getRegion(int region) {
+        return regions[region];
+    }
+
+    /**
+     * Return the row of the safe the top of a region is on
+     * @param region - (int) the index of the region
+     * @return int - the row of its top left corner
+     */
+    public int getRegionRow(int region) {
+        return regionRow[region];
+    }
+
+    /**
+     * Return the column of the safe the left of a region is on
+     * @param region - (int) the index of the region
+     * @return int - the column of its top left corner
+     */
+    public int getRegionCol(int region) {
+        return regionCol[region];
+    }
+
+    /**
+     * Solve every region with an engine and put the solutions together.
+     * The engine must hand back SafeConfig solutions, as the engines of
+     * this package do.
+     * @param engine - (Function) solves the board of one region
+     * @param parallel - (boolean) solve the regions at the same time
+     * @return SolveResult - the solution of the safe, or how the first
+     *                       region that was not solved ended
+     */
+    public SolveResult solve(Function<SafeBoard, SolveResult> engine, boolean parallel) {
+        if (hopeless) {
+            return new SolveResult(SolveResult.Status.NO_SOLUTION, null);
+        }
+        Configuration[] solutions = new Configuration[regions.length];
+        //Once a region is not solved the others need not be
+        AtomicReference<SolveResult> failed = new AtomicReference<>();
+        IntStream indices = IntStream.range(0, regions.length);
+        if (parallel) {
+            indices = indices.parallel();
+        }
+        indices.forEach(region -> {
+            if (failed.get() == null) {
+                SolveResult result = engine.apply(regions[region]);
+                if (result.isSolved()) {
+                    solutions[region] = result.getSolution().get();
+                } else {
+                    failed.compareAndSet(null, result);
+                }
+            }
+        });
+        if (failed.get() != null) {
+            return new SolveResult(failed.get().getStatus(), null);
+        }
+
+        SafeConfig config = new SafeConfig(board);
+        for (int region = 0; region < regions.length; region++) {
+            SafeConfig part = (SafeConfig) solutions[region];
+            for (int r = 0; r < regions[region].getRDIM(); r++) {
+                for (int c = 0; c < regions[region].getCDIM(); c++) {
+                    if (part.getCurrentValue(r, c) == 'L') {
+                        config.placeLaser(regionRow[region] + r, regionCol[region] + c);
+                    }
+                }
+            }
+        }
+        config.markDecided();
+        return new SolveResult(SolveResult.Status.SOLVED, config);
+    }
+
+    /**
+     * Find the root of a segment, halving the path on the way
+     * @param parent - (int[]) the union find forest
+     * @param seg - (int) the segment
+     * @return int - the root of its tree
+     */
+    private static int find(int[] parent, int seg) {
+        while (parent[seg] != seg) {
+            parent[seg] = parent[parent[seg]];
+            seg = parent[seg];
+        }
+        return seg;
+    }
+
+    /**
+     * Put two segments in the same tree
+     * @param parent - (int[]) the union find forest
+     * @param a - (int) a segment
+     * @param b - (int) another segment
+     */
+    private static void union(int[] parent, int a, int b) {
+        parent[find(parent, a)] = find(parent, b);
+    }
+}
@@ -0,0 +1,222 @@
+package backtracking;
+
+import java.io.FileNotFoundException;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * A safe written as clauses for the SatSolver. Every free cell is a
+ * variable that is true when the cell holds a laser, and the rules of
+ * the puzzle become:
+ *
+ * - every segment holds at most one laser, so no two lasers see each
+ *   other
+ * - every free cell has a laser in one of its two segments. Each
+ *   segment gets a helper variable "the segment holds a laser" that
+ *   implies one of its cells does, so this is a two literal clause per
+ *   cell instead of one as long as both segments
+ * - every numbered pillar has exactly its number of lasers among its
+ *   free neighbors, written out over the subsets of those (at most 4)
+ *   neighbors
+ *
+ * The solution comes back as the same SafeConfig the backtrackers
+ * return, so the engines can be swapped per puzzle.
+ */
+public class SafeSatEncoding {
+
+    //Segments up to this long use pairwise at most one clauses, longer
+    //ones a sequential counter
+    private static final int PAIRWISE_LIMIT = 6;
+
+    private SafeBoard board;
+    private SegmentIndex segments;
+    private SatSolver solver;
+    //Variable of every cell (row major), 0 for pillars and walls
+    private int[] cellVar;
+
+    public SafeSatEncoding(String filename) throws FileNotFoundException {
+        this(new SafeBoard(filename));
+    }
+
+    /**
+     * Write the clauses of a safe
+     * @param board - (SafeBoard) the layout of the safe
+     */
+    public SafeSatEncoding(SafeBoard board) {
+        this.board = board;
+        this.segments = board.getSegments();
+        this.solver = new SatSolver();
+        int rDIM = board.getRDIM();
+        int cDIM = board.getCDIM();
+
+        cellVar = new int[rDIM * cDIM];
+        for (int cell = 0; cell < rDIM * cDIM; cell++) {
+            if (!board.isBlocked(cell / cDIM, cell % cDIM)) {
+                cellVar[cell] = solver.newVar();
+            }
+        }
+
+        //At most one laser per segment, and the segment variables
+        int[] segVar = new int[segments.getSegmentCount()];
+        for (int seg = 0; seg < segVar.length; seg++) {
+            int[] cells = segments.getCells(seg);
+            int[] vars = new int[cells.length];
+            for (int i = 0; i < cells.length; i++) {
+                vars[i] = cellVar[cells[i]];
+            }
+            atMostOne(vars);
+            segVar[seg] = solver.newVar();
+            int[] some = new int[vars.length + 1];
+            some[0] = -segVar[seg];
+            System.arraycopy(vars, 0, some, 1, vars.length);
+            solver.addClause(some);
+        }
+
+        //Every free cell is lit from its row or its column
+        for (int cell = 0; cell < rDIM * cDIM; cell++) {
+            if (cellVar[cell] != 0) {
+                int row = cell / cDIM;
+                int col = cell % cDIM;
+                solver.addClause(segVar[segments.getRowSegment(row, col)],
+                        segVar[segments.getColSegment(row, col)]);
+            }
+        }
+
+        //Every pillar has exactly its number of lasers around it
+        for (int p = 0; p < board.getPillarCount(); p++) {
+            int row = board.getPillarRow(p);
+            int col = board.getPillarCol(p);
+            int[] around = new int[4];
+            int count = 0;
+            for (int d = 0; d < 4; d++) {
+                int r = row + SafeBoard.DR[d];
+                int c = col + SafeBoard.DC[d];
+                if (r >= 0 && r < rDIM && c >= 0 && c < cDIM && cellVar[r * cDIM + c] != 0) {
+                    around[count++] = cellVar[r * cDIM + c];
+                }
+            }
+            exactly(around, count, board.getPillarValue(p));
+        }
+    }
+
+    /**
+     * Look for a solution
+     * @return Optional - the solution, or empty if there is none
+     */
+    public Optional<Configuration> solve() {
+        if (!solver.solve()) {
+            return Optional.empty();
+        }
+        SafeConfig config = new SafeConfig(board);
+        int cDIM = board.getCDIM();
+        for (int cell = 0; cell < cellVar.length; cell++) {
+            if (cellVar[cell] != 0 && solver.getValue(cellVar[cell])) {
+                config.placeLaser(cell / cDIM, cell % cDIM);
+            }
+        }
+        config.markDecided();
+        return Optional.of(config);
+    }
+
+    /**
+     * Look for a solution, giving up at a deadline or when a token is
+     * cancelled
+     * @param deadline - (Instant) when to give up, null for never
+     * @param token - (CancellationToken) the token to watch, may be null
+     * @return SolveResult - the solution, NO_SOLUTION, or why the solver
+     *                       stopped early
+     */
+    public SolveResult solve(Instant deadline, CancellationToken token) {
+        SearchLimit limit = new SearchLimit(deadline, token, SearchLimit.DEFAULT_INTERVAL);
+        solver.setLimit(limit);
+        try {
+            limit.check();
+            return SolveResult.of(solve());
+        } catch (SearchAbortedException e) {
+            return new SolveResult(e.getStatus(), null);
+        } finally {
+            solver.setLimit(null);
+        }
+    }
+
+    /**
+     * Return the solver the safe was written for
+     * @return SatSolver - the solver
+     */
+    public SatSolver getSolver() {
+        return solver;
+    }
+
+    /**
+     * Allow at most one of the variables to be true. Short lists get a
+     * clause for every pair; long ones a chain of helper variables, where
+     * helper i means "one of the first i + 1 is true".
+     * @param vars - (int[]) the variables
+     */
+    private void atMostOne(int[] vars) {
+        int n = vars.length;
+        if (n <= PAIRWISE_LIMIT) {
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    solver.addClause(-vars[i], -vars[j]);
+                }
+            }
+            return;
+        }
+        int prev = solver.newVar();
+        solver.addClause(-vars[0], prev);
+        for (int i = 1; i < n - 1; i++) {
+            int next = solver.newVar();
+            solver.addClause(-vars[i], next);
+            solver.addClause(-prev, next);
+            solver.addClause(-vars[i], -prev);
+            prev = next;
+        }
+        solver.addClause(-vars[n - 1], -prev);
+    }
+
+    /**
+     * Make exactly num of the first count variables true: every num + 1
+     * of them hold a false one, and every count - num + 1 of them hold
+     * a true one
+     * @param vars - (int[]) the variables
+     * @param count - (int) how many of them to use
+     * @param num - (int) how many must be true
+     */
+    private void exactly(int[] vars, int count, int num) {
+        for (int subset = 0; subset < 1 << count; subset++) {
+            int size = Integer.bitCount(subset);
+            boolean atMost = size == num + 1;
+            boolean atLeast = size == count - num + 1;
+            if (!atMost && !atLeast) {
+                continue;
+            }
+            int[] clause = new int[size];
+            int k = 0;
+            for (int i = 0; i < count; i++) {
+                if ((subset & (1 << i)) != 0) {
+                    clause[k++] = vars[i];
+                }
+            }
+            if (atMost) {
+                for (int i = 0; i < size; i++) {
+                    clause[i] = -clause[i];
+                }
+                solver.addClause(clause);
+                if (atLeast) {
+                    //Same subset, both ways
+                    for (int i = 0; i < size; i++) {
+                        clause[i] = -clause[i];
+                    }
+                    solver.addClause(clause);
+                }
+            } else {
+                solver.addClause(clause);
+            }
+        }
+        if (num > count) {
+            //More lasers than free neighbors
+            solver.addClause();
+        }
+    }
+}
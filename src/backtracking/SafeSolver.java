@@ -7,25 +7,28 @@ import java.util.Optional;
  * Thie is the main class for a safe solver.  It runs the backtracking
  * algorithm and displays the solution, if one exists.
  *
+ * The optional engine is looked up by name in SolverEngines, "auto"
+ * by default; see there for the engines it knows. With debug on, the
+ * SolverStatistics of the engine are printed after the solution.
+ *
  * @author Sean Strout @ RIT CS
  */
 public class SafeSolver {
     public static void main(String[] args) throws FileNotFoundException {
-        if (args.length != 2) {
-            System.out.println("Usage: java SafeSolver safe.in debug");
+        if ((args.length != 2 && args.length != 3)
+                || (args.length == 3 && !SolverEngines.contains(args[2]))) {
+            System.out.println("Usage: java SafeSolver safe.in debug [engine]");
+            System.out.println("Engines: " + String.join(", ", SolverEngines.getNames()));
         } else {
-            // construct the initial configuration from the file
-            Configuration init = new SafeConfig(args[0]);
-
-            // create the backtracker with the debug flag
+            // pick the engine, and print its statistics in debug mode
             boolean debug = args[1].equals("true");
-            Backtracker bt = new Backtracker(debug);
+            SolverEngine engine = SolverEngines.create(args.length == 3 ? args[2] : SolverEngines.DEFAULT_ENGINE);
 
             // start the clock
             double start = System.currentTimeMillis();
 
-            // attempt to solve the puzzle
-            Optional<Configuration> sol = bt.solve(init);
+            // construct the safe from the file and attempt to solve it
+            Optional<Configuration> sol = engine.solve(new SafeBoard(args[0]));
 
             // compute the elapsed time
             System.out.println("Elapsed time: " +
@@ -36,6 +39,10 @@ public class SafeSolver {
                 System.out.println("Solution:\n" + sol.get());
             } else {
                 System.out.println("No solution!");
-            }        }
+            }
+            if (debug) {
+                System.out.println(engine.getStatistics());
+            }
+        }
     }
 }
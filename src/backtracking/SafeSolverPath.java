@@ -2,41 +2,44 @@ package backtracking;
 
 import java.io.FileNotFoundException;
 import java.util.List;
-import java.util.Optional;
 
 /**
- * Thie is the main class for a safe solver with a path.  It runs the
- * backtracking algorithm and displays the full path of the solution,
- * step by step, if one exists.
+ * Thie is the main class for a safe solver with a path.  It solves the
+ * safe and displays the full path of the solution, step by step, if
+ * one exists.
+ *
+ * The safe is solved by a SolverSession with the optional engine,
+ * looked up by name in SolverEngines like in SafeSolver. Every step of
+ * the path adds the next laser of the solution in row major order. With
+ * debug on, the SolverStatistics of the solve are printed after the path.
  *
  * @author Sean Strout @ RIT CS
  */
 public class SafeSolverPath {
     public static void main(String[] args) throws FileNotFoundException {
-        if (args.length != 2) {
-            System.out.println("Usage: java SafeSolverPath safe.in debug");
+        if ((args.length != 2 && args.length != 3)
+                || (args.length == 3 && !SolverEngines.contains(args[2]))) {
+            System.out.println("Usage: java SafeSolverPath safe.in debug [engine]");
+            System.out.println("Engines: " + String.join(", ", SolverEngines.getNames()));
         } else {
-            // construct the initial configuration from the file
-            Configuration init = new SafeConfig(args[0]);
-
-            // create the backtracker with the debug flag
+            // pick the engine, and print its statistics in debug mode
             boolean debug = args[1].equals("true");
-            Backtracker bt = new Backtracker(debug);
+            SolverSession session = new SolverSession(new SafeBoard(args[0]));
+            session.setEngine(args.length == 3 ? args[2] : SolverEngines.DEFAULT_ENGINE);
 
             // start the clock
             double start = System.currentTimeMillis();
 
             // attempt to solve the puzzle
-            Optional<Configuration> sol = bt.solveHelperFunction(init);
-            List<Configuration> path = bt.solveWithPath();
-            //List<Configuration> path = bt.solveWithPath(init);
+            SolveResult result = session.solve(null, null);
+            List<Configuration> path = session.getPath();
 
             // compute the elapsed time
             System.out.println("Elapsed time: " +
                     (System.currentTimeMillis() - start)/1000.0 + " seconds.");
 
             // indicate whether there was a solution, or not
-            if (path != null) {
+            if (result.isSolved()) {
                 int step = 0;
                 // loop through the configs from start to end and display them
                 for (Configuration config : path) {
@@ -46,6 +49,10 @@ public class SafeSolverPath {
                 }
             } else {
                 System.out.println("No solution!");
-            }        }
+            }
+            if (debug) {
+                System.out.println(session.getStatistics());
+            }
+        }
     }
 }
@@ -0,0 +1,181 @@
+package backtracking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * The symmetries of a safe: the flips and rotations, and for a square
+ * safe the transpositions, that map its layout onto itself. Any such
+ * symmetry maps a solution onto a solution, so the solutions fall into
+ * classes of mirror images and the search only has to find one of
+ * every class.
+ *
+ * The one it keeps is the lex leader: read the free cells row major,
+ * 1 for a laser and 0 for none, and a solution must not read smaller
+ * than any of its images. A SafeTrailConfig with symmetry breaking
+ * turned on checks that after every branch, as far as its decided
+ * cells go, and cuts the branch once it can not hold anymore.
+ * The other solutions of a class are found again with orbit().
+ */
+public class SafeSymmetry {
+
+    private SafeBoard board;
+    private int rDIM;
+    private int cDIM;
+    //Image of every cell (row major) under every symmetry but the
+    //identity
+    private int[][] maps;
+    //The free cells, row major
+    private int[] freeCells;
+
+    /**
+     * Find the symmetries of a safe
+     * @param board - (SafeBoard) the layout of the safe
+     */
+    public SafeSymmetry(SafeBoard board) {
+        this.board = board;
+        this.rDIM = board.getRDIM();
+        this.cDIM = board.getCDIM();
+        List<int[]> found = new ArrayList<>();
+        //The transpositions and quarter turns only fit square safes
+        int transforms = rDIM == cDIM ? 8 : 4;
+        for (int t = 1; t < transforms; t++) {
+            int[] map = new int[rDIM * cDIM];
+            boolean symmetric = true;
+            for (int cell = 0; cell < map.length && symmetric; cell++) {
+                int r = cell / cDIM;
+                int c = cell % cDIM;
+                map[cell] = transform(t, r, c);
+                symmetric = board.getLayout(r, c)
+                        == board.getLayout(map[cell] / cDIM, map[cell] % cDIM);
+            }
+            if (symmetric) {
+                found.add(map);
+            }
+        }
+        maps = found.toArray(new int[0][]);
+
+        int count = 0;
+        int[] free = new int[rDIM * cDIM];
+        for (int cell = 0; cell < free.length; cell++) {
+            if (!board.isBlocked(cell / cDIM, cell % cDIM)) {
+                free[count++] = cell;
+            }
+        }
+        freeCells = Arrays.copyOf(free, count);
+    }
+
+    /**
+     * Map a cell by one of the eight symmetries of a rectangle
+     * @param t - (int) the symmetry, 0 for the identity
+     * @param r - (int) the row of the cell
+     * @param c - (int) the col of the cell
+     * @return int - the row major index of the image
+     */
+    private int transform(int t, int r, int c) {
+        int last = rDIM - 1;
+        int lastCol = cDIM - 1;
+        switch (t) {
+            case 1:  return (last - r) * cDIM + c;              //upside down
+            case 2:  return r * cDIM + (lastCol - c);           //left to right
+            case 3:  return (last - r) * cDIM + (lastCol - c);  //half turn
+            case 4:  return c * cDIM + r;                       //transpose
+            case 5:  return (lastCol - c) * cDIM + (last - r);  //anti transpose
+            case 6:  return c * cDIM + (last - r);              //quarter turn
+            case 7:  return (lastCol - c) * cDIM + r;           //three quarter turn
+            default: return r * cDIM + c;
+        }
+    }
+
+    /**
+     * Return the number of symmetries, the identity included
+     * @return int - the size of the symmetry group
+     */
+    public int getSymmetryCount() {
+        return maps.length + 1;
+    }
+
+    /**
+     * Does the safe have a symmetry other than the identity?
+     * @return true if it is symmetric
+     */
+    public boolean isSymmetric() {
+        return maps.length > 0;
+    }
+
+    /**
+     * Can the configuration still be completed to a lex leader? For
+     * every symmetry the free cells are compared with their images in
+     * row major order, up to the first pair that is not decided yet.
+     * @param config - (SafeTrailConfig) the configuration being searched
+     * @return false if an image already reads bigger
+     */
+    boolean isLeader(SafeTrailConfig config) {
+        for (int[] map : maps) {
+            for (int cell : freeCells) {
+                int image = map[cell];
+                if (image == cell) {
+                    continue;
+                }
+                int mine = config.cellValue(cell);
+                int theirs = config.cellValue(image);
+                if (mine < 0 || theirs < 0 || mine > theirs) {
+                    //Not decided yet, or this image reads smaller
+                    break;
+                }
+                if (mine < theirs) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the distinct images of a solution, the solution included
+     * @param solution - (Configuration) a SafeConfig solution of the safe
+     * @return List - every solution the symmetries map it to
+     */
+    public List<Configuration> orbit(Configuration solution) {
+        SafeConfig config = (SafeConfig) solution;
+        BitSet lasers = new BitSet(rDIM * cDIM);
+        for (int cell : freeCells) {
+            if (config.getCurrentValue(cell / cDIM, cell % cDIM) == 'L') {
+                lasers.set(cell);
+            }
+        }
+        List<Configuration> images = new ArrayList<>();
+        images.add(solution);
+        Set<BitSet> seen = new HashSet<>();
+        seen.add(lasers);
+        for (int[] map : maps) {
+            BitSet image = new BitSet(rDIM * cDIM);
+            for (int cell = lasers.nextSetBit(0); cell >= 0; cell = lasers.nextSetBit(cell + 1)) {
+                image.set(map[cell]);
+            }
+            if (seen.add(image)) {
+                SafeConfig other = new SafeConfig(board);
+                for (int cell = image.nextSetBit(0); cell >= 0; cell = image.nextSetBit(cell + 1)) {
+                    other.placeLaser(cell / cDIM, cell % cDIM);
+                }
+                other.markDecided();
+                images.add(other);
+            }
+        }
+        return images;
+    }
+
+    /**
+     * Expand lex leaders into every solution of the safe, lazily
+     * @param leaders - (Stream) the solutions found with symmetry breaking
+     * @return Stream - the leaders and all of their images
+     */
+    public Stream<Configuration> expand(Stream<Configuration> leaders) {
+        return leaders.flatMap(leader -> orbit(leader).stream());
+    }
+}
@@ -0,0 +1,944 @@
+package backtracking;
+
+import java.io.FileNotFoundException;
+import java.util.function.IntConsumer;
+
+/**
+ * A configuration of a safe that is searched in place. Like SafeConfig
+ * it tries a laser and then an empty cell at every spot a laser can go
+ * in, but it never copies itself, and the spot it branches on comes
+ * from a BranchOrder (the most constrained place by default). Every
+ * bit it changes is pushed on an undo trail, so taking a branch back
+ * only costs the cells that branch changed. Choosing the empty branch
+ * blocks the cell, so it can not take a laser anymore.
+ *
+ * Beams are cast along the segments of the board's SegmentIndex, and
+ * every segment keeps count of its lasers and its open cells, so the
+ * places a laser that would light a cell can still go are a lookup.
+ * Every numbered pillar keeps count of the lasers and the open cells
+ * next to it, so reviewing a pillar after a change is a lookup too.
+ * Only placing a laser and closing a cell change those counts, and
+ * only for the segments and the pillars the cell touches.
+ *
+ * The rest of the search is made of parts that can be turned on one
+ * by one, each kept in its own class:
+ *
+ * - CoverBranching branches over the cells that could light the
+ *   darkest cell instead of laser or empty
+ * - PillarPropagation makes the moves the pillars force after every
+ *   change
+ * - DeadCellPruning cuts a branch as soon as a dark cell can not be
+ *   lit anymore
+ * - StateHash keeps the hashes of the state for a FailedStateMemo
+ * - ConflictExplainer remembers why every cell was closed, for
+ *   conflict directed backjumping
+ * - a PruningRule is told about every change and asked after every
+ *   branch whether the branch can still be solved
+ * - a SafeSymmetry cuts the branches that can only lead to a mirror
+ *   image of another solution. It can not be used together with the
+ *   memo, whose states leave out the lasers the check reads.
+ *
+ * A trail entry is an int holding the changed value in the high bits
+ * and the kind of change in the three low bits.
+ */
+public class SafeTrailConfig implements UndoableConfiguration {
+
+    //Kinds of trail entries
+    private static final int LIT = 0;
+    private static final int LASER = 1;
+    private static final int POS = 2;
+    private static final int BLOCKED = 3;
+    private static final int CLOSED = 4;
+    private static final int SELECTED = 5;
+    private static final int KIND_BITS = 3;
+    private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+
+    private SafeBoard board;
+    private SegmentIndex segments;
+    private int rDIM;
+    private int cDIM;
+    private int rowWords;
+    private int colWords;
+    //Lasers, row major and column major
+    private long[] laserRows;
+    private long[] laserCols;
+    //Cells covered by a laser or a beam, row major
+    private long[] litRows;
+    //Free cells that were decided to stay without a laser, row major
+    private long[] blockedRows;
+    //Number of free cells that are not lit yet
+    private int unlit;
+    //Row major index of the cell after the last one branched on
+    private int pos;
+    //Picks the cell to branch on, and the cell it picked for this node
+    private BranchOrder order;
+    private int selected;
+    //Set when the pillars contradict each other before any branch
+    private boolean inconsistent;
+    //Number of lasers and of open cells in every segment
+    private int[] segLasers;
+    private int[] segOpen;
+    //Lasers and open cells next to every pillar, and the number of
+    //pillars that do not have their number of lasers
+    private int[] pillarLasers;
+    private int[] pillarOpen;
+    private int wrongPillars;
+    //The parts of the search that can be turned on, null when off
+    private CoverBranching cover;
+    private PillarPropagation propagation;
+    private DeadCellPruning deadCells;
+    private StateHash hash;
+    private ConflictExplainer conflicts;
+    private SafeSymmetry symmetry;
+    private PruningRule rule;
+    //Places to branch on by their options, built when first asked for
+    private OptionIndex optionIndex;
+    //The pillar or the dark cell the last failure goes back to, -1 if
+    //none; after branchCount, the cell whose segments limit the branches
+    private int conflictPillar;
+    private int conflictCell;
+    //Do the branches of the node cover every way on, whatever came before?
+    private boolean branchesCoverAll;
+
+    private int[] trail;
+    private int trailSize;
+
+    public SafeTrailConfig(String filename) throws FileNotFoundException {
+        this(new SafeBoard(filename));
+    }
+
+    /**
+     * Create the empty configuration of a safe
+     * @param board - (SafeBoard) the layout of the safe
+     */
+    public SafeTrailConfig(SafeBoard board) {
+        this.board = board;
+        this.segments = board.getSegments();
+        this.segLasers = new int[segments.getSegmentCount()];
+        this.segOpen = new int[segments.getSegmentCount()];
+        for (int seg = 0; seg < segOpen.length; seg++) {
+            segOpen[seg] = segments.getCells(seg).length;
+        }
+        this.rDIM = board.getRDIM();
+        this.cDIM = board.getCDIM();
+        this.rowWords = board.getRowWords();
+        this.colWords = board.getColWords();
+        this.laserRows = new long[rDIM * rowWords];
+        this.laserCols = new long[cDIM * colWords];
+        this.litRows = new long[rDIM * rowWords];
+        this.blockedRows = new long[rDIM * rowWords];
+        this.trail = new int[64];
+        this.trailSize = 0;
+        this.pos = 0;
+        this.order = new MostConstrainedOrder();
+        this.selected = -1;
+        this.inconsistent = false;
+        this.conflictPillar = -1;
+        this.conflictCell = -1;
+        for (long word : board.getFreeRows()) {
+            unlit += Long.bitCount(word);
+        }
+        this.pillarLasers = new int[board.getPillarCount()];
+        this.pillarOpen = new int[board.getPillarCount()];
+        for (int p = 0; p < board.getPillarCount(); p++) {
+            pillarOpen[p] = board.getPillarFreeNeighbors(p);
+            if (board.getPillarValue(p) != 0) {
+                wrongPillars++;
+            }
+        }
+    }
+
+    /**
+     * Copy the state of another configuration. The board and the branch
+     * order are shared, everything the search changes is cloned, and
+     * the trail starts out empty.
+     * @param other - (SafeTrailConfig) the configuration to copy
+     */
+    private SafeTrailConfig(SafeTrailConfig other) {
+        this.board = other.board;
+        this.segments = other.segments;
+        this.rDIM = other.rDIM;
+        this.cDIM = other.cDIM;
+        this.rowWords = other.rowWords;
+        this.colWords = other.colWords;
+        this.laserRows = other.laserRows.clone();
+        this.laserCols = other.laserCols.clone();
+        this.litRows = other.litRows.clone();
+        this.blockedRows = other.blockedRows.clone();
+        this.unlit = other.unlit;
+        this.pos = other.pos;
+        this.order = other.order;
+        this.selected = other.selected;
+        this.inconsistent = other.inconsistent;
+        this.segLasers = other.segLasers.clone();
+        this.segOpen = other.segOpen.clone();
+        this.pillarLasers = other.pillarLasers.clone();
+        this.pillarOpen = other.pillarOpen.clone();
+        this.wrongPillars = other.wrongPillars;
+        this.cover = other.cover;
+        this.propagation = other.propagation;
+        this.deadCells = other.deadCells == null ? null : other.deadCells.copy();
+        this.hash = other.hash == null ? null : other.hash.copy(this);
+        this.conflicts = other.conflicts == null ? null : other.conflicts.copy(this);
+        this.symmetry = other.symmetry;
+        this.rule = other.rule == null ? null : other.rule.copy();
+        this.conflictPillar = -1;
+        this.conflictCell = -1;
+        this.trail = new int[64];
+        this.trailSize = 0;
+    }
+
+    /**
+     * Turn the pillar propagation on or off. Turning it on runs the
+     * propagation over every pillar of the current state right away;
+     * those forced moves stay on the trail below the next mark.
+     * @param propagation - (boolean) should the pillars force moves?
+     */
+    public void setPropagation(boolean propagation) {
+        this.propagation = propagation ? new PillarPropagation() : null;
+        if (propagation) {
+            for (int p = 0; p < board.getPillarCount() && !inconsistent; p++) {
+                int start = trailSize;
+                if (!reviewPillar(p) || !settle(start)) {
+                    inconsistent = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Turn the dead cell pruning on or off. Turning it on checks the
+     * current state right away.
+     * @param pruning - (boolean) should dead cells cut the branch?
+     */
+    public void setDeadCellPruning(boolean pruning) {
+        if (!pruning) {
+            deadCells = null;
+            return;
+        }
+        deadCells = new DeadCellPruning(segments);
+        for (int row = 0; row < rDIM; row++) {
+            for (int col = 0; col < cDIM; col++) {
+                if (!board.isBlocked(row, col) && !isLit(row, col) && lightOptions(row, col) == 0) {
+                    inconsistent = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Change the order the cells are branched on
+     * @param order - (BranchOrder) the new order
+     */
+    public void setBranchOrder(BranchOrder order) {
+        this.order = order;
+        if (hash != null) {
+            hash.setScanHash(scansInOrder());
+        }
+    }
+
+    /**
+     * Turn cover branching on or off. With it on, the branch order is
+     * not used.
+     * @param cover - (boolean) branch over the cells that could light
+     *              the darkest cell?
+     */
+    public void setCoverBranching(boolean cover) {
+        this.cover = cover ? new CoverBranching() : null;
+        if (hash != null) {
+            hash.setScanHash(scansInOrder());
+        }
+    }
+
+    /**
+     * Does the search scan the cells in row major order, so the cells
+     * behind the scan position are settled for good?
+     * @return true if it branches on laser or empty in a scanning order
+     */
+    private boolean scansInOrder() {
+        return cover == null && order.scansInOrder();
+    }
+
+    /**
+     * Turn conflict tracking on or off. It should be turned on before
+     * the search starts; the cells closed before that count as closed
+     * for good.
+     * @param tracking - (boolean) should closed cells remember why?
+     */
+    public void setConflictTracking(boolean tracking) {
+        conflicts = tracking ? new ConflictExplainer(this) : null;
+    }
+
+    /**
+     * Return the order the cells are branched on
+     * @return BranchOrder - the order
+     */
+    public BranchOrder getBranchOrder() {
+        return order;
+    }
+
+    /**
+     * Return the failed state memo
+     * @return FailedStateMemo - the memo, or null if it is off
+     */
+    public FailedStateMemo getFailedStateMemo() {
+        return hash == null ? null : hash.getMemo();
+    }
+
+    /**
+     * Turn the failed state memo on or off. With a branch order that
+     * scans in order, the state it hashes leaves out what lies behind
+     * the scan position; with any other order it is the whole decided
+     * state, which meets fewer repeats. The memo can be shared by the
+     * configurations of one puzzle, and by searches with different
+     * orders, so a later search starts out knowing what an earlier one
+     * learnt.
+     * @param memo - (FailedStateMemo) the table to use, null to turn it off
+     */
+    public void setFailedStateMemo(FailedStateMemo memo) {
+        if (memo != null && symmetry != null) {
+            throw new IllegalStateException("the failed state memo can not be used with symmetry breaking");
+        }
+        hash = memo == null ? null : new StateHash(this, memo, scansInOrder());
+    }
+
+    /**
+     * Add a rule that every branch is checked against, or take it away.
+     * The rule is brought up to the current state right away.
+     * @param rule - (PruningRule) the rule, null for none
+     */
+    public void setPruningRule(PruningRule rule) {
+        this.rule = rule;
+        if (rule == null) {
+            return;
+        }
+        rule.start(board);
+        for (int pass = 0; pass < 3; pass++) {
+            for (int row = 0; row < rDIM; row++) {
+                for (int col = 0; col < cDIM; col++) {
+                    if (board.isBlocked(row, col)) {
+                        continue;
+                    }
+                    int cell = row * cDIM + col;
+                    if (pass == 0 && isLaser(row, col)) {
+                        rule.laser(cell, true);
+                    } else if (pass == 1 && isLit(row, col)) {
+                        rule.lit(cell, true);
+                    } else if (pass == 2 && !isOpen(row, col)) {
+                        rule.closed(cell, true);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Turn symmetry breaking on or off. Branches that can only lead to
+     * a solution that is not the lex leader of its mirror images are
+     * cut, so a search finds one solution of every set of images. A
+     * safe without symmetries leaves it off.
+     * @param symmetry - (SafeSymmetry) the symmetries of the safe, null
+     *                   to turn it off
+     */
+    public void setSymmetryBreaking(SafeSymmetry symmetry) {
+        if (symmetry != null && hash != null) {
+            throw new IllegalStateException("the failed state memo can not be used with symmetry breaking");
+        }
+        this.symmetry = symmetry != null && symmetry.isSymmetric() ? symmetry : null;
+    }
+
+    @Override
+    public int branchCount() {
+        conflictPillar = -1;
+        conflictCell = -1;
+        branchesCoverAll = false;
+        if (inconsistent) {
+            return 0;
+        }
+        if (hash != null && hash.failedBefore()) {
+            return 0;
+        }
+        if (cover != null) {
+            //One branch for every cell that could light the darkest cell
+            //The cells of its segments that are closed already are left
+            //out, so the branches go back to what closed them
+            selected = cover.select(this);
+            conflictCell = selected;
+            return selected < 0 ? 0 : lightOptions(selected / cDIM, selected % cDIM);
+        }
+        //Either a laser or an empty cell at the spot the order picks
+        selected = order.select(this);
+        branchesCoverAll = selected >= 0;
+        return selected < 0 ? 0 : 2;
+    }
+
+    @Override
+    public boolean apply(int branch) {
+        int start = trailSize;
+        if (deadCells != null) {
+            deadCells.startBranch();
+        }
+        conflictPillar = -1;
+        conflictCell = -1;
+        branchesCoverAll = false;
+        //Deeper nodes pick their own cell, undo brings this one back
+        push(selected, SELECTED);
+        if (cover != null) {
+            cover.apply(this, selected, branch);
+        } else {
+            setPos(selected + 1);
+            if (branch == 0) {
+                placeLaser(selected / cDIM, selected % cDIM, ConflictExplainer.DECIDED);
+            } else {
+                block(selected / cDIM, selected % cDIM, ConflictExplainer.DECIDED);
+            }
+        }
+        return settle(start) && (symmetry == null || symmetry.isLeader(this));
+    }
+
+    /**
+     * Decide a cell outside of the search, for example to start the
+     * search from a partial solution found some other way. The cell
+     * gets a laser or is blocked, and the pillars are reviewed as after
+     * a branch. The changes go on the trail like those of a branch, so
+     * a mark taken before can take them back; after a contradiction
+     * the caller should do so.
+     * @param row - (int) the row of the cell
+     * @param col - (int) the col of the cell
+     * @param laser - (boolean) should the cell get a laser?
+     * @return boolean - false if the configuration is no longer valid
+     */
+    public boolean fix(int row, int col, boolean laser) {
+        if (!isOpen(row, col)) {
+            //Only a laser that is already there, or a cell that can not
+            //take one anymore, agrees with the decision
+            return laser == isLaser(row, col);
+        }
+        int start = trailSize;
+        if (deadCells != null) {
+            deadCells.startBranch();
+        }
+        if (laser) {
+            placeLaser(row, col, ConflictExplainer.DECIDED);
+        } else {
+            block(row, col, ConflictExplainer.DECIDED);
+        }
+        return settle(start);
+    }
+
+    /**
+     * Review the pillars next to every cell changed since a trail
+     * position. Forced moves go on the trail behind the entries being
+     * read, so they are reviewed too, until nothing is forced anymore.
+     * @param start - (int) the first trail entry to review
+     * @return true if no pillar has failed
+     */
+    private boolean settle(int start) {
+        //Only the pillars next to a new laser or a closed cell have
+        //new counts
+        for (int i = start; i < trailSize; i++) {
+            int kind = trail[i] & KIND_MASK;
+            if (kind != LASER && kind != CLOSED) {
+                continue;
+            }
+            for (int p : board.getNeighborPillars(trail[i] >>> KIND_BITS)) {
+                if (!reviewPillar(p)) {
+                    conflictPillar = p;
+                    return false;
+                }
+            }
+        }
+        int dead = deadCells == null ? -1 : deadCells.findDeadCell(this);
+        if (dead >= 0) {
+            conflictCell = dead;
+            return false;
+        }
+        return rule == null || rule.admits();
+    }
+
+    /**
+     * Explain the failure of the last branch by the decisions it goes
+     * back to, as ConflictExplainer does. After branchCount, the
+     * branches of cover branching go back to the closed cells of the
+     * two segments of their dark cell, and laser or empty goes back to
+     * nothing.
+     * @param culprits - (IntConsumer) takes the trail position of every
+     *                 decision the failure goes back to
+     * @return boolean - false if conflict tracking is off or the branch
+     *                   failed for another reason, such as the memo
+     */
+    @Override
+    public boolean explainFailure(IntConsumer culprits) {
+        if (conflicts == null) {
+            return false;
+        }
+        if (branchesCoverAll) {
+            return true;
+        }
+        if (conflictPillar < 0 && conflictCell < 0) {
+            return false;
+        }
+        conflicts.explain(conflictPillar, conflictCell, culprits);
+        return true;
+    }
+
+    @Override
+    public void exhausted() {
+        if (hash != null) {
+            hash.recordFailure();
+        }
+    }
+
+    @Override
+    public int mark() {
+        return trailSize;
+    }
+
+    @Override
+    public void undo(int mark) {
+        while (trailSize > mark) {
+            int entry = trail[--trailSize];
+            int value = entry >>> KIND_BITS;
+            switch (entry & KIND_MASK) {
+                case LIT:
+                    litRows[(value / cDIM) * rowWords + ((value % cDIM) >>> 6)] &= ~(1L << (value % cDIM));
+                    unlit++;
+                    if (hash != null) {
+                        hash.lit(value);
+                    }
+                    if (optionIndex != null) {
+                        optionIndex.changed(value);
+                    }
+                    if (rule != null) {
+                        rule.lit(value, false);
+                    }
+                    break;
+                case LASER:
+                    int row = value / cDIM;
+                    int col = value % cDIM;
+                    laserRows[row * rowWords + (col >>> 6)] &= ~(1L << col);
+                    laserCols[col * colWords + (row >>> 6)] &= ~(1L << row);
+                    int h = segments.getRowSegment(row, col);
+                    int v = segments.getColSegment(row, col);
+                    if (--segLasers[h] == 0 && hash != null) {
+                        hash.segment(h);
+                    }
+                    if (--segLasers[v] == 0 && hash != null) {
+                        hash.segment(v);
+                    }
+                    for (int p : board.getNeighborPillars(value)) {
+                        int num = board.getPillarValue(p);
+                        if (pillarLasers[p] == num) {
+                            wrongPillars++;
+                        }
+                        if (--pillarLasers[p] == num) {
+                            wrongPillars--;
+                        }
+                        if (hash != null) {
+                            hash.pillar(p, pillarLasers[p] + 1, pillarLasers[p]);
+                        }
+                    }
+                    if (rule != null) {
+                        rule.laser(value, false);
+                    }
+                    break;
+                case POS:
+                    if (hash != null) {
+                        hash.pass(value, pos);
+                    }
+                    pos = value;
+                    break;
+                case BLOCKED:
+                    blockedRows[(value / cDIM) * rowWords + ((value % cDIM) >>> 6)] &= ~(1L << (value % cDIM));
+                    if (hash != null) {
+                        hash.blocked(value);
+                    }
+                    break;
+                case CLOSED:
+                    if (rule != null) {
+                        rule.closed(value, false);
+                    }
+                    for (int p : board.getNeighborPillars(value)) {
+                        pillarOpen[p]++;
+                    }
+                    segOpen[segments.getRowSegment(value / cDIM, value % cDIM)]++;
+                    segOpen[segments.getColSegment(value / cDIM, value % cDIM)]++;
+                    if (optionIndex != null) {
+                        optionIndex.changed(value);
+                    }
+                    break;
+                case SELECTED:
+                    selected = value;
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public boolean isGoal() {
+        return unlit == 0 && !inconsistent && wrongPillars == 0;
+    }
+
+    @Override
+    public Configuration snapshot() {
+        SafeConfig config = new SafeConfig(board);
+        for (int row = 0; row < rDIM; row++) {
+            for (int col = 0; col < cDIM; col++) {
+                if (isLaser(row, col)) {
+                    config.placeLaser(row, col);
+                }
+            }
+        }
+        config.markDecided();
+        return config;
+    }
+
+    @Override
+    public SafeTrailConfig copy() {
+        return new SafeTrailConfig(this);
+    }
+
+    /**
+     * Put a laser in a cell and light up the cells of its two segments.
+     * Only the cells that were not lit before go on the trail.
+     * @param row - (int) the row of the laser
+     * @param col - (int) the col of the laser
+     * @param cause - (int) DECIDED, or the pillar that forced it
+     */
+    void placeLaser(int row, int col, int cause) {
+        int h = segments.getRowSegment(row, col);
+        int v = segments.getColSegment(row, col);
+        laserRows[row * rowWords + (col >>> 6)] |= 1L << col;
+        laserCols[col * colWords + (row >>> 6)] |= 1L << row;
+        if (++segLasers[h] == 1 && hash != null) {
+            hash.segment(h);
+        }
+        if (++segLasers[v] == 1 && hash != null) {
+            hash.segment(v);
+        }
+        for (int p : board.getNeighborPillars(row * cDIM + col)) {
+            int num = board.getPillarValue(p);
+            if (pillarLasers[p] == num) {
+                wrongPillars++;
+            }
+            if (++pillarLasers[p] == num) {
+                wrongPillars--;
+            }
+            if (hash != null) {
+                hash.pillar(p, pillarLasers[p] - 1, pillarLasers[p]);
+            }
+        }
+        int laser = row * cDIM + col;
+        push(laser, LASER);
+        if (rule != null) {
+            rule.laser(laser, true);
+        }
+
+        //East and West Direction
+        for (int cell : segments.getCells(h)) {
+            light(row, cell % cDIM, cell == laser ? cause : laser);
+        }
+        //North and South Direction
+        for (int cell : segments.getCells(v)) {
+            light(cell / cDIM, col, cell == laser ? cause : laser);
+        }
+    }
+
+    /**
+     * Decide that a cell stays without a laser
+     * @param row - (int) the row of the cell
+     * @param col - (int) the col of the cell
+     * @param cause - (int) DECIDED, or the pillar that forced it
+     */
+    void block(int row, int col, int cause) {
+        blockedRows[row * rowWords + (col >>> 6)] |= 1L << col;
+        push(row * cDIM + col, BLOCKED);
+        if (hash != null) {
+            hash.blocked(row * cDIM + col);
+        }
+        close(row, col, cause);
+    }
+
+    /**
+     * Record that a cell stopped being open. The pillars next to it and
+     * both of its segments have one place less a laser could go.
+     * @param row - (int) the row of the cell
+     * @param col - (int) the col of the cell
+     * @param cause - (int) why it was closed
+     */
+    private void close(int row, int col, int cause) {
+        push(row * cDIM + col, CLOSED);
+        if (rule != null) {
+            rule.closed(row * cDIM + col, true);
+        }
+        if (conflicts != null) {
+            conflicts.closed(row * cDIM + col, cause, trailSize - 1);
+        }
+        for (int p : board.getNeighborPillars(row * cDIM + col)) {
+            pillarOpen[p]--;
+        }
+        closeInSegment(segments.getRowSegment(row, col));
+        closeInSegment(segments.getColSegment(row, col));
+        if (optionIndex != null) {
+            optionIndex.changed(row * cDIM + col);
+        }
+    }
+
+    /**
+     * Take one open cell off a segment, telling the dead cell pruning
+     * if it has none left
+     * @param seg - (int) the segment id
+     */
+    private void closeInSegment(int seg) {
+        if (--segOpen[seg] == 0 && deadCells != null) {
+            deadCells.zeroed(seg);
+        }
+    }
+
+    /**
+     * Light a cell if it is not lit yet
+     * @param row - (int) the row of the cell
+     * @param col - (int) the col of the cell
+     * @param cause - (int) the laser that lights it, or the cause of
+     *              the laser for its own cell
+     */
+    private void light(int row, int col, int cause) {
+        int w = row * rowWords + (col >>> 6);
+        long bit = 1L << col;
+        if ((litRows[w] & bit) == 0) {
+            litRows[w] |= bit;
+            unlit--;
+            push(row * cDIM + col, LIT);
+            if (hash != null) {
+                hash.lit(row * cDIM + col);
+            }
+            if (optionIndex != null) {
+                optionIndex.changed(row * cDIM + col);
+            }
+            if (rule != null) {
+                rule.lit(row * cDIM + col, true);
+            }
+            if ((blockedRows[w] & bit) == 0) {
+                close(row, col, cause);
+            }
+        }
+    }
+
+    /**
+     * Move the scan position, remembering the old one on the trail
+     * @param newPos - (int) the new position
+     */
+    private void setPos(int newPos) {
+        push(pos, POS);
+        if (hash != null) {
+            hash.pass(pos, newPos);
+        }
+        pos = newPos;
+    }
+
+    /**
+     * Push an entry on the undo trail
+     * @param value - (int) the changed value
+     * @param kind - (int) the kind of change
+     */
+    private void push(int value, int kind) {
+        if (trailSize == trail.length) {
+            int[] bigger = new int[trail.length * 2];
+            System.arraycopy(trail, 0, bigger, 0, trailSize);
+            trail = bigger;
+        }
+        trail[trailSize++] = (value << KIND_BITS) | kind;
+    }
+
+    /**
+     * Find the first cell at or after from that can still take a
+     * laser, that is a free cell that is neither lit nor blocked
+     * @param from - (int) row major index to start at
+     * @return int - row major index of the cell, or -1 if there is none
+     */
+    public int nextOpen(int from) {
+        long[] free = board.getFreeRows();
+        int row = from / cDIM;
+        int col = from % cDIM;
+        while (row < rDIM) {
+            int base = row * rowWords;
+            for (int w = col >>> 6; w < rowWords; w++) {
+                long open = free[base + w] & ~litRows[base + w] & ~blockedRows[base + w];
+                if (w == col >>> 6) {
+                    open &= -1L << col;
+                }
+                if (open != 0) {
+                    return row * cDIM + (w << 6) + Long.numberOfTrailingZeros(open);
+                }
+            }
+            row++;
+            col = 0;
+        }
+        return -1;
+    }
+
+    /**
+     * Review a pillar. A pillar fails if it has more lasers than its
+     * number, or if its open neighbors are not enough to reach it.
+     * With propagation on, the moves it forces are made.
+     * @param p - (int) the index of the pillar
+     * @return true if the pillar has not failed
+     */
+    private boolean reviewPillar(int p) {
+        int num = board.getPillarValue(p);
+        if (pillarLasers[p] > num || pillarLasers[p] + pillarOpen[p] < num) {
+            return false;
+        }
+        if (propagation != null) {
+            propagation.force(this, p);
+        }
+        return true;
+    }
+
+    /**
+     * Return the number of lasers next to a pillar
+     * @param p - (int) the index of the pillar
+     * @return int - lasers around the pillar
+     */
+    public int getPillarLasers(int p) {
+        return pillarLasers[p];
+    }
+
+    /**
+     * Return the number of open cells next to a pillar
+     * @param p - (int) the index of the pillar
+     * @return int - neighbors of the pillar that can still take a laser
+     */
+    public int getPillarOpen(int p) {
+        return pillarOpen[p];
+    }
+
+    /**
+     * Return the number of lasers in a segment
+     * @param seg - (int) the segment id
+     * @return int - lasers in the segment
+     */
+    int getSegmentLasers(int seg) {
+        return segLasers[seg];
+    }
+
+    /**
+     * Return the number of open cells in a segment
+     * @param seg - (int) the segment id
+     * @return int - cells of the segment that can still take a laser
+     */
+    int getSegmentOpen(int seg) {
+        return segOpen[seg];
+    }
+
+    /**
+     * Return the index of the places to branch on by their options,
+     * brought up to the current state. It is built the first time it
+     * is asked for and kept up to date from then on.
+     * @return OptionIndex - the index
+     */
+    OptionIndex getOptionIndex() {
+        if (optionIndex == null) {
+            optionIndex = new OptionIndex(this);
+        }
+        optionIndex.refresh();
+        return optionIndex;
+    }
+
+    /**
+     * Is there a laser in the cell?
+     * @param row - (int) the row of the cell
+     * @param col - (int) the col of the cell
+     * @return true if the cell holds a laser
+     */
+    private boolean isLaser(int row, int col) {
+        return SafeBoard.testBit(laserRows, row * rowWords, col);
+    }
+
+    /**
+     * Was the cell decided to stay without a laser?
+     * @param row - (int) the row of the cell
+     * @param col - (int) the col of the cell
+     * @return true if the cell was blocked by a branch or a pillar
+     */
+    boolean isKeptEmpty(int row, int col) {
+        return SafeBoard.testBit(blockedRows, row * rowWords, col);
+    }
+
+    /**
+     * Return what is decided about a free cell
+     * @param cell - (int) row major index of the cell
+     * @return int - 1 for a laser, 0 for no laser, -1 if it is still open
+     */
+    int cellValue(int cell) {
+        int row = cell / cDIM;
+        int col = cell % cDIM;
+        if (isLaser(row, col)) {
+            return 1;
+        }
+        return isOpen(row, col) ? -1 : 0;
+    }
+
+    /**
+     * Is the cell covered by a laser or a beam?
+     * @param row - (int) the row of the cell
+     * @param col - (int) the col of the cell
+     * @return true if the cell is lit
+     */
+    public boolean isLit(int row, int col) {
+        return SafeBoard.testBit(litRows, row * rowWords, col);
+    }
+
+    /**
+     * Can the cell still take a laser?
+     * @param row - (int) the row of the cell
+     * @param col - (int) the col of the cell
+     * @return true if the cell is on the safe, free, not lit and not blocked
+     */
+    public boolean isOpen(int row, int col) {
+        if (row < 0 || row >= rDIM || col < 0 || col >= cDIM) {
+            return false;
+        }
+        int base = row * rowWords;
+        return SafeBoard.testBit(board.getFreeRows(), base, col) && !SafeBoard.testBit(litRows, base, col)
+                && !SafeBoard.testBit(blockedRows, base, col);
+    }
+
+    /**
+     * Count the open cells in the row and column runs of a cell, the
+     * places a laser that would light it can still go
+     * @param row - (int) the row of the cell
+     * @param col - (int) the col of the cell
+     * @return int - number of open cells that could light the cell
+     */
+    public int lightOptions(int row, int col) {
+        return segOpen[segments.getRowSegment(row, col)] + segOpen[segments.getColSegment(row, col)]
+                - (isOpen(row, col) ? 1 : 0);
+    }
+
+    /**
+     * Return the row major index of the cell after the last one the
+     * search branched on
+     * @return int - the scan position
+     */
+    public int getScanPosition() {
+        return pos;
+    }
+
+    /**
+     * Return the layout of the safe
+     * @return SafeBoard - the layout of the safe
+     */
+    public SafeBoard getBoard() {
+        return board;
+    }
+
+    /**
+     * Testing purpose toString
+     * @return the grid with its lasers and beams
+     */
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
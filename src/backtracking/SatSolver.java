@@ -0,0 +1,677 @@
+package backtracking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A small conflict driven clause learning (CDCL) SAT solver. Unlike the
+ * backtrackers it learns a new clause from every conflict, so the same
+ * contradiction is not found again in another part of the tree, and it
+ * jumps back over the decisions that had nothing to do with it.
+ *
+ * Variables are numbered from 1 and literals are written like in the
+ * DIMACS format: v for "v is true" and -v for "v is false". Inside,
+ * a literal is 2 * (v - 1) for the positive one and that plus 1 for the
+ * negative one, so flipping the low bit negates it.
+ *
+ * The search uses the usual pieces: two watched literals per clause
+ * for unit propagation, first UIP learning, VSIDS to pick the next
+ * variable, phase saving, and restarts on the Luby sequence.
+ *
+ * Every learnt clause is stored with its LBD, the number of decision
+ * levels among its literals when it was learnt; the fewer, the more
+ * often it tends to propagate. Every so many conflicts the worse half
+ * of the learnt clauses is dropped, so the clause database and the
+ * watch lists stay bounded on long runs. Clauses with an LBD of 2 or
+ * less, and clauses that are the reason of an assigned literal, are
+ * always kept.
+ */
+public class SatSolver {
+
+    //Values of a variable
+    private static final byte UNDEF = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = -1;
+    //Conflicts in a run of the Luby sequence with factor 1
+    private static final int RESTART_BASE = 100;
+    //Conflicts before the first reduction of the learnt clauses, and
+    //how much longer every next interval gets
+    private static final int REDUCE_BASE = 2000;
+    private static final int REDUCE_INC = 300;
+    //Learnt clauses with at most this LBD are never dropped
+    private static final int GLUE_LBD = 2;
+
+    private int numVars;
+    private List<int[]> clauses = new ArrayList<>();
+    //LBD of every clause, 0 for a clause that was not learnt
+    private IntList lbd = new IntList();
+    //Clauses watching each literal
+    private IntList[] watches = new IntList[0];
+
+    //Value, decision level and reason clause of every variable
+    private byte[] value = new byte[0];
+    private int[] level = new int[0];
+    private int[] reason = new int[0];
+    //Last value of every variable, tried first when it is picked again
+    private boolean[] phase = new boolean[0];
+    //Variables met while analyzing a conflict
+    private boolean[] seen = new boolean[0];
+    //Last LBD computation every decision level was counted in
+    private int[] levelStamp = new int[0];
+    private int stamp;
+
+    //Assigned literals in order, where each decision level starts, and
+    //the first literal that has not been propagated yet
+    private int[] trail = new int[0];
+    private int trailSize;
+    private IntList trailLim = new IntList();
+    private int qhead;
+
+    //VSIDS activity of every variable, kept in a max heap
+    private double[] activity = new double[0];
+    private double varInc = 1.0;
+    private int[] heap = new int[0];
+    private int heapSize;
+    private int[] heapIndex = new int[0];
+
+    //Set once an empty clause shows up
+    private boolean unsat;
+    private long conflicts;
+    private long decisions;
+    //When the learnt clauses are reduced next, and how often they were
+    private long reduceAt = REDUCE_BASE;
+    private int reductions;
+    //Deadline and cancellation token of the running solve, may be null
+    private SearchLimit limit;
+
+    /**
+     * Add a new variable
+     * @return int - its number, starting at 1
+     */
+    public int newVar() {
+        int v = numVars++;
+        if (numVars > value.length) {
+            int size = Math.max(16, value.length * 2);
+            value = Arrays.copyOf(value, size);
+            level = Arrays.copyOf(level, size);
+            reason = Arrays.copyOf(reason, size);
+            phase = Arrays.copyOf(phase, size);
+            seen = Arrays.copyOf(seen, size);
+            levelStamp = Arrays.copyOf(levelStamp, size + 1);
+            trail = Arrays.copyOf(trail, size);
+            activity = Arrays.copyOf(activity, size);
+            heap = Arrays.copyOf(heap, size);
+            heapIndex = Arrays.copyOf(heapIndex, size);
+            watches = Arrays.copyOf(watches, 2 * size);
+        }
+        watches[2 * v] = new IntList();
+        watches[2 * v + 1] = new IntList();
+        reason[v] = -1;
+        heapIndex[v] = -1;
+        heapInsert(v);
+        return v + 1;
+    }
+
+    /**
+     * Return the number of variables
+     * @return int - number of variables
+     */
+    public int getVarCount() {
+        return numVars;
+    }
+
+    /**
+     * Add a clause, the "or" of its literals. Clauses can only be added
+     * before solve is called.
+     * @param literals - (int...) literals in the DIMACS format
+     */
+    public void addClause(int... literals) {
+        if (unsat) {
+            return;
+        }
+        //Drop repeated and false literals, and clauses that are always true
+        int[] clause = new int[literals.length];
+        int size = 0;
+        for (int literal : literals) {
+            int lit = toLit(literal);
+            if (litValue(lit) == TRUE) {
+                return;
+            }
+            if (litValue(lit) == FALSE) {
+                continue;
+            }
+            boolean repeated = false;
+            for (int i = 0; i < size; i++) {
+                if (clause[i] == lit) {
+                    repeated = true;
+                } else if (clause[i] == (lit ^ 1)) {
+                    return;
+                }
+            }
+            if (!repeated) {
+                clause[size++] = lit;
+            }
+        }
+        if (size == 0) {
+            unsat = true;
+        } else if (size == 1) {
+            assign(clause[0], -1);
+            if (propagate() >= 0) {
+                unsat = true;
+            }
+        } else {
+            attach(Arrays.copyOf(clause, size), 0);
+        }
+    }
+
+    /**
+     * Give the solver a limit, ticked at every conflict and decision.
+     * Once it is reached, solve() throws a SearchAbortedException and
+     * can be called again later to go on from where it stopped.
+     * @param limit - (SearchLimit) the limit, or null for none
+     */
+    void setLimit(SearchLimit limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Look for an assignment that makes every clause true
+     * @return true if there is one; false if the clauses contradict
+     */
+    public boolean solve() {
+        if (unsat) {
+            return false;
+        }
+        IntList learnt = new IntList();
+        int restart = 1;
+        long restartAt = conflicts + RestartSchedule.luby(restart) * RESTART_BASE;
+        while (true) {
+            if (limit != null) {
+                limit.tick();
+            }
+            int conflict = propagate();
+            if (conflict >= 0) {
+                conflicts++;
+                if (decisionLevel() == 0) {
+                    unsat = true;
+                    return false;
+                }
+                int backLevel = analyze(conflict, learnt);
+                cancelUntil(backLevel);
+                if (learnt.size == 1) {
+                    assign(learnt.data[0], -1);
+                } else {
+                    int index = attach(learnt.toArray(), computeLbd(learnt));
+                    assign(learnt.data[0], index);
+                }
+                decayActivity();
+            } else if (conflicts >= restartAt) {
+                //Start over from the top, keeping what was learnt
+                cancelUntil(0);
+                restart++;
+                restartAt = conflicts + RestartSchedule.luby(restart) * RESTART_BASE;
+            } else {
+                if (conflicts >= reduceAt) {
+                    //Everything is propagated, the clauses can be moved
+                    reduceLearnts();
+                    reductions++;
+                    reduceAt = conflicts + REDUCE_BASE + (long) reductions * REDUCE_INC;
+                }
+                int v = pickBranchVar();
+                if (v < 0) {
+                    //Every variable has a value and nothing conflicts
+                    return true;
+                }
+                decisions++;
+                trailLim.add(trailSize);
+                assign(2 * v + (phase[v] ? 0 : 1), -1);
+            }
+        }
+    }
+
+    /**
+     * Return the value of a variable in the assignment solve found
+     * @param var - (int) the variable, starting at 1
+     * @return true if it is true
+     */
+    public boolean getValue(int var) {
+        return value[var - 1] == TRUE;
+    }
+
+    /**
+     * Return the number of conflicts so far
+     * @return long - the conflicts
+     */
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * Return the number of decisions so far
+     * @return long - the decisions
+     */
+    public long getDecisions() {
+        return decisions;
+    }
+
+    /**
+     * Return the number of clauses learnt and not dropped so far
+     * @return int - the learnt clauses
+     */
+    public int getLearntCount() {
+        int count = 0;
+        for (int i = 0; i < lbd.size; i++) {
+            if (lbd.data[i] > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Store a clause of at least two literals and watch its first two
+     * @param clause - (int[]) the literals
+     * @param clauseLbd - (int) its LBD if it was learnt, 0 otherwise
+     * @return int - the index of the clause
+     */
+    private int attach(int[] clause, int clauseLbd) {
+        int index = clauses.size();
+        clauses.add(clause);
+        lbd.add(clauseLbd);
+        watches[clause[0]].add(index);
+        watches[clause[1]].add(index);
+        return index;
+    }
+
+    /**
+     * Count the decision levels among the literals of a learnt clause
+     * @param learnt - (IntList) the clause, every literal assigned
+     * @return int - its LBD, at least 1
+     */
+    private int computeLbd(IntList learnt) {
+        stamp++;
+        int count = 0;
+        for (int i = 0; i < learnt.size; i++) {
+            int l = level[learnt.data[i] >>> 1];
+            if (levelStamp[l] != stamp) {
+                levelStamp[l] = stamp;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Drop the worse half of the learnt clauses that may be dropped:
+     * those with the highest LBD, the longest first among equals. The
+     * clauses left are moved down to close the gaps, and the reasons
+     * and the watch lists are rebuilt for their new indices. Must only
+     * be called when every assignment is propagated.
+     */
+    private void reduceLearnts() {
+        List<Integer> candidates = new ArrayList<>();
+        for (int index = 0; index < clauses.size(); index++) {
+            int[] clause = clauses.get(index);
+            //The literal a clause forced is always kept in slot 0
+            boolean locked = reason[clause[0] >>> 1] == index && litValue(clause[0]) == TRUE;
+            if (lbd.data[index] > GLUE_LBD && !locked) {
+                candidates.add(index);
+            }
+        }
+        candidates.sort((a, b) -> lbd.data[a] != lbd.data[b] ? lbd.data[b] - lbd.data[a]
+                : clauses.get(b).length - clauses.get(a).length);
+        boolean[] dropped = new boolean[clauses.size()];
+        for (int i = 0; i < candidates.size() / 2; i++) {
+            dropped[candidates.get(i)] = true;
+        }
+
+        int[] moved = new int[clauses.size()];
+        int kept = 0;
+        for (int index = 0; index < clauses.size(); index++) {
+            if (dropped[index]) {
+                moved[index] = -1;
+            } else {
+                moved[index] = kept;
+                clauses.set(kept, clauses.get(index));
+                lbd.data[kept] = lbd.data[index];
+                kept++;
+            }
+        }
+        clauses.subList(kept, clauses.size()).clear();
+        lbd.size = kept;
+        for (int v = 0; v < numVars; v++) {
+            if (reason[v] >= 0) {
+                reason[v] = moved[reason[v]];
+            }
+        }
+        //Every clause watches its first two literals
+        for (int lit = 0; lit < 2 * numVars; lit++) {
+            watches[lit].size = 0;
+        }
+        for (int index = 0; index < kept; index++) {
+            int[] clause = clauses.get(index);
+            watches[clause[0]].add(index);
+            watches[clause[1]].add(index);
+        }
+    }
+
+    /**
+     * Make a literal true
+     * @param lit - (int) the literal
+     * @param from - (int) the clause that forced it, -1 for a decision
+     */
+    private void assign(int lit, int from) {
+        int v = lit >>> 1;
+        value[v] = (lit & 1) == 0 ? TRUE : FALSE;
+        level[v] = decisionLevel();
+        reason[v] = from;
+        trail[trailSize++] = lit;
+    }
+
+    /**
+     * Run unit propagation over every literal assigned since the last
+     * call. A clause is only looked at when one of its two watched
+     * literals becomes false.
+     * @return int - the index of a clause that is false, or -1
+     */
+    private int propagate() {
+        while (qhead < trailSize) {
+            int falseLit = trail[qhead++] ^ 1;
+            IntList watching = watches[falseLit];
+            int kept = 0;
+            int i = 0;
+            while (i < watching.size) {
+                int index = watching.data[i++];
+                int[] clause = clauses.get(index);
+                //Keep the false literal in slot 1
+                if (clause[0] == falseLit) {
+                    clause[0] = clause[1];
+                    clause[1] = falseLit;
+                }
+                if (litValue(clause[0]) == TRUE) {
+                    watching.data[kept++] = index;
+                    continue;
+                }
+                //Look for another literal to watch
+                boolean moved = false;
+                for (int k = 2; k < clause.length; k++) {
+                    if (litValue(clause[k]) != FALSE) {
+                        clause[1] = clause[k];
+                        clause[k] = falseLit;
+                        watches[clause[1]].add(index);
+                        moved = true;
+                        break;
+                    }
+                }
+                if (moved) {
+                    continue;
+                }
+                watching.data[kept++] = index;
+                if (litValue(clause[0]) == FALSE) {
+                    //Every literal is false, keep the rest of the watches
+                    while (i < watching.size) {
+                        watching.data[kept++] = watching.data[i++];
+                    }
+                    watching.size = kept;
+                    qhead = trailSize;
+                    return index;
+                }
+                assign(clause[0], index);
+            }
+            watching.size = kept;
+        }
+        return -1;
+    }
+
+    /**
+     * Learn a clause from a conflict by resolving back to the first
+     * unique implication point of the current level
+     * @param conflict - (int) the index of the false clause
+     * @param learnt - (IntList) gets the learnt clause, the literal it
+     *                 asserts first and one of the latest level second
+     * @return int - the level to jump back to
+     */
+    private int analyze(int conflict, IntList learnt) {
+        learnt.size = 0;
+        learnt.add(-1);
+        int pathCount = 0;
+        int lit = -1;
+        int index = trailSize - 1;
+        int current = decisionLevel();
+        do {
+            int[] clause = clauses.get(conflict);
+            for (int j = lit < 0 ? 0 : 1; j < clause.length; j++) {
+                int q = clause[j];
+                int v = q >>> 1;
+                if (!seen[v] && level[v] > 0) {
+                    seen[v] = true;
+                    bumpActivity(v);
+                    if (level[v] >= current) {
+                        pathCount++;
+                    } else {
+                        learnt.add(q);
+                    }
+                }
+            }
+            //Next literal of the current level to resolve on
+            while (!seen[trail[index] >>> 1]) {
+                index--;
+            }
+            lit = trail[index--];
+            conflict = reason[lit >>> 1];
+            seen[lit >>> 1] = false;
+            pathCount--;
+        } while (pathCount > 0);
+        learnt.data[0] = lit ^ 1;
+        for (int i = 1; i < learnt.size; i++) {
+            seen[learnt.data[i] >>> 1] = false;
+        }
+
+        //Jump back to the second highest level of the clause
+        int backLevel = 0;
+        if (learnt.size > 1) {
+            int max = 1;
+            for (int i = 2; i < learnt.size; i++) {
+                if (level[learnt.data[i] >>> 1] > level[learnt.data[max] >>> 1]) {
+                    max = i;
+                }
+            }
+            int swap = learnt.data[1];
+            learnt.data[1] = learnt.data[max];
+            learnt.data[max] = swap;
+            backLevel = level[learnt.data[1] >>> 1];
+        }
+        return backLevel;
+    }
+
+    /**
+     * Take back every assignment above a decision level
+     * @param target - (int) the level to go back to
+     */
+    private void cancelUntil(int target) {
+        if (decisionLevel() <= target) {
+            return;
+        }
+        int start = trailLim.data[target];
+        for (int i = trailSize - 1; i >= start; i--) {
+            int v = trail[i] >>> 1;
+            phase[v] = value[v] == TRUE;
+            value[v] = UNDEF;
+            reason[v] = -1;
+            if (heapIndex[v] < 0) {
+                heapInsert(v);
+            }
+        }
+        trailSize = start;
+        qhead = start;
+        trailLim.size = target;
+    }
+
+    /**
+     * Take the unassigned variable with the highest activity
+     * @return int - the variable, or -1 if all have a value
+     */
+    private int pickBranchVar() {
+        while (heapSize > 0) {
+            int v = heapRemoveMax();
+            if (value[v] == UNDEF) {
+                return v;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Raise the activity of a variable that took part in a conflict
+     * @param v - (int) the variable
+     */
+    private void bumpActivity(int v) {
+        activity[v] += varInc;
+        if (activity[v] > 1e100) {
+            //Scale everything down, the order stays the same
+            for (int i = 0; i < numVars; i++) {
+                activity[i] *= 1e-100;
+            }
+            varInc *= 1e-100;
+        }
+        if (heapIndex[v] >= 0) {
+            heapUp(heapIndex[v]);
+        }
+    }
+
+    /**
+     * Make older conflicts count less than newer ones
+     */
+    private void decayActivity() {
+        varInc /= 0.95;
+    }
+
+    /**
+     * Return the current decision level
+     * @return int - number of decisions on the trail
+     */
+    private int decisionLevel() {
+        return trailLim.size;
+    }
+
+    /**
+     * Return the value of a literal
+     * @param lit - (int) the literal
+     * @return byte - TRUE, FALSE or UNDEF
+     */
+    private byte litValue(int lit) {
+        byte v = value[lit >>> 1];
+        return (lit & 1) == 0 ? v : (byte) -v;
+    }
+
+    /**
+     * Turn a DIMACS literal into an inside one
+     * @param literal - (int) v or -v
+     * @return int - the literal
+     */
+    private int toLit(int literal) {
+        int v = Math.abs(literal);
+        if (literal == 0 || v > numVars) {
+            throw new IllegalArgumentException("no such variable: " + literal);
+        }
+        return 2 * (v - 1) + (literal < 0 ? 1 : 0);
+    }
+
+    /**
+     * Put a variable in the activity heap
+     * @param v - (int) the variable
+     */
+    private void heapInsert(int v) {
+        heap[heapSize] = v;
+        heapIndex[v] = heapSize;
+        heapUp(heapSize++);
+    }
+
+    /**
+     * Take the most active variable out of the heap
+     * @return int - the variable
+     */
+    private int heapRemoveMax() {
+        int top = heap[0];
+        heapIndex[top] = -1;
+        heapSize--;
+        if (heapSize > 0) {
+            heap[0] = heap[heapSize];
+            heapIndex[heap[0]] = 0;
+            heapDown(0);
+        }
+        return top;
+    }
+
+    /**
+     * Move a heap entry up until its parent is at least as active
+     * @param i - (int) the position in the heap
+     */
+    private void heapUp(int i) {
+        int v = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (activity[heap[parent]] >= activity[v]) {
+                break;
+            }
+            heap[i] = heap[parent];
+            heapIndex[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = v;
+        heapIndex[v] = i;
+    }
+
+    /**
+     * Move a heap entry down until its children are not more active
+     * @param i - (int) the position in the heap
+     */
+    private void heapDown(int i) {
+        int v = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && activity[heap[child + 1]] > activity[heap[child]]) {
+                child++;
+            }
+            if (activity[heap[child]] <= activity[v]) {
+                break;
+            }
+            heap[i] = heap[child];
+            heapIndex[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = v;
+        heapIndex[v] = i;
+    }
+
+    /**
+     * A growable list of ints
+     */
+    private static class IntList {
+        private int[] data = new int[4];
+        private int size;
+
+        /**
+         * Add a value at the end
+         * @param x - (int) the value
+         */
+        void add(int x) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = x;
+        }
+
+        /**
+         * Copy the values into an array
+         * @return int[] - the values
+         */
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
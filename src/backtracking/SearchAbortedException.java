@@ -0,0 +1,30 @@
+package backtracking;
+
+/**
+ * Thrown from deep inside a search when its SearchLimit says stop. It
+ * never leaves the backtracking package: the solve call that started
+ * the search catches it and returns a result with its status.
+ */
+class SearchAbortedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private SolveResult.Status status;
+
+    /**
+     * @param status - (SolveResult.Status) TIMED_OUT or CANCELLED
+     */
+    SearchAbortedException(SolveResult.Status status) {
+        //Thrown on a hot path, the stack trace is never looked at
+        super(status.toString(), null, false, false);
+        this.status = status;
+    }
+
+    /**
+     * Return why the search stopped
+     * @return SolveResult.Status - TIMED_OUT or CANCELLED
+     */
+    SolveResult.Status getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,71 @@
+package backtracking;
+
+import java.time.Instant;
+
+/**
+ * The deadline and the cancellation token of one search. The search
+ * calls tick() at every node and every interval nodes the limit looks
+ * at the clock and the token. Once either says stop, it throws a
+ * SearchAbortedException, which unwinds the search right away; the
+ * solve method that started the search turns it into a result.
+ *
+ * A limit counts nodes for a single thread, and keeps the total for
+ * the statistics of the search. Searches running in
+ * parallel each take their own limit over the same deadline and token.
+ */
+class SearchLimit {
+
+    //Nodes between two looks at the clock and the token
+    static final int DEFAULT_INTERVAL = 1024;
+
+    private Instant deadline;
+    private CancellationToken token;
+    private int interval;
+    private int nodes;
+    //Every node counted so far
+    private long visited;
+
+    /**
+     * Create a limit
+     * @param deadline - (Instant) when to give up, null for never
+     * @param token - (CancellationToken) the token to watch, may be null
+     * @param interval - (int) nodes between two checks
+     */
+    SearchLimit(Instant deadline, CancellationToken token, int interval) {
+        this.deadline = deadline;
+        this.token = token;
+        this.interval = interval;
+        this.nodes = 0;
+    }
+
+    /**
+     * Count a node, and check the limit every interval nodes
+     */
+    void tick() {
+        visited++;
+        if (++nodes >= interval) {
+            nodes = 0;
+            check();
+        }
+    }
+
+    /**
+     * Return the number of nodes counted so far
+     * @return long - the nodes
+     */
+    long getVisited() {
+        return visited;
+    }
+
+    /**
+     * Stop the search if the token was cancelled or the deadline passed
+     */
+    void check() {
+        if (token != null && token.isCancelled()) {
+            throw new SearchAbortedException(SolveResult.Status.CANCELLED);
+        }
+        if (deadline != null && Instant.now().isAfter(deadline)) {
+            throw new SearchAbortedException(SolveResult.Status.TIMED_OUT);
+        }
+    }
+}
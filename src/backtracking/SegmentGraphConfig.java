@@ -0,0 +1,686 @@
+package backtracking;
+
+import java.util.Arrays;
+
+/**
+ * A configuration of a safe that is searched over its segments instead
+ * of its cells. Every free cell is where one horizontal and one
+ * vertical segment cross, so the safe is a bipartite graph with the
+ * horizontal segments on one side, the vertical ones on the other and
+ * a cell for every edge. A solution picks a set of cells with at most
+ * one in every segment, a matching of that graph, such that every cell
+ * has at least one of its segments picked, while every numbered pillar
+ * gets its number of picked cells around it.
+ *
+ * The search branches on a segment that has dark cells and no laser:
+ * branch i puts the laser on the i-th cell of the segment that is still
+ * open, and the last branch leaves the segment without a laser, which
+ * blocks its open cells. A segment that has to get a laser has no last
+ * branch. The branches are disjoint, so solutions are counted exactly.
+ *
+ * A segment has to get a laser when one of its dark cells has no open
+ * cell left in its other segment. Such forced segments are what the
+ * graph reasoning works on. A forced segment with a single open cell
+ * gets its laser right away, and one without any fails the branch.
+ * After that, the forced segments all need their own laser, each on an
+ * open cell, and two lasers never share a segment, so the open cells
+ * must hold a matching that covers every forced horizontal segment, and
+ * one that covers every forced vertical segment. If either side has no
+ * such matching, by Hall's theorem some set of forced segments has fewer
+ * open crossings than members, and the branch is cut long before one of
+ * their cells goes dark. The numbered pillars are propagated as in
+ * SafeTrailConfig, and a PruningRule can be added on top.
+ *
+ * A trail entry is an int holding the changed value in the high bits
+ * and the kind of change in the three low bits.
+ */
+public class SegmentGraphConfig implements UndoableConfiguration {
+
+    //Kinds of trail entries
+    private static final int LIT = 0;
+    private static final int LASER = 1;
+    private static final int BLOCKED = 2;
+    private static final int CLOSED = 3;
+    private static final int SELECTED = 4;
+    private static final int KIND_BITS = 3;
+    private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+    //Bits of the state of a cell; a free cell without any is open
+    private static final byte LASER_BIT = 1;
+    private static final byte LIT_BIT = 2;
+    private static final byte BLOCKED_BIT = 4;
+
+    private SafeBoard board;
+    private SegmentIndex segments;
+    private int rDIM;
+    private int cDIM;
+    //Segments of every cell, -1 for pillars and walls, row major
+    private int[] rowSeg;
+    private int[] colSeg;
+    //Free cells next to every numbered pillar
+    private int[][] pillarCells;
+    //State bits of every cell, row major
+    private byte[] state;
+    //Number of free cells that are not lit yet
+    private int dark;
+    //The laser of every segment, -1 if it has none
+    private int[] segLaser;
+    //Open and dark cells of every segment
+    private int[] segOpen;
+    private int[] segDark;
+    //Lasers and open cells next to every pillar, and the number of
+    //pillars that do not have their number of lasers
+    private int[] pillarLasers;
+    private int[] pillarOpen;
+    private int wrongPillars;
+    //Set when the safe contradicts itself before any branch
+    private boolean inconsistent;
+    //The segment this node branches on
+    private int selected;
+    //Scratch of the matchings: the segment every segment of the other
+    //side is matched to, and the round every segment was last tried in
+    private int[] matchedTo;
+    private int[] tried;
+    private int round;
+    //Forced segments of one side, found by the matching check
+    private int[] forced;
+    //Extra test of every branch, null when there is none
+    private PruningRule rule;
+
+    private int[] trail;
+    private int trailSize;
+
+    /**
+     * Create the empty configuration of a safe, with the moves the
+     * pillars force from the start already made
+     * @param board - (SafeBoard) the layout of the safe
+     */
+    public SegmentGraphConfig(SafeBoard board) {
+        this.board = board;
+        this.segments = board.getSegments();
+        this.rDIM = board.getRDIM();
+        this.cDIM = board.getCDIM();
+        int segCount = segments.getSegmentCount();
+        this.rowSeg = new int[rDIM * cDIM];
+        this.colSeg = new int[rDIM * cDIM];
+        this.state = new byte[rDIM * cDIM];
+        this.segLaser = new int[segCount];
+        this.segOpen = new int[segCount];
+        this.segDark = new int[segCount];
+        Arrays.fill(segLaser, -1);
+        for (int row = 0; row < rDIM; row++) {
+            for (int col = 0; col < cDIM; col++) {
+                int cell = row * cDIM + col;
+                rowSeg[cell] = segments.getRowSegment(row, col);
+                colSeg[cell] = segments.getColSegment(row, col);
+                if (rowSeg[cell] >= 0) {
+                    dark++;
+                }
+            }
+        }
+        for (int seg = 0; seg < segCount; seg++) {
+            segOpen[seg] = segments.getCells(seg).length;
+            segDark[seg] = segOpen[seg];
+        }
+        int pillars = board.getPillarCount();
+        this.pillarCells = new int[pillars][];
+        this.pillarLasers = new int[pillars];
+        this.pillarOpen = new int[pillars];
+        for (int p = 0; p < pillars; p++) {
+            int[] cells = new int[4];
+            int count = 0;
+            for (int d = 0; d < 4; d++) {
+                int r = board.getPillarRow(p) + SafeBoard.DR[d];
+                int c = board.getPillarCol(p) + SafeBoard.DC[d];
+                if (r >= 0 && r < rDIM && c >= 0 && c < cDIM && !board.isBlocked(r, c)) {
+                    cells[count++] = r * cDIM + c;
+                }
+            }
+            pillarCells[p] = Arrays.copyOf(cells, count);
+            pillarOpen[p] = count;
+            if (board.getPillarValue(p) != 0) {
+                wrongPillars++;
+            }
+        }
+        this.matchedTo = new int[segCount];
+        this.tried = new int[segCount];
+        this.forced = new int[segCount];
+        this.selected = -1;
+        this.trail = new int[64];
+        this.trailSize = 0;
+
+        //Review everything once; whatever that forces stays for good
+        for (int p = 0; p < pillars && !inconsistent; p++) {
+            inconsistent = !reviewPillar(p);
+        }
+        for (int seg = 0; seg < segCount && !inconsistent; seg++) {
+            inconsistent = !reviewSegment(seg);
+        }
+        inconsistent = inconsistent || !settle(0);
+    }
+
+    /**
+     * Copy the state of another configuration. The board and the tables
+     * built from it are shared, everything the search changes is cloned,
+     * and the trail starts out empty.
+     * @param other - (SegmentGraphConfig) the configuration to copy
+     */
+    private SegmentGraphConfig(SegmentGraphConfig other) {
+        this.board = other.board;
+        this.segments = other.segments;
+        this.rDIM = other.rDIM;
+        this.cDIM = other.cDIM;
+        this.rowSeg = other.rowSeg;
+        this.colSeg = other.colSeg;
+        this.pillarCells = other.pillarCells;
+        this.state = other.state.clone();
+        this.dark = other.dark;
+        this.segLaser = other.segLaser.clone();
+        this.segOpen = other.segOpen.clone();
+        this.segDark = other.segDark.clone();
+        this.pillarLasers = other.pillarLasers.clone();
+        this.pillarOpen = other.pillarOpen.clone();
+        this.wrongPillars = other.wrongPillars;
+        this.inconsistent = other.inconsistent;
+        this.selected = other.selected;
+        this.matchedTo = new int[other.matchedTo.length];
+        this.tried = new int[other.tried.length];
+        this.forced = new int[other.forced.length];
+        this.rule = other.rule == null ? null : other.rule.copy();
+        this.trail = new int[64];
+        this.trailSize = 0;
+    }
+
+    /**
+     * Add a rule that every branch is checked against, or take it away.
+     * The rule is brought up to the current state right away.
+     * @param rule - (PruningRule) the rule, null for none
+     */
+    public void setPruningRule(PruningRule rule) {
+        this.rule = rule;
+        if (rule == null) {
+            return;
+        }
+        rule.start(board);
+        for (int cell = 0; cell < state.length; cell++) {
+            if ((state[cell] & LASER_BIT) != 0) {
+                rule.laser(cell, true);
+            }
+        }
+        for (int cell = 0; cell < state.length; cell++) {
+            if ((state[cell] & LIT_BIT) != 0) {
+                rule.lit(cell, true);
+            }
+        }
+        for (int cell = 0; cell < state.length; cell++) {
+            if (rowSeg[cell] >= 0 && !isOpen(cell)) {
+                rule.closed(cell, true);
+            }
+        }
+    }
+
+    @Override
+    public int branchCount() {
+        if (inconsistent) {
+            return 0;
+        }
+        //The dark cell with the fewest open cells left in its segments,
+        //or the pillar that still needs lasers with the fewest open
+        //neighbors, like MostConstrainedOrder
+        int best = -1;
+        int fewest = Integer.MAX_VALUE;
+        for (int cell = 0; cell < state.length && fewest > 1; cell++) {
+            if (rowSeg[cell] < 0 || (state[cell] & LIT_BIT) != 0) {
+                continue;
+            }
+            int h = rowSeg[cell];
+            int v = colSeg[cell];
+            if (segOpen[h] + segOpen[v] < fewest) {
+                fewest = segOpen[h] + segOpen[v];
+                //The segment with the fewer open cells, but not an empty
+                //one; leaving it without a laser forces the other
+                best = segOpen[v] == 0 || (segOpen[h] > 0 && segOpen[h] <= segOpen[v]) ? h : v;
+            }
+        }
+        for (int p = 0; p < pillarCells.length && fewest > 1; p++) {
+            if (pillarOpen[p] == 0 || pillarOpen[p] >= fewest || pillarLasers[p] == board.getPillarValue(p)) {
+                continue;
+            }
+            fewest = pillarOpen[p];
+            //The shortest segment through one of its open neighbors
+            int shortest = Integer.MAX_VALUE;
+            for (int cell : pillarCells[p]) {
+                if (!isOpen(cell)) {
+                    continue;
+                }
+                if (segOpen[rowSeg[cell]] < shortest) {
+                    shortest = segOpen[rowSeg[cell]];
+                    best = rowSeg[cell];
+                }
+                if (segOpen[colSeg[cell]] < shortest) {
+                    shortest = segOpen[colSeg[cell]];
+                    best = colSeg[cell];
+                }
+            }
+        }
+        if (best < 0) {
+            selected = -1;
+            return 0;
+        }
+        fewest = segOpen[best] + (isForced(best) ? 0 : 1);
+        selected = best;
+        return fewest;
+    }
+
+    @Override
+    public boolean apply(int branch) {
+        int seg = selected;
+        int start = trailSize;
+        //Deeper nodes pick their own segment, undo brings this one back
+        push(selected, SELECTED);
+        int seen = 0;
+        for (int cell : segments.getCells(seg)) {
+            if (!isOpen(cell)) {
+                continue;
+            }
+            if (seen++ == branch) {
+                placeLaser(cell);
+                return settle(start);
+            }
+        }
+        //The last branch: no laser in this segment
+        for (int cell : segments.getCells(seg)) {
+            if (isOpen(cell)) {
+                block(cell);
+            }
+        }
+        return settle(start);
+    }
+
+    /**
+     * Review the pillars and segments touched by every change since a
+     * trail position, then check that the forced segments can all get
+     * their lasers. Forced moves go on the trail behind the entries
+     * being read, so they are reviewed too.
+     * @param start - (int) the first trail entry to review
+     * @return true if the configuration is still valid
+     */
+    private boolean settle(int start) {
+        for (int i = start; i < trailSize; i++) {
+            int kind = trail[i] & KIND_MASK;
+            int cell = trail[i] >>> KIND_BITS;
+            if (kind == LASER) {
+                for (int p : board.getNeighborPillars(cell)) {
+                    if (!reviewPillar(p)) {
+                        return false;
+                    }
+                }
+            } else if (kind == CLOSED) {
+                for (int p : board.getNeighborPillars(cell)) {
+                    if (!reviewPillar(p)) {
+                        return false;
+                    }
+                }
+                if (!reviewClosed(rowSeg[cell]) || !reviewClosed(colSeg[cell])) {
+                    return false;
+                }
+            }
+        }
+        if (rule != null && !rule.admits()) {
+            return false;
+        }
+        return canMatch(0, segments.getHorizontalCount())
+                && canMatch(segments.getHorizontalCount(), segLaser.length);
+    }
+
+    /**
+     * Review a pillar. A pillar fails if it has more lasers than its
+     * number, or if its open neighbors are not enough to reach it. A
+     * pillar that needs all of its open neighbors gets lasers in them,
+     * and a pillar that has its number blocks them.
+     * @param p - (int) the index of the pillar
+     * @return true if the pillar has not failed
+     */
+    private boolean reviewPillar(int p) {
+        int num = board.getPillarValue(p);
+        if (pillarLasers[p] > num || pillarLasers[p] + pillarOpen[p] < num) {
+            return false;
+        }
+        if (pillarOpen[p] > 0 && (pillarLasers[p] == num || pillarLasers[p] + pillarOpen[p] == num)) {
+            boolean laser = pillarLasers[p] < num;
+            //The neighbors of a pillar never share a segment, so a
+            //laser next to it does not close the others
+            for (int cell : pillarCells[p]) {
+                if (isOpen(cell)) {
+                    if (laser) {
+                        placeLaser(cell);
+                    } else {
+                        block(cell);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Review a segment one of whose cells was just closed. Once it has
+     * neither an open cell nor a laser, its dark cells hang on their
+     * other segments, so those are reviewed too.
+     * @param seg - (int) the segment id
+     * @return true if none of the segments has failed
+     */
+    private boolean reviewClosed(int seg) {
+        if (!reviewSegment(seg)) {
+            return false;
+        }
+        if (segOpen[seg] > 0 || segLaser[seg] >= 0) {
+            return true;
+        }
+        for (int other : segments.getCells(seg)) {
+            if ((state[other] & LIT_BIT) == 0 && !reviewSegment(segments.otherSegment(other, seg))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Review a segment. A forced segment fails without an open cell,
+     * and gets its laser if it has only one.
+     * @param seg - (int) the segment id
+     * @return true if the segment has not failed
+     */
+    private boolean reviewSegment(int seg) {
+        if (segLaser[seg] >= 0 || segOpen[seg] > 1 || !isForced(seg)) {
+            return true;
+        }
+        if (segOpen[seg] == 0) {
+            return false;
+        }
+        for (int cell : segments.getCells(seg)) {
+            if (isOpen(cell)) {
+                placeLaser(cell);
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Does a segment have to get a laser? It does when one of its dark
+     * cells can not be lit through its other segment anymore.
+     * @param seg - (int) a segment without a laser
+     * @return true if the segment is forced
+     */
+    private boolean isForced(int seg) {
+        if (segDark[seg] == 0) {
+            return false;
+        }
+        for (int cell : segments.getCells(seg)) {
+            if ((state[cell] & LIT_BIT) == 0 && segOpen[segments.otherSegment(cell, seg)] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check that the forced segments of one side can all get a laser at
+     * the same time: every one of them is matched to its own segment of
+     * the other side through an open cell, by augmenting paths.
+     * @param from - (int) the first segment of the side
+     * @param to - (int) the segment after the last one of the side
+     * @return true if there is a matching that covers them all
+     */
+    private boolean canMatch(int from, int to) {
+        int count = 0;
+        for (int seg = from; seg < to; seg++) {
+            if (segLaser[seg] < 0 && segOpen[seg] > 0 && isForced(seg)) {
+                forced[count++] = seg;
+            }
+        }
+        if (count < 2) {
+            //A single forced segment has an open cell, or it has failed
+            return true;
+        }
+        for (int i = 0; i < count; i++) {
+            for (int cell : segments.getCells(forced[i])) {
+                if (isOpen(cell)) {
+                    matchedTo[segments.otherSegment(cell, forced[i])] = -1;
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (++round == 0) {
+                Arrays.fill(tried, 0);
+                round = 1;
+            }
+            if (!augment(forced[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Look for an augmenting path from a forced segment, and flip the
+     * matching along it
+     * @param seg - (int) the segment to match
+     * @return true if the segment got matched
+     */
+    private boolean augment(int seg) {
+        for (int cell : segments.getCells(seg)) {
+            if (!isOpen(cell)) {
+                continue;
+            }
+            int other = segments.otherSegment(cell, seg);
+            if (tried[other] == round) {
+                continue;
+            }
+            tried[other] = round;
+            if (matchedTo[other] < 0 || augment(matchedTo[other])) {
+                matchedTo[other] = seg;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int mark() {
+        return trailSize;
+    }
+
+    @Override
+    public void undo(int mark) {
+        while (trailSize > mark) {
+            int entry = trail[--trailSize];
+            int value = entry >>> KIND_BITS;
+            switch (entry & KIND_MASK) {
+                case LIT:
+                    state[value] &= ~LIT_BIT;
+                    dark++;
+                    segDark[rowSeg[value]]++;
+                    segDark[colSeg[value]]++;
+                    if (rule != null) {
+                        rule.lit(value, false);
+                    }
+                    break;
+                case LASER:
+                    state[value] &= ~LASER_BIT;
+                    segLaser[rowSeg[value]] = -1;
+                    segLaser[colSeg[value]] = -1;
+                    for (int p : board.getNeighborPillars(value)) {
+                        int num = board.getPillarValue(p);
+                        if (pillarLasers[p] == num) {
+                            wrongPillars++;
+                        }
+                        if (--pillarLasers[p] == num) {
+                            wrongPillars--;
+                        }
+                    }
+                    if (rule != null) {
+                        rule.laser(value, false);
+                    }
+                    break;
+                case BLOCKED:
+                    state[value] &= ~BLOCKED_BIT;
+                    break;
+                case CLOSED:
+                    if (rule != null) {
+                        rule.closed(value, false);
+                    }
+                    segOpen[rowSeg[value]]++;
+                    segOpen[colSeg[value]]++;
+                    for (int p : board.getNeighborPillars(value)) {
+                        pillarOpen[p]++;
+                    }
+                    break;
+                case SELECTED:
+                    selected = value;
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public boolean isGoal() {
+        return dark == 0 && !inconsistent && wrongPillars == 0;
+    }
+
+    @Override
+    public Configuration snapshot() {
+        SafeConfig config = new SafeConfig(board);
+        for (int cell = 0; cell < state.length; cell++) {
+            if ((state[cell] & LASER_BIT) != 0) {
+                config.placeLaser(cell / cDIM, cell % cDIM);
+            }
+        }
+        config.markDecided();
+        return config;
+    }
+
+    @Override
+    public SegmentGraphConfig copy() {
+        return new SegmentGraphConfig(this);
+    }
+
+    /**
+     * Put a laser in an open cell and light up the cells of its two
+     * segments
+     * @param laser - (int) row major index of the cell
+     */
+    private void placeLaser(int laser) {
+        state[laser] |= LASER_BIT;
+        segLaser[rowSeg[laser]] = laser;
+        segLaser[colSeg[laser]] = laser;
+        for (int p : board.getNeighborPillars(laser)) {
+            int num = board.getPillarValue(p);
+            if (pillarLasers[p] == num) {
+                wrongPillars++;
+            }
+            if (++pillarLasers[p] == num) {
+                wrongPillars--;
+            }
+        }
+        push(laser, LASER);
+        if (rule != null) {
+            rule.laser(laser, true);
+        }
+        for (int cell : segments.getCells(rowSeg[laser])) {
+            light(cell);
+        }
+        for (int cell : segments.getCells(colSeg[laser])) {
+            light(cell);
+        }
+    }
+
+    /**
+     * Decide that an open cell stays without a laser
+     * @param cell - (int) row major index of the cell
+     */
+    private void block(int cell) {
+        state[cell] |= BLOCKED_BIT;
+        push(cell, BLOCKED);
+        close(cell);
+    }
+
+    /**
+     * Light a cell if it is not lit yet
+     * @param cell - (int) row major index of the cell
+     */
+    private void light(int cell) {
+        if ((state[cell] & LIT_BIT) != 0) {
+            return;
+        }
+        boolean open = state[cell] == 0 || state[cell] == LASER_BIT;
+        state[cell] |= LIT_BIT;
+        dark--;
+        segDark[rowSeg[cell]]--;
+        segDark[colSeg[cell]]--;
+        push(cell, LIT);
+        if (rule != null) {
+            rule.lit(cell, true);
+        }
+        if (open) {
+            close(cell);
+        }
+    }
+
+    /**
+     * Record that a cell stopped being open. Its segments and the
+     * pillars next to it have one place less a laser could go.
+     * @param cell - (int) row major index of the cell
+     */
+    private void close(int cell) {
+        push(cell, CLOSED);
+        if (rule != null) {
+            rule.closed(cell, true);
+        }
+        segOpen[rowSeg[cell]]--;
+        segOpen[colSeg[cell]]--;
+        for (int p : board.getNeighborPillars(cell)) {
+            pillarOpen[p]--;
+        }
+    }
+
+    /**
+     * Can the cell still take a laser?
+     * @param cell - (int) row major index of a free cell
+     * @return true if it is neither lit nor blocked
+     */
+    private boolean isOpen(int cell) {
+        return state[cell] == 0;
+    }
+
+    /**
+     * Push an entry on the undo trail
+     * @param value - (int) the changed value
+     * @param kind - (int) the kind of change
+     */
+    private void push(int value, int kind) {
+        if (trailSize == trail.length) {
+            int[] bigger = new int[trail.length * 2];
+            System.arraycopy(trail, 0, bigger, 0, trailSize);
+            trail = bigger;
+        }
+        trail[trailSize++] = (value << KIND_BITS) | kind;
+    }
+
+    /**
+     * Return the layout of the safe
+     * @return SafeBoard - the layout of the safe
+     */
+    public SafeBoard getBoard() {
+        return board;
+    }
+
+    /**
+     * Testing purpose toString
+     * @return the grid with its lasers and beams
+     */
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
@@ -0,0 +1,193 @@
+package backtracking;
+
+/**
+ * The runs of free cells of a safe. A run, or segment, is a maximal
+ * line of free cells between two pillars or the edges of the safe,
+ * either along a row (horizontal) or along a column (vertical). A laser
+ * lights exactly the cells of its two segments, and two lasers see each
+ * other exactly when they share a segment, so beam casting and the
+ * line of sight test become lookups once every cell knows its segments.
+ *
+ * The index is built once per puzzle. Horizontal segments are numbered
+ * first, from 0 to getHorizontalCount() - 1, and the vertical ones
+ * follow, so a single array indexed by segment id can hold a counter
+ * for every segment. Cells are given as row major indices.
+ */
+public class SegmentIndex {
+
+    private int rDIM;
+    private int cDIM;
+    //Segments of every cell, -1 for pillars and walls
+    private int[] rowSegment;
+    private int[] colSegment;
+    private int horizontalCount;
+    //The cells of every segment, in order
+    private int[][] cells;
+
+    /**
+     * Build the index of a safe. Every cell that is not '.', 'L' or
+     * '*' blocks the beams.
+     * @param layout - (char[][]) the grid of the safe
+     */
+    public SegmentIndex(char[][] layout) {
+        this.rDIM = layout.length;
+        this.cDIM = rDIM == 0 ? 0 : layout[0].length;
+        this.rowSegment = new int[rDIM * cDIM];
+        this.colSegment = new int[rDIM * cDIM];
+
+        //Horizontal segments, row by row
+        int count = 0;
+        for (int row = 0; row < rDIM; row++) {
+            boolean inSegment = false;
+            for (int col = 0; col < cDIM; col++) {
+                if (isFree(layout[row][col])) {
+                    if (!inSegment) {
+                        count++;
+                        inSegment = true;
+                    }
+                    rowSegment[row * cDIM + col] = count - 1;
+                } else {
+                    rowSegment[row * cDIM + col] = -1;
+                    inSegment = false;
+                }
+            }
+        }
+        this.horizontalCount = count;
+
+        //Vertical segments, column by column
+        for (int col = 0; col < cDIM; col++) {
+            boolean inSegment = false;
+            for (int row = 0; row < rDIM; row++) {
+                if (isFree(layout[row][col])) {
+                    if (!inSegment) {
+                        count++;
+                        inSegment = true;
+                    }
+                    colSegment[row * cDIM + col] = count - 1;
+                } else {
+                    colSegment[row * cDIM + col] = -1;
+                    inSegment = false;
+                }
+            }
+        }
+
+        //Cells of every segment
+        int[] sizes = new int[count];
+        for (int cell = 0; cell < rDIM * cDIM; cell++) {
+            if (rowSegment[cell] >= 0) {
+                sizes[rowSegment[cell]]++;
+                sizes[colSegment[cell]]++;
+            }
+        }
+        this.cells = new int[count][];
+        for (int seg = 0; seg < count; seg++) {
+            cells[seg] = new int[sizes[seg]];
+            sizes[seg] = 0;
+        }
+        for (int cell = 0; cell < rDIM * cDIM; cell++) {
+            if (rowSegment[cell] >= 0) {
+                int h = rowSegment[cell];
+                int v = colSegment[cell];
+                cells[h][sizes[h]++] = cell;
+                cells[v][sizes[v]++] = cell;
+            }
+        }
+    }
+
+    /**
+     * Can a beam go through this character?
+     * @param ch - (char) a character of the grid
+     * @return true for an empty cell, a laser or a beam
+     */
+    private static boolean isFree(char ch) {
+        return ch == '.' || ch == 'L' || ch == '*';
+    }
+
+    /**
+     * Return the horizontal segment of a cell
+     * @param row - (int) the row of the cell
+     * @param col - (int) the col of the cell
+     * @return int - the segment id, or -1 for a pillar or a wall
+     */
+    public int getRowSegment(int row, int col) {
+        return rowSegment[row * cDIM + col];
+    }
+
+    /**
+     * Return the vertical segment of a cell
+     * @param row - (int) the row of the cell
+     * @param col - (int) the col of the cell
+     * @return int - the segment id, or -1 for a pillar or a wall
+     */
+    public int getColSegment(int row, int col) {
+        return colSegment[row * cDIM + col];
+    }
+
+    /**
+     * Return the total number of segments
+     * @return int - horizontal and vertical segments
+     */
+    public int getSegmentCount() {
+        return cells.length;
+    }
+
+    /**
+     * Return the number of horizontal segments, which is also the id
+     * of the first vertical one
+     * @return int - number of horizontal segments
+     */
+    public int getHorizontalCount() {
+        return horizontalCount;
+    }
+
+    /**
+     * Is the segment a horizontal one?
+     * @param seg - (int) the segment id
+     * @return true if it runs along a row
+     */
+    public boolean isHorizontal(int seg) {
+        return seg < horizontalCount;
+    }
+
+    /**
+     * Return the cells of a segment as row major indices, in order.
+     * The array is shared, callers must not change it.
+     * @param seg - (int) the segment id
+     * @return int[] - the cells of the segment
+     */
+    public int[] getCells(int seg) {
+        return cells[seg];
+    }
+
+    /**
+     * Return the first column of a horizontal segment, or the first
+     * row of a vertical one
+     * @param seg - (int) the segment id
+     * @return int - where the segment starts
+     */
+    public int getStart(int seg) {
+        int first = cells[seg][0];
+        return isHorizontal(seg) ? first % cDIM : first / cDIM;
+    }
+
+    /**
+     * Return the last column of a horizontal segment, or the last
+     * row of a vertical one
+     * @param seg - (int) the segment id
+     * @return int - where the segment ends
+     */
+    public int getEnd(int seg) {
+        int last = cells[seg][cells[seg].length - 1];
+        return isHorizontal(seg) ? last % cDIM : last / cDIM;
+    }
+
+    /**
+     * Return the other segment of a cell
+     * @param cell - (int) row major index of the cell
+     * @param seg - (int) one of the segments of the cell
+     * @return int - the segment of the cell that is not seg
+     */
+    public int otherSegment(int cell, int seg) {
+        return rowSegment[cell] == seg ? colSegment[cell] : rowSegment[cell];
+    }
+}
@@ -0,0 +1,77 @@
+package backtracking;
+
+import java.util.Optional;
+
+/**
+ * What a solve call ended with. Besides the solution or the lack of
+ * one, a search that was stopped early says so, since running out of
+ * time does not mean the safe has no solution.
+ */
+public class SolveResult {
+
+    /**
+     * How a solve call ended
+     */
+    public enum Status {
+        //A solution was found
+        SOLVED,
+        //The whole search space was covered without a solution
+        NO_SOLUTION,
+        //The deadline passed first
+        TIMED_OUT,
+        //The cancellation token was cancelled first
+        CANCELLED
+    }
+
+    private Status status;
+    private Configuration solution;
+
+    /**
+     * Create a result
+     * @param status - (Status) how the solve ended
+     * @param solution - (Configuration) the solution, null unless SOLVED
+     */
+    public SolveResult(Status status, Configuration solution) {
+        this.status = status;
+        this.solution = solution;
+    }
+
+    /**
+     * Turn the answer of a search that ran to the end into a result
+     * @param solution - (Optional) the solution, or empty if there is none
+     * @return SolveResult - SOLVED or NO_SOLUTION
+     */
+    public static SolveResult of(Optional<Configuration> solution) {
+        return solution.map(config -> new SolveResult(Status.SOLVED, config))
+                .orElseGet(() -> new SolveResult(Status.NO_SOLUTION, null));
+    }
+
+    /**
+     * Return how the solve ended
+     * @return Status - the status
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Return the solution
+     * @return Optional - the solution, or empty unless SOLVED
+     */
+    public Optional<Configuration> getSolution() {
+        return Optional.ofNullable(solution);
+    }
+
+    /**
+     * Was a solution found?
+     * @return true if SOLVED
+     */
+    public boolean isSolved() {
+        return status == Status.SOLVED;
+    }
+
+    @Override
+    public String toString() {
+        return status + (solution == null ? "" : ":\n" + solution);
+    }
+}
@@ -0,0 +1,52 @@
+package backtracking;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * A way of solving a safe. Engines are looked up by name in
+ * SolverEngines, so SafeSolver and LasersModel can switch between them
+ * without code changes. Every engine takes a deadline and a
+ * cancellation token, hands back SafeConfig solutions, and reports the
+ * cost of its last solve as SolverStatistics.
+ *
+ * An engine keeps the statistics of its last solve, so it should not
+ * run two solves at the same time; SolverEngines hands out a new
+ * engine on every lookup.
+ */
+public interface SolverEngine {
+    /**
+     * Return the name the engine is registered under
+     *
+     * @return the name of the engine
+     */
+    public String getName();
+
+    /**
+     * Try find a solution of a safe, giving up at a deadline or when a
+     * token is cancelled.
+     *
+     * @param board The layout of the safe
+     * @param deadline When to give up, null for never
+     * @param token The token to watch, null for none
+     * @return The solution, NO_SOLUTION, or why the engine stopped early
+     */
+    public SolveResult solve(SafeBoard board, Instant deadline, CancellationToken token);
+
+    /**
+     * Return what the last solve cost
+     *
+     * @return the statistics of the last solve, null before the first
+     */
+    public SolverStatistics getStatistics();
+
+    /**
+     * Try find a solution of a safe, without a limit.
+     *
+     * @param board The layout of the safe
+     * @return A solution, or empty if there is none
+     */
+    public default Optional<Configuration> solve(SafeBoard board) {
+        return solve(board, null, null).getSolution();
+    }
+}
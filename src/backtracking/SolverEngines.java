@@ -0,0 +1,99 @@
+package backtracking;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The registry of SolverEngines by name. The engines of this package
+ * are registered up front:
+ *
+ * - "copy": the classic Backtracker over SafeConfig successors
+ * - "trail", "iterative" and "memo": a SafeTrailConfig searched in
+ *   place in row major order, recursing, not recursing, and not
+ *   recursing with a FailedStateMemo
+ * - "bounded": the row major search cut by a CapacityBound, a
+ *   PruningRule that any in place search can take
+ * - "propagation", "pruning" and "symmetry": the most constrained
+ *   cell first with forced moves, then dead cell pruning, then
+ *   symmetry breaking on top
+ * - "cover": the pruning search branching over the cells that could
+ *   light the darkest cell instead of laser or empty
+ * - "segments": the SegmentGraphConfig, a laser or none for every
+ *   segment, cut by matchings of the segments that need a laser
+ * - "restarts": the pruning search restarted on a Luby schedule with
+ *   its ties broken another way every run, sharing a FailedStateMemo
+ * - "backjumping": the pruning search with conflict directed
+ *   backjumping
+ * - "parallel": the pruning search on a ParallelBacktracker
+ * - "sat": the SafeSatEncoding on the SatSolver
+ * - "profile": the ProfileSolver sweep, for safes with a short side;
+ *   a safe too wide for it is solved by "pruning" instead
+ * - "local": the LocalSearch, min-conflicts flips handing off to an
+ *   exact search, for safes too big to search completely
+ * - "auto": the SafeRegions of the safe, each with "profile" if it is
+ *   a thin strip (see ProfileSolver.suits) and "pruning" otherwise
+ * - "portfolio": the PortfolioEngine, the pruning search with several
+ *   branch orders racing each other
+ *
+ * Other engines can be added with register().
+ */
+public final class SolverEngines {
+
+    //The engine a caller gets when it does not pick one
+    public static final String DEFAULT_ENGINE = "auto";
+
+    private static final Map<String, Supplier<SolverEngine>> ENGINES = new LinkedHashMap<>();
+
+    static {
+        for (String name : BuiltinEngine.NAMES) {
+            register(name, () -> new BuiltinEngine(name));
+        }
+        register(PortfolioEngine.NAME, PortfolioEngine::new);
+    }
+
+    private SolverEngines() {
+    }
+
+    /**
+     * Add an engine, or replace the one with the same name
+     * @param name - (String) the name to look it up by
+     * @param factory - (Supplier) creates a new engine for every lookup
+     */
+    public static synchronized void register(String name, Supplier<SolverEngine> factory) {
+        ENGINES.put(name, factory);
+    }
+
+    /**
+     * Create a new engine by name
+     * @param name - (String) the name of the engine
+     * @return SolverEngine - a fresh engine
+     * @throws IllegalArgumentException if no engine has that name
+     */
+    public static synchronized SolverEngine create(String name) {
+        Supplier<SolverEngine> factory = ENGINES.get(name);
+        if (factory == null) {
+            throw new IllegalArgumentException("unknown engine " + name + ", expected one of " + getNames());
+        }
+        return factory.get();
+    }
+
+    /**
+     * Is there an engine with that name?
+     * @param name - (String) the name of the engine
+     * @return true if it is registered
+     */
+    public static synchronized boolean contains(String name) {
+        return ENGINES.containsKey(name);
+    }
+
+    /**
+     * Return the names of the engines, in the order they were registered
+     * @return List - the names
+     */
+    public static synchronized List<String> getNames() {
+        return new ArrayList<>(ENGINES.keySet());
+    }
+}
@@ -0,0 +1,395 @@
+package backtracking;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A solver that stays with one safe while it is being played, so a
+ * solve can build on the solves before it instead of starting over.
+ * The session is told about every laser the user places or takes away,
+ * and looks for a solution that keeps the user's lasers:
+ *
+ * - if the last solution still has every laser of the user, it is
+ *   handed out again without any search, which covers every removed
+ *   laser and every laser put where the solution has one
+ * - otherwise the last solution is repaired: every cell keeps its value
+ *   except around the changed cells, that is their two segments, the
+ *   segments of the solution lasers that lose their place to them, and
+ *   the cells around the pillars next to those, which are searched by
+ *   a SafeTrailConfig with a node budget
+ * - if the repair fails, the whole safe is searched with the user's
+ *   lasers fixed
+ * - if no solution keeps the user's lasers, the safe is solved without
+ *   them by a SolverEngine, once for the whole session
+ *
+ * The searches share a FailedStateMemo, so what one search learnt
+ * about a state with no solution below it saves the next one the work.
+ * The statistics of a solve say which of the four answered it, as in
+ * "session:repair".
+ */
+public class SolverSession {
+
+    //Nodes the repair search gets before the session searches the whole safe
+    private static final long REPAIR_NODES = 50_000;
+
+    private SafeBoard board;
+    private SegmentIndex segments;
+    private int rDIM;
+    private int cDIM;
+    //The lasers of the user, and the cells the user changed since the
+    //last solution, row major
+    private boolean[] userLasers;
+    private boolean[] edited;
+    //States with no solution below them, learnt by every search
+    private FailedStateMemo memo;
+    //Lasers of the last solution, row major, null before the first
+    private boolean[] solution;
+    //Are the user's lasers known to be in no solution? Adding lasers
+    //does not change that, only taking one away does.
+    private boolean lasersFail;
+    //How the safe solves without the user's lasers, null until it was
+    //needed, and the engine that finds it
+    private SolveResult unconstrained;
+    private String engine = SolverEngines.DEFAULT_ENGINE;
+    private SolverStatistics statistics;
+
+    /**
+     * Start a session on a safe without any lasers
+     * @param board - (SafeBoard) the layout of the safe
+     */
+    public SolverSession(SafeBoard board) {
+        this.board = board;
+        this.segments = board.getSegments();
+        this.rDIM = board.getRDIM();
+        this.cDIM = board.getCDIM();
+        this.userLasers = new boolean[rDIM * cDIM];
+        this.edited = new boolean[rDIM * cDIM];
+        this.memo = new FailedStateMemo();
+    }
+
+    /**
+     * Pick the engine that solves the safe when no solution keeps the
+     * user's lasers
+     * @param engine - (String) the name of a SolverEngine, see SolverEngines
+     * @throws IllegalArgumentException if no engine has that name
+     */
+    public void setEngine(String engine) {
+        if (!SolverEngines.contains(engine)) {
+            throw new IllegalArgumentException("unknown engine " + engine
+                    + ", expected one of " + SolverEngines.getNames());
+        }
+        this.engine = engine;
+    }
+
+    /**
+     * Record that the user put a laser in a cell
+     * @param row - (int) the row of the laser
+     * @param col - (int) the col of the laser
+     */
+    public void laserAdded(int row, int col) {
+        userLasers[row * cDIM + col] = true;
+        edited[row * cDIM + col] = true;
+    }
+
+    /**
+     * Record that the user took the laser out of a cell
+     * @param row - (int) the row of the laser
+     * @param col - (int) the col of the laser
+     */
+    public void laserRemoved(int row, int col) {
+        userLasers[row * cDIM + col] = false;
+        edited[row * cDIM + col] = true;
+        lasersFail = false;
+    }
+
+    /**
+     * Record that the user took every laser away
+     */
+    public void lasersCleared() {
+        for (int cell = 0; cell < userLasers.length; cell++) {
+            if (userLasers[cell]) {
+                laserRemoved(cell / cDIM, cell % cDIM);
+            }
+        }
+    }
+
+    /**
+     * Find a solution that keeps the user's lasers, or any solution if
+     * none does, giving up at a deadline or when a token is cancelled
+     * @param deadline - (Instant) when to give up, null for never
+     * @param token - (CancellationToken) the token to watch, may be null
+     * @return SolveResult - the solution, NO_SOLUTION if the safe has
+     * none, or why the solve stopped early
+     */
+    public SolveResult solve(Instant deadline, CancellationToken token) {
+        long start = System.nanoTime();
+        SearchLimit limit = new SearchLimit(deadline, token, SearchLimit.DEFAULT_INTERVAL);
+        long nodes = 0;
+        String how;
+        SolveResult result;
+        try {
+            limit.check();
+            how = "kept";
+            Optional<Configuration> found = Optional.empty();
+            if (keepsUserLasers()) {
+                found = Optional.of(toConfig(solution));
+            } else if (!lasersFail && (unconstrained == null || unconstrained.isSolved())) {
+                how = "repair";
+                found = repair(limit);
+                if (found == null) {
+                    how = "search";
+                    found = search(limit);
+                }
+                lasersFail = !found.isPresent();
+            }
+            if (found.isPresent()) {
+                result = new SolveResult(SolveResult.Status.SOLVED, found.get());
+            } else {
+                if (unconstrained == null) {
+                    how = engine;
+                    SolverEngine solver = SolverEngines.create(engine);
+                    SolveResult any = solver.solve(board, deadline, token);
+                    nodes += solver.getStatistics().getNodes();
+                    if (any.getStatus() != SolveResult.Status.SOLVED
+                            && any.getStatus() != SolveResult.Status.NO_SOLUTION) {
+                        //Stopped early, the next solve tries again
+                        throw new SearchAbortedException(any.getStatus());
+                    }
+                    unconstrained = any;
+                }
+                result = unconstrained;
+            }
+        } catch (SearchAbortedException e) {
+            how = "stopped";
+            result = new SolveResult(e.getStatus(), null);
+        }
+        if (result.isSolved()) {
+            solution = lasersOf((SafeConfig) result.getSolution().get());
+            Arrays.fill(edited, false);
+        }
+        statistics = new SolverStatistics("session:" + how, result.getStatus(),
+                Duration.ofNanos(System.nanoTime() - start), nodes + limit.getVisited());
+        return result;
+    }
+
+    /**
+     * Repair the last solution around the cells changed since. The user's
+     * lasers are fixed first, then every cell away from the changes keeps
+     * its value, and the rest is searched with a node budget.
+     * @param limit - (SearchLimit) the deadline and token of the solve
+     * @return Optional - the solution, empty if no solution keeps the
+     * user's lasers, or null if the repair could not settle it
+     */
+    private Optional<Configuration> repair(SearchLimit limit) {
+        if (solution == null) {
+            return null;
+        }
+        int cells = rDIM * cDIM;
+        boolean[] open = new boolean[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            //A user laser the solution does not have is a change too,
+            //even if it was made before the last solve
+            if (!edited[cell] && !(userLasers[cell] && !solution[cell])) {
+                continue;
+            }
+            openAround(open, cell);
+            //The solution lasers that share a segment with the change
+            //lose their place, and so do the pillars next to them
+            for (int seg : new int[]{segments.getRowSegment(cell / cDIM, cell % cDIM),
+                    segments.getColSegment(cell / cDIM, cell % cDIM)}) {
+                for (int c : segments.getCells(seg)) {
+                    if (solution[c] && c != cell) {
+                        openAround(open, c);
+                        openAroundPillars(open, c);
+                    }
+                }
+            }
+            openAroundPillars(open, cell);
+        }
+
+        SafeTrailConfig config = start();
+        if (config == null) {
+            return Optional.empty();
+        }
+        boolean everyCell = true;
+        for (int cell = 0; cell < cells; cell++) {
+            if (board.isBlocked(cell / cDIM, cell % cDIM) || open[cell]) {
+                continue;
+            }
+            everyCell = false;
+            if (!config.fix(cell / cDIM, cell % cDIM, solution[cell])) {
+                return null;
+            }
+        }
+        TrailSearch search = new TrailSearch(config);
+        search.setLimit(limit);
+        if (!everyCell) {
+            search.setNodeBudget(REPAIR_NODES);
+        }
+        if (search.next()) {
+            return Optional.of(config.snapshot());
+        }
+        //Only a search over every cell proves there is no solution
+        return everyCell && !search.isOverBudget() ? Optional.empty() : null;
+    }
+
+    /**
+     * Search the whole safe with the user's lasers fixed
+     * @param limit - (SearchLimit) the deadline and token of the solve
+     * @return Optional - the solution, empty if no solution keeps the
+     * user's lasers
+     */
+    private Optional<Configuration> search(SearchLimit limit) {
+        SafeTrailConfig config = start();
+        if (config == null) {
+            return Optional.empty();
+        }
+        TrailSearch search = new TrailSearch(config);
+        search.setLimit(limit);
+        return search.next() ? Optional.of(config.snapshot()) : Optional.empty();
+    }
+
+    /**
+     * Set up a pruning search with the session's memo and the user's
+     * lasers in place
+     * @return SafeTrailConfig - the configuration, or null if the user's
+     * lasers contradict each other or the pillars
+     */
+    private SafeTrailConfig start() {
+        SafeTrailConfig config = new SafeTrailConfig(board);
+        config.setDeadCellPruning(true);
+        config.setPropagation(true);
+        config.setFailedStateMemo(memo);
+        for (int cell = 0; cell < userLasers.length; cell++) {
+            if (userLasers[cell] && !config.fix(cell / cDIM, cell % cDIM, true)) {
+                return null;
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Does the last solution keep every laser the user has placed?
+     * @return true if it does; false if the user's lasers are in no
+     * solution, or there is no solution yet
+     */
+    public boolean keepsUserLasers() {
+        if (solution == null) {
+            return false;
+        }
+        for (int cell = 0; cell < userLasers.length; cell++) {
+            if (userLasers[cell] && !solution[cell]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Mark the cells of the two segments through a cell
+     * @param open - (boolean[]) the cells the repair searches
+     * @param cell - (int) row major index of the cell
+     */
+    private void openAround(boolean[] open, int cell) {
+        int row = cell / cDIM;
+        int col = cell % cDIM;
+        for (int c : segments.getCells(segments.getRowSegment(row, col))) {
+            open[c] = true;
+        }
+        for (int c : segments.getCells(segments.getColSegment(row, col))) {
+            open[c] = true;
+        }
+    }
+
+    /**
+     * Mark the segments through the free neighbors of the pillars next
+     * to a cell, where the lasers those pillars count may have to move
+     * @param open - (boolean[]) the cells the repair searches
+     * @param cell - (int) row major index of the cell
+     */
+    private void openAroundPillars(boolean[] open, int cell) {
+        for (int p : board.getNeighborPillars(cell)) {
+            int row = board.getPillarRow(p);
+            int col = board.getPillarCol(p);
+            for (int d = 0; d < 4; d++) {
+                int r = row + SafeBoard.DR[d];
+                int c = col + SafeBoard.DC[d];
+                if (r >= 0 && r < rDIM && c >= 0 && c < cDIM && !board.isBlocked(r, c)) {
+                    openAround(open, r * cDIM + c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the lasers of a configuration
+     * @param config - (SafeConfig) a solution
+     * @return boolean[] - the lasers, row major
+     */
+    private boolean[] lasersOf(SafeConfig config) {
+        boolean[] lasers = new boolean[rDIM * cDIM];
+        for (int cell = 0; cell < lasers.length; cell++) {
+            lasers[cell] = config.getCurrentValue(cell / cDIM, cell % cDIM) == 'L';
+        }
+        return lasers;
+    }
+
+    /**
+     * Turn a placement into a configuration
+     * @param lasers - (boolean[]) the lasers, row major
+     * @param count - (int) how many of them to place, in row major order
+     * @return SafeConfig - the configuration
+     */
+    private SafeConfig toConfig(boolean[] lasers, int count) {
+        SafeConfig config = new SafeConfig(board);
+        for (int cell = 0; cell < lasers.length && count > 0; cell++) {
+            if (lasers[cell]) {
+                config.placeLaser(cell / cDIM, cell % cDIM);
+                count--;
+            }
+        }
+        config.markDecided();
+        return config;
+    }
+
+    /**
+     * Turn a placement into a configuration
+     * @param lasers - (boolean[]) the lasers, row major
+     * @return SafeConfig - the configuration
+     */
+    private SafeConfig toConfig(boolean[] lasers) {
+        return toConfig(lasers, lasers.length);
+    }
+
+    /**
+     * Return the way to the last solution, one laser at a time in row
+     * major order, like Backtracker.solveWithPath
+     * @return List - a configuration for every laser of the solution,
+     * empty before the first solution
+     */
+    public List<Configuration> getPath() {
+        List<Configuration> path = new ArrayList<>();
+        if (solution == null) {
+            return path;
+        }
+        int count = 0;
+        for (boolean laser : solution) {
+            if (laser) {
+                path.add(toConfig(solution, ++count));
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Return what the last solve cost and how it was answered
+     * @return SolverStatistics - the statistics, null before the first solve
+     */
+    public SolverStatistics getStatistics() {
+        return statistics;
+    }
+}
@@ -0,0 +1,103 @@
+package backtracking;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * What one solve of a SolverEngine cost, in the same shape for every
+ * engine so they can be compared head to head: how it ended, how long
+ * it took, and how much work it did. The work is counted in the unit
+ * of the engine: nodes of the search tree for the backtracking
+ * engines, decisions for the SAT engine, profiles for the profile
+ * engine and flips for the local search.
+ *
+ * An engine that races strategies, such as the PortfolioEngine, also
+ * reports how often each of its strategies has won so far.
+ */
+public class SolverStatistics {
+
+    private String engine;
+    private SolveResult.Status status;
+    private Duration elapsed;
+    private long nodes;
+    //Wins of every strategy of the engine so far, empty if it has none
+    private Map<String, Long> wins;
+
+    /**
+     * Record the cost of a solve
+     * @param engine - (String) the name of the engine
+     * @param status - (SolveResult.Status) how the solve ended
+     * @param elapsed - (Duration) how long it took
+     * @param nodes - (long) the work it did, -1 if the engine does not count it
+     */
+    public SolverStatistics(String engine, SolveResult.Status status, Duration elapsed, long nodes) {
+        this(engine, status, elapsed, nodes, Collections.emptyMap());
+    }
+
+    /**
+     * Record the cost of a solve of an engine that races strategies
+     * @param engine - (String) the name of the engine
+     * @param status - (SolveResult.Status) how the solve ended
+     * @param elapsed - (Duration) how long it took
+     * @param nodes - (long) the work it did, -1 if the engine does not count it
+     * @param wins - (Map) how often every strategy has won, this solve
+     *             included; it is copied
+     */
+    public SolverStatistics(String engine, SolveResult.Status status, Duration elapsed, long nodes,
+                            Map<String, Long> wins) {
+        this.engine = engine;
+        this.status = status;
+        this.elapsed = elapsed;
+        this.nodes = nodes;
+        this.wins = Collections.unmodifiableMap(new TreeMap<>(wins));
+    }
+
+    /**
+     * Return the name of the engine
+     * @return String - the engine
+     */
+    public String getEngine() {
+        return engine;
+    }
+
+    /**
+     * Return how the solve ended
+     * @return SolveResult.Status - the status
+     */
+    public SolveResult.Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Return how long the solve took
+     * @return Duration - the wall clock time
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Return the work the solve did
+     * @return long - nodes, decisions or profiles, -1 if not counted
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Return how often every strategy of the engine has won so far
+     * @return Map - wins by strategy name, sorted by name; empty for an
+     *               engine without strategies
+     */
+    public Map<String, Long> getWins() {
+        return wins;
+    }
+
+    @Override
+    public String toString() {
+        return engine + ": " + status + " in " + elapsed.toMillis() / 1000.0 + " seconds"
+                + (nodes < 0 ? "" : ", " + nodes + " nodes") + (wins.isEmpty() ? "" : ", wins " + wins);
+    }
+}
@@ -0,0 +1,263 @@
+package backtracking;
+
+import java.util.SplittableRandom;
+
+/**
+ * The two Zobrist hashes a SafeTrailConfig keeps for its failed state
+ * memo. They cover the part of the state that the rest of a row major
+ * scan depends on: the lit cells, the blocked cells at or after the
+ * scan position, the segments reaching that far that hold a laser, and
+ * the laser count of every pillar. States whose search failed are
+ * recorded under those hashes and the scan position, and meeting one
+ * again ends the branch, however the lasers above it were placed.
+ *
+ * With an order that does not scan in order, no cell is settled for
+ * good by the scan, so the hashes are taken as if the scan position
+ * stayed at the first cell: they cover every blocked cell and every
+ * segment that holds a laser, the whole decided state.
+ *
+ * The configuration reports every change as it goes on the trail and
+ * again as it comes off; every entry is XORed in, so the same call
+ * takes it back out.
+ */
+final class StateHash {
+
+    private final SafeTrailConfig config;
+    private final SegmentIndex segments;
+    //States known to fail
+    private final FailedStateMemo memo;
+    //Zobrist keys, two longs per entry, shared with the copies
+    private final long[] litKeys;
+    private final long[] blockKeys;
+    private final long[] segKeys;
+    private final long[] pillarKeys;
+    private final long[] posKeys;
+    //Do the hashes leave out what lies behind the scan position?
+    private boolean scanHash;
+    private long hashA;
+    private long hashB;
+
+    /**
+     * Create the hashes of the current state of a configuration
+     * @param config - (SafeTrailConfig) the configuration to hash
+     * @param memo - (FailedStateMemo) the table the failed states go in
+     * @param scanHash - (boolean) leave out what lies behind the scan
+     *                 position?
+     */
+    StateHash(SafeTrailConfig config, FailedStateMemo memo, boolean scanHash) {
+        SafeBoard board = config.getBoard();
+        int cells = board.getRDIM() * board.getCDIM();
+        this.config = config;
+        this.segments = board.getSegments();
+        this.memo = memo;
+        //The same seed for every configuration of a puzzle, so they
+        //can share a memo
+        SplittableRandom random = new SplittableRandom(0x5AFEL);
+        this.litKeys = randomKeys(random, cells);
+        this.blockKeys = randomKeys(random, cells);
+        this.segKeys = randomKeys(random, segments.getSegmentCount());
+        this.pillarKeys = randomKeys(random, board.getPillarCount() * 5);
+        this.posKeys = randomKeys(random, cells + 1);
+        setScanHash(scanHash);
+    }
+
+    /**
+     * Copy the hashes for a copy of the configuration
+     * @param other - (StateHash) the hashes to copy
+     * @param config - (SafeTrailConfig) the copy they belong to
+     */
+    private StateHash(StateHash other, SafeTrailConfig config) {
+        this.config = config;
+        this.segments = other.segments;
+        this.memo = other.memo;
+        this.litKeys = other.litKeys;
+        this.blockKeys = other.blockKeys;
+        this.segKeys = other.segKeys;
+        this.pillarKeys = other.pillarKeys;
+        this.posKeys = other.posKeys;
+        this.scanHash = other.scanHash;
+        this.hashA = other.hashA;
+        this.hashB = other.hashB;
+    }
+
+    /**
+     * Copy the hashes for a copy of the configuration. The keys and the
+     * memo are shared.
+     * @param config - (SafeTrailConfig) the copy
+     * @return StateHash - the copied hashes
+     */
+    StateHash copy(SafeTrailConfig config) {
+        return new StateHash(this, config);
+    }
+
+    /**
+     * Return the table the failed states go in
+     * @return FailedStateMemo - the memo
+     */
+    FailedStateMemo getMemo() {
+        return memo;
+    }
+
+    /**
+     * Choose whether the hashes leave out what lies behind the scan
+     * position, and compute them again from scratch
+     * @param scanHash - (boolean) does the search scan in order?
+     */
+    void setScanHash(boolean scanHash) {
+        this.scanHash = scanHash;
+        hashA = 0;
+        hashB = 0;
+        SafeBoard board = config.getBoard();
+        int cDIM = board.getCDIM();
+        for (int cell = 0; cell < board.getRDIM() * cDIM; cell++) {
+            if (config.isLit(cell / cDIM, cell % cDIM)) {
+                toggle(litKeys, cell);
+            }
+            if (cell >= hashFrom() && config.isKeptEmpty(cell / cDIM, cell % cDIM)) {
+                toggle(blockKeys, cell);
+            }
+        }
+        for (int seg = 0; seg < segments.getSegmentCount(); seg++) {
+            if (config.getSegmentLasers(seg) > 0 && lastCell(seg) >= hashFrom()) {
+                toggle(segKeys, seg);
+            }
+        }
+        for (int p = 0; p < board.getPillarCount(); p++) {
+            toggle(pillarKeys, p * 5 + config.getPillarLasers(p));
+        }
+    }
+
+    /**
+     * Draw two keys for every entry
+     * @param random - (SplittableRandom) where the keys come from
+     * @param entries - (int) the number of entries
+     * @return long[] - the keys
+     */
+    private static long[] randomKeys(SplittableRandom random, int entries) {
+        long[] keys = new long[2 * entries];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+        }
+        return keys;
+    }
+
+    /**
+     * Return the scan position the hashes are taken at
+     * @return int - the scan position, or 0 if the order does not scan
+     *               in order
+     */
+    private int hashFrom() {
+        return scanHash ? config.getScanPosition() : 0;
+    }
+
+    /**
+     * Add an entry to the hashes, or take it out again
+     * @param keys - (long[]) the keys of the kind of entry
+     * @param entry - (int) the entry
+     */
+    private void toggle(long[] keys, int entry) {
+        hashA ^= keys[2 * entry];
+        hashB ^= keys[2 * entry + 1];
+    }
+
+    /**
+     * Return the row major index of the last cell of a segment
+     * @param seg - (int) the segment id
+     * @return int - its last cell
+     */
+    private int lastCell(int seg) {
+        int[] cells = segments.getCells(seg);
+        return cells[cells.length - 1];
+    }
+
+    /**
+     * Update the hashes for a cell that was lit or turned dark again
+     * @param cell - (int) row major index of the cell
+     */
+    void lit(int cell) {
+        toggle(litKeys, cell);
+    }
+
+    /**
+     * Update the hashes for a cell that was blocked or opened again.
+     * Cells before the scan position do not count.
+     * @param cell - (int) row major index of the cell
+     */
+    void blocked(int cell) {
+        if (cell >= hashFrom()) {
+            toggle(blockKeys, cell);
+        }
+    }
+
+    /**
+     * Update the hashes for a segment that got its first laser or lost
+     * its last one. Segments that end before the scan position do not
+     * count.
+     * @param seg - (int) the segment id
+     */
+    void segment(int seg) {
+        if (lastCell(seg) >= hashFrom()) {
+            toggle(segKeys, seg);
+        }
+    }
+
+    /**
+     * Update the hashes for a pillar whose laser count changed
+     * @param p - (int) the index of the pillar
+     * @param from - (int) the old count
+     * @param to - (int) the new count
+     */
+    void pillar(int p, int from, int to) {
+        toggle(pillarKeys, p * 5 + from);
+        toggle(pillarKeys, p * 5 + to);
+    }
+
+    /**
+     * Update the hashes for the scan position moving over the cells
+     * from..to - 1. Blocked cells and segments with a laser that end in
+     * there stop counting. Running it again puts them back. Nothing
+     * changes if the hashes do not follow the scan position.
+     * @param from - (int) the first cell passed
+     * @param to - (int) the cell after the last one passed
+     */
+    void pass(int from, int to) {
+        if (!scanHash) {
+            return;
+        }
+        SafeBoard board = config.getBoard();
+        int cDIM = board.getCDIM();
+        for (int cell = from; cell < to; cell++) {
+            int row = cell / cDIM;
+            int col = cell % cDIM;
+            if (board.isBlocked(row, col)) {
+                continue;
+            }
+            if (config.isKeptEmpty(row, col)) {
+                toggle(blockKeys, cell);
+            }
+            int h = segments.getRowSegment(row, col);
+            int v = segments.getColSegment(row, col);
+            if (config.getSegmentLasers(h) > 0 && lastCell(h) == cell) {
+                toggle(segKeys, h);
+            }
+            if (config.getSegmentLasers(v) > 0 && lastCell(v) == cell) {
+                toggle(segKeys, v);
+            }
+        }
+    }
+
+    /**
+     * Has the current state failed before?
+     * @return true if the memo holds it
+     */
+    boolean failedBefore() {
+        return memo.contains(hashA ^ posKeys[2 * hashFrom()], hashB ^ posKeys[2 * hashFrom() + 1]);
+    }
+
+    /**
+     * Record that the search below the current state failed
+     */
+    void recordFailure() {
+        memo.add(hashA ^ posKeys[2 * hashFrom()], hashB ^ posKeys[2 * hashFrom() + 1]);
+    }
+}
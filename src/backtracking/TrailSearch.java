@@ -0,0 +1,257 @@
+package backtracking;
+
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+/**
+ * A depth first search over an UndoableConfiguration that does not
+ * recurse. The path from the root to the current node is kept in
+ * parallel int arrays, one slot per level: the trail mark of the node,
+ * the next branch to try and how many branches the node has. The
+ * depth of the search is therefore only limited by the heap.
+ *
+ * The search can be resumed: every call to next() continues from the
+ * last goal it returned, so it can walk over all the goals one by one.
+ * It can also be given a SearchLimit, which it ticks at every node.
+ * A node that runs out of branches without a goal below it is
+ * reported to the configuration with exhausted().
+ *
+ * A search with a node budget gives up once it has visited that many
+ * nodes, which is how restarts cut a run short. The frames still open
+ * then are not reported as exhausted, since their subtrees were not
+ * searched to the end.
+ *
+ * With backjumping, every frame also keeps the conflict set of its
+ * failed branches: the frames whose decisions the failures go back to,
+ * as explained by the configuration. A frame that runs out of branches
+ * jumps straight back to the deepest frame in its conflict set and
+ * hands the rest of the set down to it, skipping the frames in between,
+ * whose other branches would fail the same way. Frames with a goal
+ * below them are never jumped over.
+ */
+class TrailSearch {
+
+    private UndoableConfiguration config;
+    private int[] marks;
+    private int[] branches;
+    private int[] counts;
+    private int depth;
+    private boolean started;
+    //The frames below this depth have a goal under them, so they are
+    //not reported as exhausted when they run out of branches
+    private int goalDepth;
+    //Deadline and cancellation token of the search, may be null
+    private SearchLimit limit;
+    //Nodes the search may visit, and how many it has
+    private long budget = Long.MAX_VALUE;
+    private long nodes;
+    private boolean overBudget;
+    //Conflict sets of the frames, null when backjumping is off
+    private BitSet[] conflicts;
+    //The conflict set explainFailure is filling in, and how it is filled
+    private BitSet blamed;
+    private IntConsumer blame = position -> {
+        int frame = frameOf(position);
+        if (frame >= 0) {
+            blamed.set(frame);
+        }
+    };
+
+    /**
+     * Set up a search that starts at the current state of a configuration
+     * @param config - (UndoableConfiguration) the configuration to search
+     */
+    TrailSearch(UndoableConfiguration config) {
+        this.config = config;
+        this.marks = new int[64];
+        this.branches = new int[64];
+        this.counts = new int[64];
+        this.depth = 0;
+        this.started = false;
+        this.goalDepth = 0;
+    }
+
+    /**
+     * Give the search a limit. Once the limit is reached, next() throws
+     * a SearchAbortedException; the configuration is left wherever the
+     * search was.
+     * @param limit - (SearchLimit) the limit, or null for none
+     */
+    void setLimit(SearchLimit limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Give the search a node budget. Once it is spent, next() returns
+     * false and isOverBudget() tells that apart from the end of the
+     * search; the configuration is left wherever the search was.
+     * @param budget - (long) the most nodes to visit
+     */
+    void setNodeBudget(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Turn conflict directed backjumping on or off. It has to be set
+     * before the first call to next().
+     * @param backjumping - (boolean) should exhausted frames jump back?
+     */
+    void setBackjumping(boolean backjumping) {
+        this.conflicts = backjumping ? new BitSet[marks.length] : null;
+    }
+
+    /**
+     * Did the search stop because its node budget was spent?
+     * @return true if it stopped before the end of the search
+     */
+    boolean isOverBudget() {
+        return overBudget;
+    }
+
+    /**
+     * Move the configuration to the next goal.
+     * @return true if a goal was found; false if the search is over or
+     * its node budget is spent
+     */
+    boolean next() {
+        if (!started) {
+            started = true;
+            if (config.isGoal()) {
+                return true;
+            }
+            push();
+        }
+        while (depth > 0) {
+            if (nodes == budget) {
+                overBudget = true;
+                return false;
+            }
+            nodes++;
+            if (limit != null) {
+                limit.tick();
+            }
+            int top = depth - 1;
+            // undo whatever the last branch of this node changed
+            config.undo(marks[top]);
+            if (branches[top] == counts[top]) {
+                // every branch failed, backtrack to the parent
+                if (top >= goalDepth) {
+                    config.exhausted();
+                }
+                depth = conflicts == null || top < goalDepth ? top : jump(top) + 1;
+                goalDepth = Math.min(goalDepth, depth);
+                continue;
+            }
+            if (config.apply(branches[top]++)) {
+                if (config.isGoal()) {
+                    goalDepth = depth;
+                    return true;
+                }
+                push();
+            } else if (conflicts != null) {
+                explain(top);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Open a frame for the node the configuration is at
+     */
+    private void push() {
+        if (depth == marks.length) {
+            marks = grow(marks);
+            branches = grow(branches);
+            counts = grow(counts);
+            if (conflicts != null) {
+                BitSet[] bigger = new BitSet[conflicts.length * 2];
+                System.arraycopy(conflicts, 0, bigger, 0, conflicts.length);
+                conflicts = bigger;
+            }
+        }
+        marks[depth] = config.mark();
+        branches[depth] = 0;
+        counts[depth] = config.branchCount();
+        if (conflicts != null) {
+            if (conflicts[depth] == null) {
+                conflicts[depth] = new BitSet();
+            }
+            //What the branches of the node hang on
+            conflicts[depth].clear();
+            explain(depth);
+        }
+        depth++;
+    }
+
+    /**
+     * Add the frames a failure at a frame, or the branches of a new
+     * frame, go back to to its conflict set. What the configuration can
+     * not explain goes back to every frame.
+     * @param frame - (int) the frame
+     */
+    private void explain(int frame) {
+        blamed = conflicts[frame];
+        if (!config.explainFailure(blame)) {
+            blamed.set(0, frame);
+        }
+        blamed.clear(frame);
+    }
+
+    /**
+     * Find the frame whose decision made a trail position
+     * @param position - (int) the trail position
+     * @return int - the index of the frame, or -1 if it came before the
+     *               search started
+     */
+    private int frameOf(int position) {
+        int low = 0;
+        int high = depth - 1;
+        int frame = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (marks[mid] <= position) {
+                frame = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * Pick the frame an exhausted frame jumps back to: the deepest one
+     * in its conflict set, but none with a goal below it. The rest of
+     * the set is handed down to that frame.
+     * @param top - (int) the exhausted frame
+     * @return int - the frame to continue at, -1 if the search is over
+     */
+    private int jump(int top) {
+        BitSet conflict = conflicts[top];
+        int target = Math.max(conflict.previousSetBit(top - 1), goalDepth - 1);
+        if (target >= 0) {
+            conflicts[target].or(conflict);
+            conflicts[target].clear(target, top + 1);
+        }
+        return target;
+    }
+
+    /**
+     * Double the size of a stack
+     * @param stack - (int[]) the stack
+     * @return int[] - a copy twice as long
+     */
+    private static int[] grow(int[] stack) {
+        int[] bigger = new int[stack.length * 2];
+        System.arraycopy(stack, 0, bigger, 0, stack.length);
+        return bigger;
+    }
+
+    /**
+     * Return how deep the search is right now
+     * @return int - number of open frames
+     */
+    int getDepth() {
+        return depth;
+    }
+}
@@ -0,0 +1,102 @@
+package backtracking;
+
+import java.util.function.IntConsumer;
+
+/**
+ * The representation of a puzzle that is searched in place. Instead
+ * of handing out a fresh copy of itself for every successor, the
+ * configuration applies a choice to its own state and remembers the
+ * changes on a trail, so the backtracker can take them back again.
+ *
+ * A search step looks like this:
+ * <pre>
+ *     int mark = config.mark();
+ *     if (config.apply(branch)) {
+ *         ... search deeper ...
+ *     }
+ *     config.undo(mark);
+ * </pre>
+ */
+public interface UndoableConfiguration {
+    /**
+     * How many ways can the current configuration branch?
+     *
+     * @return the number of branches, 0 if there is nothing left to decide
+     */
+    public int branchCount();
+
+    /**
+     * Apply one branch of the current configuration to its state.
+     * The changes are undone with undo, whether the branch was valid
+     * or not.
+     *
+     * @param branch which branch to take, from 0 to branchCount() - 1
+     * @return true if the configuration is still valid; false otherwise
+     */
+    public boolean apply(int branch);
+
+    /**
+     * Remember the current state so that it can be restored later.
+     *
+     * @return the position of the undo trail
+     */
+    public int mark();
+
+    /**
+     * Take back every change made since the mark was taken.
+     *
+     * @param mark a value returned by mark()
+     */
+    public void undo(int mark);
+
+    /**
+     * Is the current configuration a goal?
+     * @return true if goal; false otherwise
+     */
+    public boolean isGoal();
+
+    /**
+     * Copy the current state into an immutable configuration, so it
+     * can outlive the search that found it.
+     *
+     * @return the current configuration
+     */
+    public Configuration snapshot();
+
+    /**
+     * Copy the current state into a new configuration that can be
+     * searched on its own, for example on another thread. The copy
+     * starts with an empty trail, so it can not undo past this point.
+     *
+     * @return an independent copy of the current configuration
+     */
+    public UndoableConfiguration copy();
+
+    /**
+     * Tell the configuration that every branch of its current state
+     * failed, and no goal was found below it. The search calls this
+     * after undoing the last branch, so the configuration is back at
+     * that state. A configuration can remember such states to skip
+     * them when it meets them again; by default nothing is done.
+     */
+    public default void exhausted() {
+    }
+
+    /**
+     * Explain why the last branch failed, for conflict directed
+     * backjumping. The configuration reports the trail position of
+     * every earlier decision the failure goes back to; the search
+     * can then jump straight back over the decisions that had nothing
+     * to do with it. The search calls this right after apply failed,
+     * before undoing anything, and right after every branchCount:
+     * when the branches of a node all fail, that goes back to whatever
+     * limited them, which is nothing if they cover every way on. By
+     * default nothing is explained, so it goes back to every decision.
+     *
+     * @param culprits takes the trail positions of the decisions
+     * @return true if the failure was explained; false otherwise
+     */
+    public default boolean explainFailure(IntConsumer culprits) {
+        return false;
+    }
+}
@@ -16,6 +16,7 @@ import java.io.FileNotFoundException;
 import java.util.Observable;
 import java.util.Observer;
 import model.*;
+import backtracking.SolveResult;
 
 import java.nio.file.Paths;
 import java.nio.file.Path;
@@ -322,6 +323,10 @@ public class LasersGUI extends Application implements Observer {
                 } catch (FileNotFoundException exc) {
                     exc.getMessage();
                 }
+                if(model.getSolveStatus() != SolveResult.Status.SOLVED) {
+                    message.setText(stoppedMessage("Hint: no steps available"));
+                    return;
+                }
                 for (int row = 0; row < model.getrDIM(); row++) {
                     for (int col = 0; col < model.getcDIM(); col++) {
                         char letter = model.getHint()[row][col];
@@ -468,8 +473,24 @@ public class LasersGUI extends Application implements Observer {
             message.setText("Safe is solved");
         }
         else{
-            message.setText("Safe does not have a solution!");
+            message.setText(stoppedMessage("Safe does not have a solution!"));
         }
 
     }
+
+    /**
+     * Tell the user why the last search did not give an answer
+     * @param noSolution - (String) the message for a safe without a solution
+     * @return String - the message to show
+     */
+    private String stoppedMessage(String noSolution) {
+        switch (model.getSolveStatus()) {
+            case TIMED_OUT:
+                return "Solver ran out of time!";
+            case CANCELLED:
+                return "Solver was cancelled!";
+            default:
+                return noSolution;
+        }
+    }
 }
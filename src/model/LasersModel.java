@@ -1,11 +1,19 @@
 package model;
 
-import backtracking.Backtracker;
+import backtracking.CancellationToken;
 import backtracking.Configuration;
+import backtracking.SafeBoard;
 import backtracking.SafeConfig;
+import backtracking.SegmentIndex;
+import backtracking.SolveResult;
+import backtracking.SolverEngines;
+import backtracking.SolverSession;
+import backtracking.SolverStatistics;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 
 /**
@@ -41,13 +49,32 @@ public class LasersModel extends Observable {
     private boolean quit;
 
     private String filename;
-    private Backtracker backtracker;
     private List<char[][]> hint;
     private int hintIndex;
     private char[][] solution;
     private boolean noSolution;
     private boolean clickable;
 
+    //The layout of the safe and its runs of free cells, shared with the solver
+    private SafeBoard board;
+    private SegmentIndex segments;
+    //Number of lasers in every segment of the grid
+    private int[] segmentLasers;
+    //Solves and hints, kept up to date with the user's lasers so every
+    //search can start from the last solution
+    private SolverSession session;
+
+    //How long a solve or a hint may take, null for no limit
+    private Duration solveTimeout;
+    //Token of the solve that is running, so another thread can cancel it
+    private volatile CancellationToken solveToken;
+    //How the last solve or hint ended
+    private SolveResult.Status solveStatus;
+    //Name of the SolverEngine the session solves with when no solution
+    //keeps the user's lasers, and what the last solve cost
+    private String engine = SolverEngines.DEFAULT_ENGINE;
+    private SolverStatistics solveStatistics;
+
 
     /**
      * This is the constructor for the model that is used to represent the current
@@ -81,7 +108,6 @@ public class LasersModel extends Observable {
         // respective row and col dimensions
 
         this.filename = filename;
-        backtracker = new Backtracker(false);
         hint = new ArrayList<>();
         hintIndex = 0;
         solution = new char[rDIM][cDIM];
@@ -95,6 +121,11 @@ public class LasersModel extends Observable {
                 this.grid[r][c] = s.charAt(0);
             }
         }
+        this.board = new SafeBoard(grid);
+        this.segments = board.getSegments();
+        this.segmentLasers = new int[segments.getSegmentCount()];
+        this.session = new SolverSession(board);
+        session.setEngine(engine);
     }
     // Jordan Shea
 
@@ -346,64 +377,142 @@ public class LasersModel extends Observable {
         }
 
         //If all condition works, add the laser at the specified location
-        //then display the new graph with the laser added
+        //then display the new graph with the laser added. The beams
+        //cover the laser's row and column segments.
         grid[row][col] = 'L';
-        //South Direction
-        for(int rowBeams = row+1; rowBeams < rDIM; rowBeams++){
-            //If the direction that the laser is hitting hits a pillar,
-            //we stop adding the laser beams
-            if(grid[rowBeams][col] == '4' || grid[rowBeams][col] == '3' ||
-                    grid[rowBeams][col] == '2' || grid[rowBeams][col] == '1' || grid[rowBeams][col] == '0'
-                    || grid[rowBeams][col] == 'X' || grid[rowBeams][col] == 'L'){
-                break;
-            }
-            else{
-                grid[rowBeams][col] = '*';
+        int rowSeg = segments.getRowSegment(row, col);
+        int colSeg = segments.getColSegment(row, col);
+        segmentLasers[rowSeg]++;
+        segmentLasers[colSeg]++;
+        lightSegment(rowSeg, grid);
+        lightSegment(colSeg, grid);
+        session.laserAdded(row, col);
+        this.addSuccess = true;
+        this.addFailure = false;
+        announceChange();
+    }
+
+    /**
+     * Put a beam on every cell of a segment that does not hold a laser
+     * @param seg - (int) the segment id
+     * @param grid - (char[][]) the grid to change
+     */
+    private void lightSegment(int seg, char[][] grid){
+        for(int cell : segments.getCells(seg)){
+            if(grid[cell / cDIM][cell % cDIM] != 'L'){
+                grid[cell / cDIM][cell % cDIM] = '*';
             }
         }
-        //North Direction
-        for(int rowBeams = row-1; rowBeams >= 0; rowBeams--){
-            if(grid[rowBeams][col] == '4' || grid[rowBeams][col] == '3' ||
-                    grid[rowBeams][col] == '2' || grid[rowBeams][col] == '1' || grid[rowBeams][col] == '0'||
-                    grid[rowBeams][col] == 'X' || grid[rowBeams][col] == 'L'){
-                break;
-            }
-            else{
-                grid[rowBeams][col] = '*';
+    }
+
+    /**
+     * Recompute every cell of a segment after a laser was taken out of
+     * it. A cell stays lit if either of its segments still has a laser.
+     * @param seg - (int) the segment id
+     */
+    private void relightSegment(int seg){
+        for(int cell : segments.getCells(seg)){
+            int row = cell / cDIM;
+            int col = cell % cDIM;
+            if(grid[row][col] != 'L'){
+                boolean lit = segmentLasers[segments.getRowSegment(row, col)] > 0
+                        || segmentLasers[segments.getColSegment(row, col)] > 0;
+                grid[row][col] = lit ? '*' : '.';
             }
         }
-        //East Direction
-        for(int colBeams = col+1; colBeams < cDIM; colBeams++){
-            if(grid[row][colBeams] == '4' || grid[row][colBeams] == '3' || grid[row][colBeams]== 'X'||
-                    grid[row][colBeams] ==  'L' ||
-                    grid[row][colBeams] == '2' || grid[row][colBeams] == '1' || grid[row][colBeams] == '0'){
-                break;
-            }
-            else{
-                grid[row][colBeams] = '*';
-            }
+    }
+
+    /**
+     * Limit how long backtrackerSolver and generateHint may search
+     * @param timeout - (Duration) the longest a search may take, null
+     *                for no limit
+     */
+    public void setSolveTimeout(Duration timeout){
+        this.solveTimeout = timeout;
+    }
+
+    /**
+     * Return how long a search may take
+     * @return Duration - the limit, or null if there is none
+     */
+    public Duration getSolveTimeout(){
+        return solveTimeout;
+    }
+
+    /**
+     * Stop the solve or hint that is running, if any. It can be called
+     * from any thread; the search notices within a few nodes.
+     */
+    public void cancelSolve(){
+        CancellationToken token = solveToken;
+        if(token != null){
+            token.cancel();
         }
-        //West Direction
-        for(int colBeams = col-1; colBeams >= 0; colBeams--){
-            if(grid[row][colBeams] == '4' || grid[row][colBeams] == '3' ||
-                    grid[row][colBeams] == 'X'|| grid[row][colBeams] == 'L' ||
-                    grid[row][colBeams] == '2' || grid[row][colBeams] == '1' || grid[row][colBeams] == '0'){
-                break;
-            }
-            else{
-                grid[row][colBeams] = '*';
-            }
+    }
+
+    /**
+     * Return how the last solve or hint ended
+     * @return SolveResult.Status - SOLVED, NO_SOLUTION, TIMED_OUT or
+     * CANCELLED, null before the first search
+     */
+    public SolveResult.Status getSolveStatus(){
+        return solveStatus;
+    }
+
+    /**
+     * Pick the engine backtrackerSolver solves the safe with when no
+     * solution keeps the user's lasers
+     * @param engine - (String) the name of a SolverEngine, see SolverEngines
+     * @throws IllegalArgumentException if no engine has that name
+     */
+    public void setEngine(String engine){
+        if(!SolverEngines.contains(engine)){
+            throw new IllegalArgumentException("unknown engine " + engine
+                    + ", expected one of " + SolverEngines.getNames());
         }
-        this.addSuccess = true;
-        this.addFailure = false;
-        announceChange();
+        this.engine = engine;
+        session.setEngine(engine);
+    }
+
+    /**
+     * Return the name of the engine backtrackerSolver solves with
+     * @return String - the engine, SolverEngines.DEFAULT_ENGINE unless
+     * it was changed
+     */
+    public String getEngine(){
+        return engine;
+    }
+
+    /**
+     * Return what the last backtrackerSolver cost
+     * @return SolverStatistics - the statistics, null before the first solve
+     */
+    public SolverStatistics getSolveStatistics(){
+        return solveStatistics;
     }
 
+    /**
+     * Start the token and the deadline of a new search
+     * @return Instant - the deadline, or null if there is no limit
+     */
+    private Instant startSolve(){
+        solveToken = new CancellationToken();
+        return solveTimeout == null ? null : Instant.now().plus(solveTimeout);
+    }
+
+    /**
+     * Solve the safe, keeping the lasers the user placed if any solution
+     * has them. The session repairs the last solution rather than
+     * starting over, so a solve after a small change is quick.
+     * @throws FileNotFoundException never, kept for the callers
+     */
     public void backtrackerSolver() throws FileNotFoundException{
-        Configuration init = new SafeConfig(filename);
-        Optional<Configuration> sol = backtracker.solve(init);
-        if(sol.isPresent()){
-            SafeConfig safeConfigSolution = (SafeConfig) sol.get();
+        SolveResult result = session.solve(startSolve(), solveToken);
+        solveToken = null;
+        solveStatus = result.getStatus();
+        solveStatistics = session.getStatistics();
+        if(result.isSolved()){
+            SafeConfig safeConfigSolution = (SafeConfig) result.getSolution().get();
             solution = safeConfigSolution.getGrid();
             noSolution = false;
         }
@@ -422,17 +531,31 @@ public class LasersModel extends Observable {
         return noSolution;
     }
 
+    /**
+     * Show one more laser of the solution the session has for the
+     * user's lasers. Every hint adds the next laser in row major order.
+     * @throws FileNotFoundException never, kept for the callers
+     */
     public void generateHint() throws FileNotFoundException{
-        Configuration init = new SafeConfig(filename);
-        backtracker.solveHelperFunction(init);
-        List<Configuration> hints = backtracker.solveWithPath();
-
-        for(Configuration config: hints){
+        SolveResult result = session.solve(startSolve(), solveToken);
+        solveToken = null;
+        solveStatus = result.getStatus();
+        if(!result.isSolved()){
+            //No path to show, the hint stays where it was
+            announceChange();
+            return;
+        }
+        //The solution may have changed since the last hint
+        hint.clear();
+        for(Configuration config: session.getPath()){
             SafeConfig safeConfig = (SafeConfig) config;
             char[][] steps = safeConfig.getGrid();
             hint.add(steps);
         }
-        hintIndex++;
+        if(hint.isEmpty()){
+            hint.add(((SafeConfig) result.getSolution().get()).getGrid());
+        }
+        hintIndex = Math.min(hintIndex + 1, hint.size());
         announceChange();
     }
 
@@ -465,56 +588,11 @@ public class LasersModel extends Observable {
         }
 
         //If all condition works, add the laser at the specified location
-        //then display the new graph with the laser added
+        //then display the new graph with the laser added. The beams
+        //cover the laser's row and column segments.
         grid[row][col] = 'L';
-        //South Direction
-        for(int rowBeams = row+1; rowBeams < rDIM; rowBeams++){
-            //If the direction that the laser is hitting hits a pillar,
-            //we stop adding the laser beams
-            if(grid[rowBeams][col] == '4' || grid[rowBeams][col] == '3' ||
-                    grid[rowBeams][col] == '2' || grid[rowBeams][col] == '1' || grid[rowBeams][col] == '0'
-                    || grid[rowBeams][col] == 'X' || grid[rowBeams][col] == 'L' || grid[rowBeams][col] == '5'){
-                break;
-            }
-            else{
-                grid[rowBeams][col] = '*';
-            }
-        }
-        //North Direction
-        for(int rowBeams = row-1; rowBeams >= 0; rowBeams--){
-            if(grid[rowBeams][col] == '4' || grid[rowBeams][col] == '3' ||
-                    grid[rowBeams][col] == '2' || grid[rowBeams][col] == '1' || grid[rowBeams][col] == '0'||
-                    grid[rowBeams][col] == 'X' || grid[rowBeams][col] == 'L' || grid[row][col] == '5'){
-                break;
-            }
-            else{
-                grid[rowBeams][col] = '*';
-            }
-        }
-        //East Direction
-        for(int colBeams = col+1; colBeams < cDIM; colBeams++){
-            if(grid[row][colBeams] == '4' || grid[row][colBeams] == '3' || grid[row][colBeams]== 'X'||
-                    grid[row][colBeams] ==  'L' ||
-                    grid[row][colBeams] == '2' || grid[row][colBeams] == '1' || grid[row][colBeams] == '0' ||
-                    grid[row][colBeams] == '5'){
-                break;
-            }
-            else{
-                grid[row][colBeams] = '*';
-            }
-        }
-        //West Direction
-        for(int colBeams = col-1; colBeams >= 0; colBeams--){
-            if(grid[row][colBeams] == '4' || grid[row][colBeams] == '3' ||
-                    grid[row][colBeams] == 'X'|| grid[row][colBeams] == 'L' ||
-                    grid[row][colBeams] == '2' || grid[row][colBeams] == '1' || grid[row][colBeams] == '0' ||
-                    grid[row][colBeams] == '5'){
-                break;
-            }
-            else{
-                grid[row][colBeams] = '*';
-            }
-        }
+        lightSegment(segments.getRowSegment(row, col), grid);
+        lightSegment(segments.getColSegment(row, col), grid);
         this.addSuccess = true;
         announceChange();
     }
@@ -556,194 +634,17 @@ public class LasersModel extends Observable {
             return;
         }
         else {
-            // Local Variables
-            boolean laserCheckEW = false;
-            boolean laserCheckNS = false;
-            int eastEnd = rDIM - 1;
-            int westEnd = 0;
-            int southEnd = rDIM - 1;
-            int northEnd = 0;
-            // Corresponds to beams being shot to the right
-            int right = col + 1;
-            // Corresponds to beams being shot to the left
-            int left = col - 1;
-            // Corresponds to beams being shot upwards
-            int up = row - 1;
-            // Corresponds with beams being shot downwards
-            int down = row + 1;
-            // Removes the beam that is being shot to the right
-            for (int east = right; east <= cDIM -1; east++){
-                if (grid[row][east] == '0' || grid[row][east] == '1' ||
-                        grid[row][east] == '2' || grid[row][east] == '3' ||
-                        grid[row][east] == '4' || grid[row][east] == 'X'){
-                    eastEnd = east - 1;
-                    break;
-                }
-                else if (grid[row][east] == 'L'){
-                    laserCheckEW = true;
-                    eastEnd = east - 1;
-                    break;
-                }
-                else {
-                    grid[row][east] = '.';
-                }
-                for (int north = up; north >= 0; north--){
-                    if (grid[north][east] == '0' || grid[north][east] == '1' ||
-                            grid[north][east] == '2' || grid[north][east] == '3' ||
-                            grid[north][east] == '4' || grid[north][east] == 'X'){
-                        break;
-                    }
-                    if (grid[north][east] == 'L'){
-                        grid[row][east] = '*';
-                        break;
-                    }
-                }
-                for (int south = down; south <= rDIM -1; south++){
-                    if (grid[south][east] == '0' || grid[south][east] == '1' ||
-                            grid[south][east] == '2' || grid[south][east] == '3' ||
-                            grid[south][east] == '4' || grid[south][east] == 'X' ){
-                        break;
-                    }
-                    if (grid[south][east] == 'L'){
-                        grid[row][east] = '*';
-                        break;
-                    }
-                }
-            }
-            // Removes the beam that is being shot to the left
-            for (int west = left; west >= 0; west--){
-                if (grid[row][west] == '0' || grid[row][west] == '1' ||
-                        grid[row][west] == '2' || grid[row][west] == '3' ||
-                        grid[row][west] == '4' || grid[row][west] == 'X'){
-                    westEnd = west + 1;
-                    break;
-                }
-                else if (grid[row][west] == 'L'){
-                    laserCheckEW = true;
-                    westEnd = west + 1;
-                    break;
-                }
-                else {
-                    grid[row][west] = '.';
-                }
-                for (int north = up; north >= 0; north--){
-                    if (grid[north][west] == '0' || grid[north][west] == '1' ||
-                            grid[north][west] == '2' || grid[north][west] == '3' ||
-                            grid[north][west] == '4' || grid[north][west] == 'X' ){
-                        break;
-                    }
-                    if (grid[north][west] == 'L'){
-                        grid[row][west] = '*';
-                        break;
-                    }
-                }
-                for (int south = down; south <= rDIM - 1; south++){
-                    if (grid[south][west] == '0' || grid[south][west] == '1' ||
-                            grid[south][west] == '2' || grid[south][west] == '3' ||
-                            grid[south][west] == '4' || grid[south][west] == 'X' ){
-                        break;
-                    }
-                    if (grid[south][west] == 'L'){
-                        grid[row][west] = '*';
-                        break;
-                    }
-                }
-            }
-            // Removes the beam that is being shot downwards
-            for (int south = down; south <= rDIM - 1; south++){
-                if (grid[south][col] == '0' || grid[south][col] == '1' ||
-                        grid[south][col] == '2' || grid[south][col] == '3' ||
-                        grid[south][col] == '4' || grid[south][col] == 'X' ){
-                    southEnd = south - 1;
-                    break;
-                }
-                else if (grid[south][col] == 'L'){
-                    laserCheckNS = true;
-                    southEnd = south - 1;
-                    break;
-                }
-                else {
-                    grid[south][col] = '.';
-                }
-                for (int west = left; west >= 0; west--){
-                    if (grid[south][west] == '0' || grid[south][west] == '1' ||
-                            grid[south][west] == '2' || grid[south][west] == '3' ||
-                            grid[south][west] == '4' || grid[south][west] == 'X'){
-                        break;
-                    }
-                    if (grid[south][west] == 'L'){
-                        grid[south][col] = '*';
-                        break;
-                    }
-                }
-                for (int east = right; east <= cDIM - 1; east++){
-                    if (grid[south][east] == '0' || grid[south][east] == '1' ||
-                            grid[south][east] == '2' || grid[south][east] == '3' ||
-                            grid[south][east] == '4' || grid[south][east] == 'X'){
-                        break;
-                    }
-                    if (grid[south][east] == 'L'){
-                        grid[south][col] = '*';
-                        break;
-                    }
-                }
-            }
-            // Removes the beam that is being shot upwards
-            for (int north = up; north >= 0; north--){
-                if (grid[north][col] == '0' || grid[north][col] == '1' ||
-                        grid[north][col] == '2' || grid[north][col] == '3' ||
-                        grid[north][col] == '4' || grid[north][col] == 'X'){
-                    northEnd = north + 1;
-                    break;
-                }
-                else if (grid[north][col] == 'L'){
-                    laserCheckNS = true;
-                    northEnd = north + 1;
-                    break;
-                }
-                else {
-                    grid[north][col] = '.';
-                }
-                for (int west = left; west >= 0; west--){
-                    if (grid[north][west] == '0' || grid[north][west] == '1' ||
-                            grid[north][west] == '2' || grid[north][west] == '3' ||
-                            grid[north][west] == '4' || grid[north][west] == 'X'){
-                        break;
-                    }
-                    if (grid[north][west] == 'L'){
-                        grid[north][col] = '*';
-                        break;
-                    }
-                }
-                for (int east = right; east <= cDIM - 1; east++){
-                    if (grid[north][east] == '0' || grid[north][east] == '1' ||
-                            grid[north][east] == '2' || grid[north][east] == '3' ||
-                            grid[north][east] == '4' || grid[north][east] == 'X'){
-                        break;
-                    }
-                    if (grid[north][east] == 'L'){
-                        grid[north][col] = '*';
-                        break;
-                    }
-                }
-            }
-            if (laserCheckEW){
-                for (int i = westEnd; i <= eastEnd; i++){
-                    grid[row][i] = '*';
-                }
-            }
-            if (laserCheckNS){
-                for (int i = northEnd; i <= southEnd; i++) {
-                    grid[i][col] = '*';
-                }
-            }
-            // Determines what symbol the old laser should be replaced with
-            if (laserCheckEW || laserCheckNS){
-                grid[row][col] = '*';
-            }
-            else{
-                grid[row][col] = '.';
-            }
+            // Takes the laser out of its segments, then recomputes the
+            // cells of both segments, since other lasers may still
+            // light some of them
+            int rowSeg = segments.getRowSegment(row, col);
+            int colSeg = segments.getColSegment(row, col);
+            segmentLasers[rowSeg]--;
+            segmentLasers[colSeg]--;
+            grid[row][col] = '.';
+            relightSegment(rowSeg);
+            relightSegment(colSeg);
+            session.laserRemoved(row, col);
         }
         // Displays updated grid with the position in which the laser was removed
         this.removeSuccess = true;
@@ -928,6 +829,8 @@ public class LasersModel extends Observable {
                 }
             }
         }
+        Arrays.fill(segmentLasers, 0);
+        session.lasersCleared();
         hintIndex = 0;
         solution = new char[rDIM][cDIM];
         hint.clear();
@@ -1455,66 +1358,9 @@ public class LasersModel extends Observable {
      * are in sight of one another
      */
     public boolean verifyWithPos(int r, int c){
-
-        //Making sure that the column is not 0
-        if(c != 0){
-            for(int col = c-1; col >= 0; col--){
-                if(grid[r][col] != '*'){
-                    if(grid[r][col] == 'L'){
-                        return false;
-                    }
-                    else{
-                        break;
-                    }
-                }
-            }
-        }
-        //Making sure that the col is not greater than
-        //the column dimension
-        if(c != cDIM-1){
-            for(int col = c+1; col < cDIM; col++){
-                if(grid[r][col] != '*'){
-                    if(grid[r][col] == 'L'){
-                        return false;
-                    }
-                    else{
-                        break;
-                    }
-                }
-            }
-        }
-        //Row does not equal to 0
-        if(r != 0){
-            for(int row = r-1; row >= 0; row--){
-                if(grid[row][c] != '*'){
-                    if(grid[row][c] == 'L'){
-                        return false;
-                    }
-                    else{
-                        break;
-                    }
-                }
-            }
-        }
-        //Row does not equal to the row dimension
-        if(r != rDIM-1){
-            for(int row = r+1; row < rDIM; row++){
-                //If I hit something that is not
-                //a laser beam, it means I have hit
-                //a pillar or a laser. If it is a
-                //pillar, I break out of the for
-                //loop, else I return false
-                if(grid[row][c] != '*'){
-                    if(grid[row][c] == 'L'){
-                        return false;
-                    }
-                    else{
-                        break;
-                    }
-                }
-            }
-        }
-        return true;
+        //Two lasers see each other when they share a segment
+        return segmentLasers[segments.getRowSegment(r, c)] <= 1
+                && segmentLasers[segments.getColSegment(r, c)] <= 1;
     }
 
     /**
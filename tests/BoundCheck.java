@@ -0,0 +1,40 @@
+import backtracking.Backtracker;
+import backtracking.CapacityBound;
+import backtracking.RowMajorOrder;
+import backtracking.SafeTrailConfig;
+import backtracking.SegmentGraphConfig;
+
+import java.io.FileNotFoundException;
+
+/**
+ * Checks that the CapacityBound only cuts branches without a solution:
+ * the counts of the row major search, the pruning search and the
+ * SegmentGraphConfig, each with the bound, must match the reference
+ * count.
+ *
+ *   java -cp out/check BoundCheck
+ */
+public class BoundCheck {
+
+    public static void main(String[] args) throws FileNotFoundException {
+        int checks = SafeRules.checkCounts("bounded row major", board -> {
+            SafeTrailConfig config = new SafeTrailConfig(board);
+            config.setBranchOrder(new RowMajorOrder());
+            config.setPruningRule(new CapacityBound());
+            return new Backtracker(false).countSolutions(config);
+        });
+        checks += SafeRules.checkCounts("bounded pruning", board -> {
+            SafeTrailConfig config = new SafeTrailConfig(board);
+            config.setDeadCellPruning(true);
+            config.setPropagation(true);
+            config.setPruningRule(new CapacityBound());
+            return new Backtracker(false).countSolutions(config);
+        });
+        checks += SafeRules.checkCounts("bounded segments", board -> {
+            SegmentGraphConfig config = new SegmentGraphConfig(board);
+            config.setPruningRule(new CapacityBound());
+            return new Backtracker(false).countSolutions(config);
+        });
+        SafeRules.finish(checks);
+    }
+}
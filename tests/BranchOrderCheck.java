@@ -0,0 +1,36 @@
+import backtracking.Backtracker;
+import backtracking.MostConstrainedOrder;
+import backtracking.SafeBoard;
+import backtracking.SafeTrailConfig;
+
+import java.io.FileNotFoundException;
+
+/**
+ * Checks that the most constrained order branches over every solution
+ * exactly once: its counts, without pruning and with propagation and
+ * dead cells, must match the reference count.
+ *
+ *   java -cp out/check BranchOrderCheck
+ */
+public class BranchOrderCheck {
+
+    public static void main(String[] args) throws FileNotFoundException {
+        int checks = SafeRules.checkCounts("most constrained", board -> count(board, false));
+        checks += SafeRules.checkCounts("most constrained with pruning", board -> count(board, true));
+        SafeRules.finish(checks);
+    }
+
+    /**
+     * Count the solutions of a safe in most constrained order
+     * @param board - (SafeBoard) the layout of the safe
+     * @param pruning - (boolean) propagate and cut at dead cells?
+     * @return long - the number of solutions
+     */
+    private static long count(SafeBoard board, boolean pruning) {
+        SafeTrailConfig config = new SafeTrailConfig(board);
+        config.setBranchOrder(new MostConstrainedOrder());
+        config.setDeadCellPruning(pruning);
+        config.setPropagation(pruning);
+        return new Backtracker(false).countSolutions(config);
+    }
+}
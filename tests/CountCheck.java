@@ -0,0 +1,50 @@
+import backtracking.Backtracker;
+import backtracking.SafeBoard;
+import backtracking.SafeConfig;
+import backtracking.SafeTrailConfig;
+
+import java.io.FileNotFoundException;
+
+/**
+ * Checks the enumeration, the count and the uniqueness check of the
+ * Backtracker against the reference count of SafeRules: the count must
+ * match, the stream of solveAll must hold as many solutions, every one
+ * of them keeping the rules, and isUnique must hold exactly when there
+ * is one solution. The searches prune with propagation and dead cells,
+ * so the big bundled safes take seconds rather than minutes.
+ *
+ *   java -cp out/check CountCheck
+ */
+public class CountCheck {
+
+    public static void main(String[] args) throws FileNotFoundException {
+        int checks = SafeRules.checkCounts("count", board ->
+                new Backtracker(false).countSolutions(pruning(board)));
+        checks += SafeRules.checkCounts("solveAll", board ->
+                new Backtracker(false).solveAll(pruning(board))
+                        .map(solution -> ((SafeConfig) solution).getGrid())
+                        .filter(grid -> SafeRules.brokenRule(board, SafeRules.lasersOf(board, grid)) == null)
+                        .count());
+        int[] unique = new int[1];
+        SafeRules.forEachSafe((name, board) -> {
+            boolean expected = SafeRules.countSolutions(board) == 1;
+            if (new Backtracker(false).isUnique(pruning(board)) != expected) {
+                SafeRules.fail(name + ", isUnique: " + !expected + ", expected " + expected);
+            }
+            unique[0]++;
+        });
+        SafeRules.finish(checks + unique[0]);
+    }
+
+    /**
+     * Create the configuration of the pruning search
+     * @param board - (SafeBoard) the layout of the safe
+     * @return SafeTrailConfig - the configuration
+     */
+    private static SafeTrailConfig pruning(SafeBoard board) {
+        SafeTrailConfig config = new SafeTrailConfig(board);
+        config.setDeadCellPruning(true);
+        config.setPropagation(true);
+        return config;
+    }
+}
@@ -0,0 +1,35 @@
+import backtracking.Backtracker;
+import backtracking.SafeBoard;
+import backtracking.SafeTrailConfig;
+
+import java.io.FileNotFoundException;
+
+/**
+ * Checks that branching over the cells that could light a dark cell
+ * covers every solution exactly once: its counts, without pruning and
+ * with propagation and dead cells, must match the reference count.
+ *
+ *   java -cp out/check CoverCheck
+ */
+public class CoverCheck {
+
+    public static void main(String[] args) throws FileNotFoundException {
+        int checks = SafeRules.checkCounts("cover", board -> count(board, false));
+        checks += SafeRules.checkCounts("cover with pruning", board -> count(board, true));
+        SafeRules.finish(checks);
+    }
+
+    /**
+     * Count the solutions of a safe with cover branching
+     * @param board - (SafeBoard) the layout of the safe
+     * @param pruning - (boolean) propagate and cut at dead cells?
+     * @return long - the number of solutions
+     */
+    private static long count(SafeBoard board, boolean pruning) {
+        SafeTrailConfig config = new SafeTrailConfig(board);
+        config.setCoverBranching(true);
+        config.setDeadCellPruning(pruning);
+        config.setPropagation(pruning);
+        return new Backtracker(false).countSolutions(config);
+    }
+}
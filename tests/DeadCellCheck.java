@@ -0,0 +1,36 @@
+import backtracking.Backtracker;
+import backtracking.RowMajorOrder;
+import backtracking.SafeBoard;
+import backtracking.SafeTrailConfig;
+
+import java.io.FileNotFoundException;
+
+/**
+ * Checks that cutting a branch at a dead cell never loses a solution:
+ * the counts with dead cell pruning, on its own and together with the
+ * pillar propagation, must match the reference count.
+ *
+ *   java -cp out/check DeadCellCheck
+ */
+public class DeadCellCheck {
+
+    public static void main(String[] args) throws FileNotFoundException {
+        int checks = SafeRules.checkCounts("dead cells", board -> count(board, false));
+        checks += SafeRules.checkCounts("dead cells with propagation", board -> count(board, true));
+        SafeRules.finish(checks);
+    }
+
+    /**
+     * Count the solutions of a safe with dead cell pruning
+     * @param board - (SafeBoard) the layout of the safe
+     * @param propagation - (boolean) propagate the pillars as well?
+     * @return long - the number of solutions
+     */
+    private static long count(SafeBoard board, boolean propagation) {
+        SafeTrailConfig config = new SafeTrailConfig(board);
+        config.setBranchOrder(new RowMajorOrder());
+        config.setDeadCellPruning(true);
+        config.setPropagation(propagation);
+        return new Backtracker(false).countSolutions(config);
+    }
+}
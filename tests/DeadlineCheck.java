@@ -0,0 +1,126 @@
+import backtracking.Backtracker;
+import backtracking.CancellationToken;
+import backtracking.CountResult;
+import backtracking.RowMajorOrder;
+import backtracking.SafeBoard;
+import backtracking.SafeConfig;
+import backtracking.SafeTrailConfig;
+import backtracking.SolveResult;
+
+import java.io.FileNotFoundException;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Checks the deadlines and the cancellation of the Backtracker. The
+ * solves, the count, the uniqueness check and the enumeration must stop
+ * with CANCELLED on a cancelled token and TIMED_OUT on a past deadline,
+ * and end like the reference count says without either. A count of the
+ * 14x14 safe in row major order, which takes seconds, must stop soon
+ * after its token is cancelled from another thread.
+ *
+ *   java -cp out/check DeadlineCheck
+ */
+public class DeadlineCheck {
+
+    //Longest a cancelled count may keep running, in milliseconds
+    private static final long CANCEL_MILLIS = 500;
+
+    public static void main(String[] args) throws FileNotFoundException, InterruptedException {
+        CancellationToken cancelled = new CancellationToken();
+        cancelled.cancel();
+        Instant past = Instant.now().minusSeconds(1);
+        int[] checks = new int[1];
+        SafeRules.forEachSafe((name, board) -> {
+            SolveResult.Status settled = SafeRules.countSolutions(board) > 0
+                    ? SolveResult.Status.SOLVED : SolveResult.Status.NO_SOLUTION;
+            expect(name, board, "free solve", solve(board, null, null), settled);
+            expect(name, board, "cancelled solve", solve(board, null, cancelled), SolveResult.Status.CANCELLED);
+            expect(name, board, "late solve", solve(board, past, null), SolveResult.Status.TIMED_OUT);
+
+            CountResult count = new Backtracker(false).countSolutions(pruning(board), past, null);
+            if (count.isComplete() || count.getStatus() != SolveResult.Status.TIMED_OUT) {
+                SafeRules.fail(name + ", late count: " + count);
+            }
+            CountResult unique = new Backtracker(false).isUnique(pruning(board), null, cancelled);
+            if (unique.isUnique() || unique.getStatus() != SolveResult.Status.CANCELLED) {
+                SafeRules.fail(name + ", cancelled isUnique: " + unique);
+            }
+            Backtracker bt = new Backtracker(false);
+            long found = bt.solveAll(pruning(board), null, cancelled).count();
+            if (found != 0 || bt.getStopStatus() != SolveResult.Status.CANCELLED) {
+                SafeRules.fail(name + ", cancelled solveAll: " + found + " solutions, " + bt.getStopStatus());
+            }
+            checks[0] += 6;
+        });
+
+        SafeBoard big = new SafeBoard("tests/14x14safe.txt");
+        SafeTrailConfig scan = new SafeTrailConfig(big);
+        scan.setBranchOrder(new RowMajorOrder());
+        CancellationToken token = new CancellationToken();
+        long[] cancelledAt = new long[1];
+        Thread canceller = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            cancelledAt[0] = System.nanoTime();
+            token.cancel();
+        });
+        canceller.start();
+        CountResult count = new Backtracker(false).countSolutions(scan, null, token);
+        long stopped = System.nanoTime();
+        canceller.join();
+        long late = Duration.ofNanos(stopped - cancelledAt[0]).toMillis();
+        System.out.println("14x14 count cancelled mid search: " + count);
+        if (count.getStatus() != SolveResult.Status.CANCELLED || late > CANCEL_MILLIS) {
+            SafeRules.fail("14x14 count: " + count + ", " + late + " ms after the cancel");
+        }
+        SafeRules.finish(checks[0] + 1);
+    }
+
+    /**
+     * Solve a safe with the pruning search
+     * @param board - (SafeBoard) the layout of the safe
+     * @param deadline - (Instant) when to give up, null for never
+     * @param token - (CancellationToken) the token to watch, may be null
+     * @return SolveResult - how the solve ended
+     */
+    private static SolveResult solve(SafeBoard board, Instant deadline, CancellationToken token) {
+        return new Backtracker(false).solveIteratively(pruning(board), deadline, token);
+    }
+
+    /**
+     * Check how a solve ended, and that a solution keeps the rules
+     * @param name - (String) what to call the safe in the output
+     * @param board - (SafeBoard) the layout of the safe
+     * @param solve - (String) what to call the solve in the output
+     * @param result - (SolveResult) how it ended
+     * @param expected - (SolveResult.Status) how it should have ended
+     */
+    private static void expect(String name, SafeBoard board, String solve, SolveResult result,
+                               SolveResult.Status expected) {
+        if (result.getStatus() != expected) {
+            SafeRules.fail(name + ", " + solve + ": " + result.getStatus() + ", expected " + expected);
+        } else if (result.isSolved()) {
+            char[][] grid = ((SafeConfig) result.getSolution().get()).getGrid();
+            String broken = SafeRules.brokenRule(board, SafeRules.lasersOf(board, grid));
+            if (broken != null) {
+                SafeRules.fail(name + ", " + solve + ": wrong solution, " + broken);
+            }
+        }
+    }
+
+    /**
+     * Create the configuration of the pruning search
+     * @param board - (SafeBoard) the layout of the safe
+     * @return SafeTrailConfig - the configuration
+     */
+    private static SafeTrailConfig pruning(SafeBoard board) {
+        SafeTrailConfig config = new SafeTrailConfig(board);
+        config.setDeadCellPruning(true);
+        config.setPropagation(true);
+        return config;
+    }
+}
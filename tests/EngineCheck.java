@@ -0,0 +1,61 @@
+import backtracking.SafeBoard;
+import backtracking.SafeConfig;
+import backtracking.SolveResult;
+import backtracking.SolverEngine;
+import backtracking.SolverEngines;
+import backtracking.SolverStatistics;
+
+import java.io.FileNotFoundException;
+import java.time.Instant;
+
+/**
+ * Checks every engine of the SolverEngines registry: it must find a
+ * solution exactly when the reference count says there is one, the
+ * solution must keep the rules, and its statistics must name it and
+ * end the way the solve did.
+ *
+ *   java -cp out/check EngineCheck
+ */
+public class EngineCheck {
+
+    //Longest an engine gets for one safe, in seconds
+    private static final int ENGINE_SECONDS = 30;
+
+    public static void main(String[] args) throws FileNotFoundException {
+        int checks = 0;
+        for (String name : SolverEngines.getNames()) {
+            checks += SafeRules.checkCounts(name, board -> solve(name, board));
+        }
+        SafeRules.finish(checks);
+    }
+
+    /**
+     * Solve a safe with an engine
+     * @param name - (String) the name the engine is registered under
+     * @param board - (SafeBoard) the layout of the safe
+     * @return long - 0 if there is no solution, the reference count if
+     * the solution keeps the rules, -1 if the engine gave up
+     */
+    private static long solve(String name, SafeBoard board) {
+        SolverEngine engine = SolverEngines.create(name);
+        SolveResult result = engine.solve(board, Instant.now().plusSeconds(ENGINE_SECONDS), null);
+        SolverStatistics statistics = engine.getStatistics();
+        if (statistics == null || !statistics.getEngine().startsWith(name)
+                || statistics.getStatus() != result.getStatus()) {
+            SafeRules.fail(name + ": statistics " + statistics + " for " + result.getStatus());
+        }
+        if (result.isSolved()) {
+            char[][] grid = ((SafeConfig) result.getSolution().get()).getGrid();
+            String broken = SafeRules.brokenRule(board, SafeRules.lasersOf(board, grid));
+            if (broken != null) {
+                SafeRules.fail(name + ": wrong solution, " + broken);
+            }
+            return SafeRules.countSolutions(board);
+        }
+        if (result.getStatus() != SolveResult.Status.NO_SOLUTION) {
+            SafeRules.fail(name + ": stopped with " + result.getStatus());
+            return -1;
+        }
+        return 0;
+    }
+}
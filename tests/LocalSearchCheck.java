@@ -0,0 +1,91 @@
+import backtracking.LocalSearch;
+import backtracking.SafeBoard;
+import backtracking.SafeConfig;
+import backtracking.SolveResult;
+
+import java.io.FileNotFoundException;
+import java.util.Random;
+
+/**
+ * Checks that the LocalSearch repairs its random start with flips.
+ * With the hand off turned off, the search has to reach a solution on
+ * its own: every solution must keep the rules, the bundled safes must
+ * take flips to solve, and so must most of the small random ones, as a
+ * random start is seldom a solution already. A safe without a solution
+ * must end at the hand off of the whole safe with NO_SOLUTION.
+ *
+ *   java -cp out/check LocalSearchCheck
+ */
+public class LocalSearchCheck {
+
+    //Random safes checked, and their seed
+    private static final int RANDOM = 100;
+    private static final long SEED = 2021;
+
+    //Random safes solved, and the ones of them solved with flips
+    private static int solved;
+    private static int flipped;
+
+    public static void main(String[] args) throws FileNotFoundException {
+        int checks = 0;
+        for (String file : new String[] {"tests/7x7safe.txt", "tests/8x8safe.txt", "tests/10x8safe.txt"}) {
+            if (check(file, new SafeBoard(file), true) == 0) {
+                SafeRules.fail(file + ": solved without a flip");
+            }
+            checks++;
+        }
+        if (check("tests/4x4safe.txt", new SafeBoard("tests/4x4safe.txt"), false) >= 0) {
+            SafeRules.fail("tests/4x4safe.txt: found a solution of a safe without one");
+        }
+        checks++;
+        Random rnd = new Random(SEED);
+        for (int i = 0; i < RANDOM; i++) {
+            long flips = check("random " + i, SafeRules.randomSafe(rnd, 3 + rnd.nextInt(4), 3 + rnd.nextInt(4)), false);
+            if (flips >= 0) {
+                solved++;
+                flipped += flips > 0 ? 1 : 0;
+            }
+            checks++;
+        }
+        System.out.println(flipped + " of " + solved + " random safes solved with flips");
+        if (2 * flipped < solved) {
+            SafeRules.fail("most random safes solved without a flip");
+        }
+        SafeRules.finish(checks + 1);
+    }
+
+    /**
+     * Solve a safe with the flips alone and check what they led to
+     * @param name - (String) what to call the safe in the output
+     * @param board - (SafeBoard) the layout of the safe
+     * @param solvable - (boolean) must the safe have a solution?
+     * @return long - the flips it took if the flips alone solved it,
+     * -1 otherwise
+     */
+    private static long check(String name, SafeBoard board, boolean solvable) {
+        LocalSearch search = new LocalSearch(board);
+        search.setSeed(name.hashCode());
+        search.setHandOff(0);
+        SolveResult result = search.solve(null, null);
+        System.out.println(name + ": " + result.getStatus() + " after " + search.getFlips()
+                + " flips, " + search.getHandOffs() + " hand offs");
+        if (result.isSolved()) {
+            char[][] grid = ((SafeConfig) result.getSolution().get()).getGrid();
+            String broken = SafeRules.brokenRule(board, SafeRules.lasersOf(board, grid));
+            if (broken != null) {
+                SafeRules.fail(name + ": wrong solution, " + broken);
+            }
+            if (search.getHandOffs() == 0) {
+                if (search.getBestViolations() != 0) {
+                    SafeRules.fail(name + ": solved with " + search.getBestViolations() + " best violations");
+                }
+                return search.getFlips();
+            }
+        } else if (result.getStatus() != SolveResult.Status.NO_SOLUTION) {
+            SafeRules.fail(name + ": stopped with " + result.getStatus());
+        } else if (solvable) {
+            SafeRules.fail(name + ": found no solution");
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,45 @@
+import backtracking.Backtracker;
+import backtracking.FailedStateMemo;
+import backtracking.RowMajorOrder;
+import backtracking.SafeBoard;
+import backtracking.SafeTrailConfig;
+
+import java.io.FileNotFoundException;
+
+/**
+ * Checks that skipping a remembered failed state never loses a
+ * solution: the counts of the row major scan with a FailedStateMemo
+ * must match the reference count. The memo is checked fresh, warm from
+ * a count of the same safe, and so small that it keeps dropping states.
+ *
+ *   java -cp out/check MemoCheck
+ */
+public class MemoCheck {
+
+    //Entries of the memo that keeps dropping states
+    private static final int SMALL = 16;
+
+    public static void main(String[] args) throws FileNotFoundException {
+        int checks = SafeRules.checkCounts("memo", board -> count(board, new FailedStateMemo()));
+        checks += SafeRules.checkCounts("warm memo", board -> {
+            FailedStateMemo memo = new FailedStateMemo();
+            count(board, memo);
+            return count(board, memo);
+        });
+        checks += SafeRules.checkCounts("small memo", board -> count(board, new FailedStateMemo(SMALL)));
+        SafeRules.finish(checks);
+    }
+
+    /**
+     * Count the solutions of a safe in row major order with a memo
+     * @param board - (SafeBoard) the layout of the safe
+     * @param memo - (FailedStateMemo) the memo to use
+     * @return long - the number of solutions
+     */
+    private static long count(SafeBoard board, FailedStateMemo memo) {
+        SafeTrailConfig config = new SafeTrailConfig(board);
+        config.setBranchOrder(new RowMajorOrder());
+        config.setFailedStateMemo(memo);
+        return new Backtracker(false).countSolutions(config);
+    }
+}
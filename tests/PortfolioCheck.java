@@ -0,0 +1,60 @@
+import backtracking.CapacityBound;
+import backtracking.PortfolioEngine;
+import backtracking.SafeBoard;
+import backtracking.SafeConfig;
+import backtracking.SolveResult;
+
+import java.io.FileNotFoundException;
+import java.util.Map;
+
+/**
+ * Checks the PortfolioEngine with a CapacityBound on every search of
+ * the race: a solution must keep the rules and be found exactly when
+ * there is one. One engine solves every safe, so its tally must end up
+ * with one win per solve, and the statistics of every solve must carry
+ * the tally up to it.
+ *
+ *   java -cp out/check PortfolioCheck
+ */
+public class PortfolioCheck {
+
+    public static void main(String[] args) throws FileNotFoundException {
+        PortfolioEngine engine = new PortfolioEngine();
+        engine.setPruningRule(CapacityBound::new);
+        int checks = SafeRules.checkCounts("portfolio", board -> solve(engine, board));
+        long wins = 0;
+        for (long won : engine.getWins().values()) {
+            wins += won;
+        }
+        System.out.println("wins " + engine.getWins());
+        if (wins != checks) {
+            SafeRules.fail("portfolio: " + wins + " wins over " + checks + " solves");
+        }
+        SafeRules.finish(checks + 1);
+    }
+
+    /**
+     * Solve a safe with the portfolio and check its statistics
+     * @param engine - (PortfolioEngine) the portfolio
+     * @param board - (SafeBoard) the layout of the safe
+     * @return long - 0 if there is no solution, the reference count if
+     * the solution keeps the rules
+     */
+    private static long solve(PortfolioEngine engine, SafeBoard board) {
+        SolveResult result = engine.solve(board, null, null);
+        Map<String, Long> wins = engine.getStatistics().getWins();
+        if (!wins.equals(engine.getWins()) || !engine.getStatistics().getEngine()
+                .equals(PortfolioEngine.NAME + ":" + engine.getLastWinner())) {
+            SafeRules.fail("portfolio: statistics " + engine.getStatistics() + ", tally " + engine.getWins());
+        }
+        if (!result.isSolved()) {
+            return 0;
+        }
+        char[][] grid = ((SafeConfig) result.getSolution().get()).getGrid();
+        String broken = SafeRules.brokenRule(board, SafeRules.lasersOf(board, grid));
+        if (broken != null) {
+            SafeRules.fail("portfolio: wrong solution, " + broken);
+        }
+        return SafeRules.countSolutions(board);
+    }
+}
@@ -0,0 +1,46 @@
+import backtracking.ProfileSolver;
+import backtracking.SafeBoard;
+import backtracking.SafeConfig;
+import backtracking.SolveResult;
+
+import java.io.FileNotFoundException;
+
+/**
+ * Checks the ProfileSolver on every safe it fits: its count must match
+ * the reference count, and its solve must find a solution that keeps
+ * the rules exactly when there is one. The solve walks back through
+ * the checkpointed layers, so it is checked on its own.
+ *
+ *   java -cp out/check ProfileCheck
+ */
+public class ProfileCheck {
+
+    public static void main(String[] args) throws FileNotFoundException {
+        int checks = SafeRules.checkCounts("profile count", board ->
+                ProfileSolver.fits(board) ? new ProfileSolver(board).countSolutions() : -1);
+        checks += SafeRules.checkCounts("profile solve", ProfileCheck::solve);
+        SafeRules.finish(checks);
+    }
+
+    /**
+     * Solve a safe with the profile
+     * @param board - (SafeBoard) the layout of the safe
+     * @return long - 0 if there is no solution, the reference count if
+     * the solution keeps the rules, -1 if the profile does not fit
+     */
+    private static long solve(SafeBoard board) {
+        if (!ProfileSolver.fits(board)) {
+            return -1;
+        }
+        SolveResult result = new ProfileSolver(board).solve(null, null);
+        if (!result.isSolved()) {
+            return 0;
+        }
+        char[][] grid = ((SafeConfig) result.getSolution().get()).getGrid();
+        String broken = SafeRules.brokenRule(board, SafeRules.lasersOf(board, grid));
+        if (broken != null) {
+            SafeRules.fail("profile solve: wrong solution, " + broken);
+        }
+        return SafeRules.countSolutions(board);
+    }
+}
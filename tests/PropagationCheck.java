@@ -0,0 +1,32 @@
+import backtracking.Backtracker;
+import backtracking.RowMajorOrder;
+import backtracking.SafeBoard;
+import backtracking.SafeTrailConfig;
+
+import java.io.FileNotFoundException;
+
+/**
+ * Checks that the forced moves of the pillar propagation never lose or
+ * add a solution: the count with propagation, in row major order, must
+ * match the reference count.
+ *
+ *   java -cp out/check PropagationCheck
+ */
+public class PropagationCheck {
+
+    public static void main(String[] args) throws FileNotFoundException {
+        SafeRules.finish(SafeRules.checkCounts("propagation", PropagationCheck::count));
+    }
+
+    /**
+     * Count the solutions of a safe with propagation
+     * @param board - (SafeBoard) the layout of the safe
+     * @return long - the number of solutions
+     */
+    private static long count(SafeBoard board) {
+        SafeTrailConfig config = new SafeTrailConfig(board);
+        config.setBranchOrder(new RowMajorOrder());
+        config.setPropagation(true);
+        return new Backtracker(false).countSolutions(config);
+    }
+}
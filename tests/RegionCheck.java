@@ -0,0 +1,72 @@
+import backtracking.Backtracker;
+import backtracking.SafeBoard;
+import backtracking.SafeConfig;
+import backtracking.SafeRegions;
+import backtracking.SafeTrailConfig;
+import backtracking.SolveResult;
+
+import java.io.FileNotFoundException;
+
+/**
+ * Checks that the regions of a safe really are independent: the
+ * product of the counts of the regions must match the reference count
+ * of the whole safe, and the solutions of the regions, put together
+ * one after the other or at the same time, must keep the rules of the
+ * whole safe.
+ *
+ *   java -cp out/check RegionCheck
+ */
+public class RegionCheck {
+
+    public static void main(String[] args) throws FileNotFoundException {
+        int checks = SafeRules.checkCounts("regions", RegionCheck::count);
+        checks += SafeRules.checkCounts("regions solved", board -> solve(board, false));
+        checks += SafeRules.checkCounts("regions solved in parallel", board -> solve(board, true));
+        SafeRules.finish(checks);
+    }
+
+    /**
+     * Count the solutions of a safe region by region
+     * @param board - (SafeBoard) the layout of the safe
+     * @return long - the product of the counts of the regions
+     */
+    private static long count(SafeBoard board) {
+        for (int p = 0; p < board.getPillarCount(); p++) {
+            if (board.getPillarValue(p) > board.getPillarFreeNeighbors(p)) {
+                //A pillar without free neighbors is in no region
+                return 0;
+            }
+        }
+        SafeRegions regions = new SafeRegions(board);
+        long count = 1;
+        for (int region = 0; region < regions.getRegionCount(); region++) {
+            count *= SafeRules.countSolutions(regions.getRegion(region));
+        }
+        return count;
+    }
+
+    /**
+     * Solve a safe region by region with the pruning search
+     * @param board - (SafeBoard) the layout of the safe
+     * @param parallel - (boolean) solve the regions at the same time?
+     * @return long - 0 if there is no solution, the reference count if
+     * the solution keeps the rules
+     */
+    private static long solve(SafeBoard board, boolean parallel) {
+        SolveResult result = new SafeRegions(board).solve(region -> {
+            SafeTrailConfig config = new SafeTrailConfig(region);
+            config.setDeadCellPruning(true);
+            config.setPropagation(true);
+            return new Backtracker(false).solveIteratively(config, null, null);
+        }, parallel);
+        if (!result.isSolved()) {
+            return 0;
+        }
+        char[][] grid = ((SafeConfig) result.getSolution().get()).getGrid();
+        String broken = SafeRules.brokenRule(board, SafeRules.lasersOf(board, grid));
+        if (broken != null) {
+            SafeRules.fail("regions: wrong solution, " + broken);
+        }
+        return SafeRules.countSolutions(board);
+    }
+}
@@ -0,0 +1,289 @@
+import backtracking.Backtracker;
+import backtracking.RowMajorOrder;
+import backtracking.SafeBoard;
+import backtracking.SafeTrailConfig;
+
+import java.io.FileNotFoundException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * The rules of a safe, checked from scratch without the SafeConfig
+ * code, and the small random safes the checks in this directory run
+ * on. Each check is a main class that compiles together with this one
+ * and is run from the project directory:
+ *
+ *   javac -d out/check -sourcepath src tests/*.java
+ *   java -cp out/check CountCheck
+ *
+ * A check prints every failure and exits with status 1 if there is any.
+ */
+public class SafeRules {
+
+    //The bundled safes
+    public static final String[] SAFES = {"tests/4x4safe.txt", "tests/4x8safe.txt", "tests/7x7safe.txt",
+            "tests/8x8safe.txt", "tests/10x8safe.txt", "tests/14x14safe.txt", "Test"};
+    //Most free cells the brute force search is run on
+    private static final int BRUTE_CELLS = 24;
+    //Small random safes the counts are checked on, and their seed
+    private static final int RANDOM = 200;
+    private static final long SEED = 2017;
+
+    //Offsets of the four neighbors of a cell
+    private static final int[] DR = {-1, 1, 0, 0};
+    private static final int[] DC = {0, 0, -1, 1};
+
+    //Checks that failed so far
+    private static int failures;
+    //Reference counts of the safes seen so far, by their layout
+    private static Map<String, Long> counts = new HashMap<>();
+
+    /**
+     * Compare a way of counting the solutions with the reference count
+     * on the bundled safes and the small random ones
+     * @param counter - (String) what to call the counter in the output
+     * @param count - (ToLongFunction) counts the solutions of a safe,
+     *              -1 to skip a safe it does not take
+     * @return int - the number of safes checked
+     * @throws FileNotFoundException if a bundled safe is missing
+     */
+    public static int checkCounts(String counter, ToLongFunction<SafeBoard> count)
+            throws FileNotFoundException {
+        int[] checks = new int[1];
+        forEachSafe((name, board) -> {
+            long counted = count.applyAsLong(board);
+            if (counted < 0) {
+                return;
+            }
+            long expected = countSolutions(board);
+            if (counted != expected) {
+                fail(name + ", " + counter + ": " + counted + " solutions, expected " + expected);
+            }
+            checks[0]++;
+        });
+        return checks[0];
+    }
+
+    /**
+     * Run a check on the bundled safes and the small random ones, the
+     * same ones on every run
+     * @param check - (BiConsumer) checks a safe given its name
+     * @throws FileNotFoundException if a bundled safe is missing
+     */
+    public static void forEachSafe(BiConsumer<String, SafeBoard> check) throws FileNotFoundException {
+        for (String file : SAFES) {
+            check.accept(file, new SafeBoard(file));
+        }
+        Random rnd = new Random(SEED);
+        for (int i = 0; i < RANDOM; i++) {
+            check.accept("random " + i, randomSafe(rnd, 2 + rnd.nextInt(4), 2 + rnd.nextInt(5)));
+        }
+    }
+
+    /**
+     * Count the solutions of a safe the most trusted way there is: by
+     * brute force on a safe with at most BRUTE_CELLS free cells, and by
+     * the row major search, which has no pruning, on a bigger one
+     * @param board - (SafeBoard) the layout of the safe
+     * @return long - the number of solutions
+     */
+    public static long countSolutions(SafeBoard board) {
+        StringBuilder layout = new StringBuilder();
+        for (int row = 0; row < board.getRDIM(); row++) {
+            for (int col = 0; col < board.getCDIM(); col++) {
+                layout.append(board.getLayout(row, col));
+            }
+            layout.append('\n');
+        }
+        return counts.computeIfAbsent(layout.toString(), key -> {
+            if (freeCells(board) <= BRUTE_CELLS) {
+                return bruteForce(board, new boolean[board.getRDIM()][board.getCDIM()], 0);
+            }
+            SafeTrailConfig scan = new SafeTrailConfig(board);
+            scan.setBranchOrder(new RowMajorOrder());
+            return new Backtracker(false).countSolutions(scan);
+        });
+    }
+
+    /**
+     * Count the solutions from one cell on, trying every placement of
+     * lasers that have no laser in sight one free cell after the other
+     * in row major order
+     * @param board - (SafeBoard) the layout of the safe
+     * @param lasers - (boolean[][]) the lasers of the cells before
+     * @param cell - (int) the row major index of the cell to decide
+     * @return long - the number of solutions with those lasers
+     */
+    private static long bruteForce(SafeBoard board, boolean[][] lasers, int cell) {
+        int cDIM = board.getCDIM();
+        if (cell == board.getRDIM() * cDIM) {
+            return brokenRule(board, lasers) == null ? 1 : 0;
+        }
+        int row = cell / cDIM;
+        int col = cell % cDIM;
+        long count = bruteForce(board, lasers, cell + 1);
+        //Only the cells before have lasers, so looking up and left is enough
+        if (board.getLayout(row, col) == '.' && !seesLaser(board, lasers, row, col, 0)
+                && !seesLaser(board, lasers, row, col, 2)) {
+            lasers[row][col] = true;
+            count += bruteForce(board, lasers, cell + 1);
+            lasers[row][col] = false;
+        }
+        return count;
+    }
+
+    /**
+     * Tell what rule of the safe a placement of lasers breaks
+     * @param board - (SafeBoard) the layout of the safe
+     * @param lasers - (boolean[][]) the lasers
+     * @return String - the broken rule, or null if none is
+     */
+    public static String brokenRule(SafeBoard board, boolean[][] lasers) {
+        for (int row = 0; row < board.getRDIM(); row++) {
+            for (int col = 0; col < board.getCDIM(); col++) {
+                char layout = board.getLayout(row, col);
+                if (layout != '.') {
+                    if (lasers[row][col]) {
+                        return "laser on a pillar at " + row + "," + col;
+                    }
+                    if (layout != 'X' && lasersAround(board, lasers, row, col) != layout - '0') {
+                        return "wrong pillar at " + row + "," + col;
+                    }
+                    continue;
+                }
+                boolean seen = false;
+                for (int d = 0; d < 4; d++) {
+                    seen = seen || seesLaser(board, lasers, row, col, d);
+                }
+                if (lasers[row][col] && seen) {
+                    return "lasers in sight at " + row + "," + col;
+                }
+                if (!lasers[row][col] && !seen) {
+                    return "dark cell at " + row + "," + col;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Does a beam from a cell in one direction hit a laser before a
+     * pillar or the edge?
+     * @param board - (SafeBoard) the layout of the safe
+     * @param lasers - (boolean[][]) the lasers
+     * @param row - (int) the row of the cell
+     * @param col - (int) the col of the cell
+     * @param d - (int) the direction, an index into DR and DC
+     * @return true if it hits a laser
+     */
+    public static boolean seesLaser(SafeBoard board, boolean[][] lasers, int row, int col, int d) {
+        int r = row + DR[d];
+        int c = col + DC[d];
+        while (r >= 0 && r < board.getRDIM() && c >= 0 && c < board.getCDIM()
+                && board.getLayout(r, c) == '.') {
+            if (lasers[r][c]) {
+                return true;
+            }
+            r += DR[d];
+            c += DC[d];
+        }
+        return false;
+    }
+
+    /**
+     * Count the lasers next to a cell
+     * @param board - (SafeBoard) the layout of the safe
+     * @param lasers - (boolean[][]) the lasers
+     * @param row - (int) the row of the cell
+     * @param col - (int) the col of the cell
+     * @return int - the number of lasers
+     */
+    private static int lasersAround(SafeBoard board, boolean[][] lasers, int row, int col) {
+        int count = 0;
+        for (int d = 0; d < 4; d++) {
+            int r = row + DR[d];
+            int c = col + DC[d];
+            if (r >= 0 && r < board.getRDIM() && c >= 0 && c < board.getCDIM() && lasers[r][c]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Read the lasers of a solution grid
+     * @param board - (SafeBoard) the layout of the safe
+     * @param grid - (char[][]) the grid of the solution
+     * @return boolean[][] - where the lasers are
+     */
+    public static boolean[][] lasersOf(SafeBoard board, char[][] grid) {
+        boolean[][] lasers = new boolean[board.getRDIM()][board.getCDIM()];
+        for (int row = 0; row < board.getRDIM(); row++) {
+            for (int col = 0; col < board.getCDIM(); col++) {
+                lasers[row][col] = grid[row][col] == 'L';
+            }
+        }
+        return lasers;
+    }
+
+    /**
+     * Count the free cells of a safe
+     * @param board - (SafeBoard) the layout of the safe
+     * @return int - the number of free cells
+     */
+    public static int freeCells(SafeBoard board) {
+        int count = 0;
+        for (int row = 0; row < board.getRDIM(); row++) {
+            for (int col = 0; col < board.getCDIM(); col++) {
+                if (board.getLayout(row, col) == '.') {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Make a random safe, a fifth of its cells pillars
+     * @param rnd - (Random) picks the layout
+     * @param rows - (int) the number of rows
+     * @param cols - (int) the number of columns
+     * @return SafeBoard - the safe
+     */
+    public static SafeBoard randomSafe(Random rnd, int rows, int cols) {
+        char[][] cells = new char[rows][cols];
+        for (char[] line : cells) {
+            for (int col = 0; col < line.length; col++) {
+                if (rnd.nextInt(5) > 0) {
+                    line[col] = '.';
+                } else {
+                    line[col] = "XX01123".charAt(rnd.nextInt(7));
+                }
+            }
+        }
+        return new SafeBoard(cells);
+    }
+
+    /**
+     * Report a failed check and remember to exit with status 1
+     * @param what - (String) what went wrong
+     */
+    public static void fail(String what) {
+        failures++;
+        System.out.println("  FAILED " + what);
+    }
+
+    /**
+     * Print how the checks went and exit with status 1 if any failed
+     * @param checks - (int) the number of checks run
+     */
+    public static void finish(int checks) {
+        System.out.println(checks + " checks, " + failures + " failed");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+}
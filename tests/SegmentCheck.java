@@ -0,0 +1,19 @@
+import backtracking.Backtracker;
+import backtracking.SegmentGraphConfig;
+
+import java.io.FileNotFoundException;
+
+/**
+ * Checks that the SegmentGraphConfig, a laser or none for every
+ * segment, finds every solution exactly once: its count must match the
+ * reference count.
+ *
+ *   java -cp out/check SegmentCheck
+ */
+public class SegmentCheck {
+
+    public static void main(String[] args) throws FileNotFoundException {
+        SafeRules.finish(SafeRules.checkCounts("segments", board ->
+                new Backtracker(false).countSolutions(new SegmentGraphConfig(board))));
+    }
+}
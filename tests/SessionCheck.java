@@ -0,0 +1,151 @@
+import backtracking.Backtracker;
+import backtracking.Configuration;
+import backtracking.SafeBoard;
+import backtracking.SafeConfig;
+import backtracking.SafeTrailConfig;
+import backtracking.SolveResult;
+import backtracking.SolverSession;
+
+import java.io.FileNotFoundException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Checks that a SolverSession keeps up with a user editing the safe.
+ * On every safe with a solution the user places and takes away lasers
+ * at random, many of them where a solution of the safe has one, and the
+ * session solves after every edit. Every solve must:
+ *
+ * - end with a solution that keeps the rules
+ * - keep every laser of the user exactly when some solution does,
+ *   which a search with the user's lasers fixed tells
+ * - hand out a path that ends at the solution, one laser at a time
+ *
+ *   java -cp out/check SessionCheck
+ */
+public class SessionCheck {
+
+    //Edits on every safe, and the seed that picks them
+    private static final int EDITS = 12;
+    private static final long SEED = 2025;
+
+    public static void main(String[] args) throws FileNotFoundException {
+        Random rnd = new Random(SEED);
+        Map<String, Integer> answers = new TreeMap<>();
+        int[] checks = new int[1];
+        SafeRules.forEachSafe((name, board) -> {
+            if (SafeRules.countSolutions(board) == 0) {
+                return;
+            }
+            SafeTrailConfig any = new SafeTrailConfig(board);
+            char[][] target = ((SafeConfig) new Backtracker(false).solve(any).get()).getGrid();
+            int rDIM = board.getRDIM();
+            int cDIM = board.getCDIM();
+            boolean[][] user = new boolean[rDIM][cDIM];
+            SolverSession session = new SolverSession(board);
+            for (int edit = 0; edit <= EDITS; edit++) {
+                if (edit > 0) {
+                    edit(session, board, user, target, rnd);
+                }
+                SolveResult result = session.solve(null, null);
+                answers.merge(session.getStatistics().getEngine(), 1, Integer::sum);
+                check(name + ", edit " + edit, board, user, session, result);
+                checks[0]++;
+            }
+        });
+        System.out.println("answered by " + answers);
+        SafeRules.finish(checks[0]);
+    }
+
+    /**
+     * Make a random edit: take a laser of the user away, or place one
+     * where the target solution has one or in any free cell
+     * @param session - (SolverSession) the session to tell
+     * @param board - (SafeBoard) the layout of the safe
+     * @param user - (boolean[][]) the lasers of the user
+     * @param target - (char[][]) the grid of a solution of the safe
+     * @param rnd - (Random) picks the edit
+     */
+    private static void edit(SolverSession session, SafeBoard board, boolean[][] user, char[][] target,
+                             Random rnd) {
+        int row = rnd.nextInt(board.getRDIM());
+        int col = rnd.nextInt(board.getCDIM());
+        if (board.getLayout(row, col) != '.') {
+            return;
+        }
+        if (user[row][col]) {
+            user[row][col] = false;
+            session.laserRemoved(row, col);
+        } else if (rnd.nextBoolean() || target[row][col] == 'L') {
+            user[row][col] = true;
+            session.laserAdded(row, col);
+        }
+    }
+
+    /**
+     * Check one solve of the session
+     * @param name - (String) what to call the solve in the output
+     * @param board - (SafeBoard) the layout of the safe
+     * @param user - (boolean[][]) the lasers of the user
+     * @param session - (SolverSession) the session that solved
+     * @param result - (SolveResult) how the solve ended
+     */
+    private static void check(String name, SafeBoard board, boolean[][] user, SolverSession session,
+                              SolveResult result) {
+        if (!result.isSolved()) {
+            SafeRules.fail(name + ": " + result.getStatus() + " on a safe with a solution");
+            return;
+        }
+        char[][] grid = ((SafeConfig) result.getSolution().get()).getGrid();
+        boolean[][] lasers = SafeRules.lasersOf(board, grid);
+        String broken = SafeRules.brokenRule(board, lasers);
+        if (broken != null) {
+            SafeRules.fail(name + ": wrong solution, " + broken);
+        }
+        boolean kept = true;
+        for (int row = 0; row < board.getRDIM(); row++) {
+            for (int col = 0; col < board.getCDIM(); col++) {
+                kept = kept && (!user[row][col] || lasers[row][col]);
+            }
+        }
+        boolean keepable = keepable(board, user);
+        if (kept != keepable || kept != session.keepsUserLasers()) {
+            SafeRules.fail(name + ": keeps the user's lasers " + kept + ", the session says "
+                    + session.keepsUserLasers() + ", a solution does " + keepable);
+        }
+        List<Configuration> path = session.getPath();
+        int count = 0;
+        for (boolean[] line : lasers) {
+            for (boolean laser : line) {
+                count += laser ? 1 : 0;
+            }
+        }
+        if (path.size() != count || (count > 0 && !Arrays.deepEquals(grid,
+                ((SafeConfig) path.get(count - 1)).getGrid()))) {
+            SafeRules.fail(name + ": path of " + path.size() + " steps to " + count + " lasers");
+        }
+    }
+
+    /**
+     * Does some solution keep every laser of the user?
+     * @param board - (SafeBoard) the layout of the safe
+     * @param user - (boolean[][]) the lasers of the user
+     * @return true if a search with the lasers fixed finds one
+     */
+    private static boolean keepable(SafeBoard board, boolean[][] user) {
+        SafeTrailConfig config = new SafeTrailConfig(board);
+        config.setDeadCellPruning(true);
+        config.setPropagation(true);
+        for (int row = 0; row < board.getRDIM(); row++) {
+            for (int col = 0; col < board.getCDIM(); col++) {
+                if (user[row][col] && !config.fix(row, col, true)) {
+                    return false;
+                }
+            }
+        }
+        return new Backtracker(false).countSolutions(config) > 0;
+    }
+}
@@ -0,0 +1,38 @@
+import backtracking.Backtracker;
+import backtracking.SafeBoard;
+import backtracking.SafeConfig;
+import backtracking.SafeSymmetry;
+import backtracking.SafeTrailConfig;
+
+import java.io.FileNotFoundException;
+
+/**
+ * Checks that breaking the symmetries of a safe keeps one solution of
+ * every orbit: the leaders found with symmetry breaking, expanded to
+ * their full orbits, must be as many as the reference count says, and
+ * every solution of an orbit must keep the rules.
+ *
+ *   java -cp out/check SymmetryCheck
+ */
+public class SymmetryCheck {
+
+    public static void main(String[] args) throws FileNotFoundException {
+        int[] symmetric = new int[1];
+        int checks = SafeRules.checkCounts("symmetry", board -> {
+            SafeSymmetry symmetry = new SafeSymmetry(board);
+            if (symmetry.isSymmetric()) {
+                symmetric[0]++;
+            }
+            SafeTrailConfig config = new SafeTrailConfig(board);
+            config.setDeadCellPruning(true);
+            config.setPropagation(true);
+            config.setSymmetryBreaking(symmetry);
+            return symmetry.expand(new Backtracker(false).solveAll(config))
+                    .map(solution -> ((SafeConfig) solution).getGrid())
+                    .filter(grid -> SafeRules.brokenRule(board, SafeRules.lasersOf(board, grid)) == null)
+                    .count();
+        });
+        System.out.println(symmetric[0] + " symmetric safes");
+        SafeRules.finish(checks);
+    }
+}